@@ -0,0 +1,188 @@
+package com.dgmvwallet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Keychain storage with batched reads and writes.
+ *
+ * Values are encrypted with an AES-GCM key held by the Android Keystore and kept in
+ * private shared preferences. Each batch crosses the bridge once, loads the Keystore key
+ * once and writes all of its entries in a single preferences commit.
+ */
+public class KeychainBatch extends ReactContextBaseJavaModule {
+    private static final String PREFERENCES = "DGMV_KEYCHAIN";
+    private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "dgmv_keychain";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private static final ExecutorService executor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "DGMV-Keychain"));
+
+    public KeychainBatch(ReactApplicationContext context) {
+        super(context);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "KeychainBatch";
+    }
+
+    private SharedPreferences getPreferences() {
+        return getReactApplicationContext().getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Loads the Keystore key of the keychain, creating it on first use.
+     */
+    private static SecretKey getKey() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+        keyStore.load(null);
+
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+
+    private static String encrypt(SecretKey key, String value) throws GeneralSecurityException {
+        // The Keystore picks a fresh IV for every encryption
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+
+        byte[] iv = cipher.getIV();
+        byte[] encrypted = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer buffer = ByteBuffer.allocate(iv.length + encrypted.length);
+        buffer.put(iv).put(encrypted);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    private static String decrypt(SecretKey key, String stored) throws GeneralSecurityException {
+        byte[] data = Base64.getDecoder().decode(stored);
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, data, 0, IV_LENGTH));
+        return new String(cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stores all entries ({ key, value }) of the batch. An entry with a null value is removed.
+     */
+    @ReactMethod
+    public void putBatch(ReadableArray entries, Promise promise) {
+        executor.execute(() -> {
+            try {
+                SecretKey key = getKey();
+                SharedPreferences.Editor editor = getPreferences().edit();
+
+                for (int i = 0; i < entries.size(); ++i) {
+                    ReadableMap entry = entries.getMap(i);
+                    String name = entry.getString("key");
+
+                    if (!entry.hasKey("value") || entry.isNull("value")) {
+                        editor.remove(name);
+                    } else {
+                        editor.putString(name, encrypt(key, entry.getString("value")));
+                    }
+                }
+
+                if (!editor.commit()) {
+                    promise.reject("E_KEYCHAIN", "Could not write keychain batch");
+                    return;
+                }
+
+                promise.resolve(true);
+            } catch (Exception e) {
+                promise.reject("E_KEYCHAIN", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Reads all keys of the batch.
+     *
+     * @return an object with one property per key, null for missing keys
+     */
+    @ReactMethod
+    public void getBatch(ReadableArray keys, Promise promise) {
+        executor.execute(() -> {
+            try {
+                SharedPreferences preferences = getPreferences();
+                SecretKey key = null;
+                WritableMap result = Arguments.createMap();
+
+                for (int i = 0; i < keys.size(); ++i) {
+                    String name = keys.getString(i);
+                    String stored = preferences.getString(name, null);
+
+                    if (stored == null) {
+                        result.putNull(name);
+                        continue;
+                    }
+
+                    if (key == null) key = getKey();
+                    result.putString(name, decrypt(key, stored));
+                }
+
+                promise.resolve(result);
+            } catch (Exception e) {
+                promise.reject("E_KEYCHAIN", e.getMessage(), e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void removeBatch(ReadableArray keys, Promise promise) {
+        executor.execute(() -> {
+            SharedPreferences.Editor editor = getPreferences().edit();
+            for (int i = 0; i < keys.size(); ++i) {
+                editor.remove(keys.getString(i));
+            }
+
+            if (editor.commit()) {
+                promise.resolve(true);
+            } else {
+                promise.reject("E_KEYCHAIN", "Could not remove keychain batch");
+            }
+        });
+    }
+}
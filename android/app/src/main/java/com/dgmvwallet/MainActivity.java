@@ -9,14 +9,34 @@ import android.service.autofill.FillResponse;
 import android.util.Log;
 import android.widget.RemoteViews;
 
+import com.dgmvwallet.autofill.AutofillMetrics;
 import com.dgmvwallet.autofill.DGMVAutofillServiceBridge;
+import com.dgmvwallet.autofill.WarmReactHost;
 import com.facebook.react.ReactActivity;
 import com.facebook.react.ReactActivityDelegate;
+import com.facebook.react.bridge.ReactMarker;
+import com.facebook.react.bridge.ReactMarkerConstants;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 
-public class MainActivity extends ReactActivity implements DGMVAutofillServiceBridge.CompletionHandler {
+public class MainActivity extends ReactActivity
+    implements DGMVAutofillServiceBridge.CompletionHandler, DGMVAutofillServiceBridge.RequestHost {
+  // The autofill request this activity answers, if it was started by the autofill service
+  private int autofillRequestId = DGMVAutofillServiceBridge.NO_REQUEST;
+  private volatile DGMVAutofillServiceBridge.RequestInfo autofillRequestInfo = null;
+
+  // Ends the js-boot phase once the first React content is shown
+  private final ReactMarker.MarkerListener contentAppearedListener = (name, tag, instanceKey) -> {
+    if (name != ReactMarkerConstants.CONTENT_APPEARED) return;
+
+    DGMVAutofillServiceBridge.RequestInfo requestInfo = autofillRequestInfo;
+    if (requestInfo != null) {
+      autofillRequestInfo = null;
+      requestInfo.recordPhase(AutofillMetrics.PHASE_JS_BOOT);
+    }
+  };
+
   /**
    * Returns the name of the main component registered from JavaScript. This is used to schedule
    * rendering of the component.
@@ -28,7 +48,16 @@ public class MainActivity extends ReactActivity implements DGMVAutofillServiceBr
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
+    ReactMarker.addListener(contentAppearedListener);
     super.onCreate(savedInstanceState);
+    WarmReactHost.getInstance(getApplication()).attachActivity();
+  }
+
+  @Override
+  protected void onDestroy() {
+    super.onDestroy();
+    ReactMarker.removeListener(contentAppearedListener);
+    WarmReactHost.getInstance(getApplication()).detachActivity();
   }
 
   @Override
@@ -36,6 +65,11 @@ public class MainActivity extends ReactActivity implements DGMVAutofillServiceBr
     super.onNewIntent(intent);
   }
 
+  @Override
+  public int getAutofillRequestId() {
+    return autofillRequestId;
+  }
+
   @Override
   protected ReactActivityDelegate createReactActivityDelegate() {
     return new ReactActivityDelegate(this, getMainComponentName()) {
@@ -44,15 +78,27 @@ public class MainActivity extends ReactActivity implements DGMVAutofillServiceBr
         Bundle initialProperties = super.getLaunchOptions();
         if (initialProperties == null) initialProperties = new Bundle();
 
-        DGMVAutofillServiceBridge.setPackageName(getPackageName());
         DGMVAutofillServiceBridge bridge = DGMVAutofillServiceBridge.getInstance();
-        DGMVAutofillServiceBridge.RequestInfo requestInfo = bridge.getRequestInfo();
 
-        if (requestInfo.willStartExtension()) {
-          bridge.registerCompletionHandler(MainActivity.this);
+        // Requests come from the autofill process and are registered in this one
+        DGMVAutofillServiceBridge.RequestInfo requestInfo =
+            bridge.register(getIntent().getBundleExtra(DGMVAutofillServiceBridge.EXTRA_REQUEST));
+
+        if (requestInfo != null && bridge.registerCompletionHandler(requestInfo.getRequestId(), MainActivity.this)) {
+          autofillRequestId = requestInfo.getRequestId();
+          autofillRequestInfo = requestInfo;
+          requestInfo.recordPhase(AutofillMetrics.PHASE_LAUNCH);
 
           ArrayList<Bundle> serviceIdentifiers = new ArrayList<Bundle>();
 
+          // The registrable domain comes first, so all hosts of a site share credentials
+          if (requestInfo.getSiteURL() != null) {
+            Bundle site = new Bundle();
+            site.putString("identifier", requestInfo.getSiteURL());
+            site.putString("type", "domain");
+            serviceIdentifiers.add(site);
+          }
+
           if (requestInfo.hasURL()) {
             Bundle test = new Bundle();
             test.putString("identifier", requestInfo.getURL());
@@ -60,11 +106,21 @@ public class MainActivity extends ReactActivity implements DGMVAutofillServiceBr
             serviceIdentifiers.add(test);
           }
 
+          // Native apps have no URL, but may be associated with websites
+          for (String domain : requestInfo.getAssociatedDomains()) {
+            Bundle associated = new Bundle();
+            associated.putString("identifier", "https://" + domain);
+            associated.putString("type", "domain");
+            serviceIdentifiers.add(associated);
+          }
+
+          // The account of the dataset the user tapped, the only one the reply may contain
+          if (requestInfo.getDatasetUsername() != null) {
+            initialProperties.putString("datasetUsername", requestInfo.getDatasetUsername());
+          }
+
           initialProperties.putBoolean("isActionExtension", true);
           initialProperties.putParcelableArrayList("serviceIdentifiers", serviceIdentifiers);
-
-        } else {
-          bridge.registerCompletionHandler(null);
         }
 
         return initialProperties;
@@ -80,6 +136,14 @@ public class MainActivity extends ReactActivity implements DGMVAutofillServiceBr
     finish();
   }
 
+  @Override
+  public void requestCompleted(Dataset dataset) {
+    Intent replyIntent = new Intent();
+    replyIntent.putExtra(EXTRA_AUTHENTICATION_RESULT, dataset);
+    setResult(RESULT_OK, replyIntent);
+    finish();
+  }
+
   @Override
   public void requestCancelled(String reason) {
     setResult(RESULT_CANCELED);
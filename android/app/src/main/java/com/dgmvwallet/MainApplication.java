@@ -3,48 +3,96 @@ package com.dgmvwallet;
 import android.app.Application;
 import android.content.Context;
 
+import com.dgmvwallet.autofill.DGMVAutofillServiceBridge;
 import com.dgmvwallet.autofill.DGMVPackage;
+import com.dgmvwallet.autofill.WarmReactHost;
 import com.facebook.react.PackageList;
 import com.facebook.react.ReactApplication;
+import com.facebook.react.ReactInstanceManager;
 import com.facebook.react.ReactNativeHost;
 import com.facebook.react.ReactPackage;
 import com.facebook.soloader.SoLoader;
 import java.lang.reflect.InvocationTargetException;
 import java.util.List;
 
+/**
+ * The application of both processes of the app. The autofill service and its providers run
+ * in the ":autofill" process, which never touches React Native: the host is only created
+ * when an activity or the warm-up asks for it, so that process loads neither the native
+ * libraries nor the React classes.
+ */
 public class MainApplication extends Application implements ReactApplication {
 
-  private final ReactNativeHost mReactNativeHost =
-      new ReactNativeHost(this) {
-        @Override
-        public boolean getUseDeveloperSupport() {
-          return BuildConfig.DEBUG;
-        }
-
-        @Override
-        protected List<ReactPackage> getPackages() {
-          @SuppressWarnings("UnnecessaryLocalVariable")
-          List<ReactPackage> packages = new PackageList(this).getPackages();
-          packages.add(new DGMVPackage());
-          return packages;
-        }
-
-        @Override
-        protected String getJSMainModuleName() {
-          return "index";
-        }
-      };
+  private ReactNativeHost mReactNativeHost;
+
+  private ReactNativeHost createReactNativeHost() {
+    return new ReactNativeHost(this) {
+      @Override
+      public boolean getUseDeveloperSupport() {
+        return BuildConfig.DEBUG;
+      }
+
+      @Override
+      protected List<ReactPackage> getPackages() {
+        @SuppressWarnings("UnnecessaryLocalVariable")
+        List<ReactPackage> packages = new PackageList(this).getPackages();
+        packages.add(new DGMVPackage());
+        return packages;
+      }
+
+      @Override
+      protected String getJSMainModuleName() {
+        return "index";
+      }
+
+      @Override
+      protected ReactInstanceManager createReactInstanceManager() {
+        initializeReactNative();
+        return super.createReactInstanceManager();
+      }
+    };
+  }
+
+  private boolean reactNativeInitialized = false;
 
   @Override
-  public ReactNativeHost getReactNativeHost() {
+  public synchronized ReactNativeHost getReactNativeHost() {
+    if (mReactNativeHost == null) {
+      mReactNativeHost = createReactNativeHost();
+    }
     return mReactNativeHost;
   }
 
   @Override
   public void onCreate() {
     super.onCreate();
+
+    // Every process of the app needs it before the bridge is used, including an app process
+    // that was only started to warm up the React host
+    DGMVAutofillServiceBridge.setPackageName(getPackageName());
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    super.onTrimMemory(level);
+
+    // Only the app process ever creates the host
+    if (mReactNativeHost != null) {
+      WarmReactHost.getInstance(this).onTrimMemory(level);
+    }
+  }
+
+  /**
+   * Loads the native libraries of React Native. This is deferred until the first React
+   * instance is created, so the app process only pays for it once the autofill service
+   * hands off a request or an activity starts.
+   */
+  private synchronized void initializeReactNative() {
+    if (reactNativeInitialized) return;
+
     SoLoader.init(this, /* native exopackage */ false);
     initializeFlipper(this); // Remove this line if you don't want Flipper enabled
+    reactNativeInitialized = true;
   }
 
   /**
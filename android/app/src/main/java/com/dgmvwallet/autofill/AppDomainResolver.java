@@ -0,0 +1,412 @@
+package com.dgmvwallet.autofill;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves the web domains a native app is associated with, so fill requests of apps can
+ * be matched against the credentials of their websites.
+ *
+ * Associations come from Digital Asset Links statements, read from the bundled asset and
+ * from a file the app can provide at runtime. Both map a site to the statement list of
+ * its /.well-known/assetlinks.json:
+ * <pre>
+ *   { "https://example.com": [ { "relation": [...], "target": { "namespace": "android_app", ... } } ] }
+ * </pre>
+ * An app is associated with a site if a statement of the site grants
+ * {@link #RELATION_LOGIN_CREDENTIALS} to its package name and signing certificate.
+ *
+ * Results are kept per package name and certificate digest in a hash map that is persisted
+ * to disk, so a known app resolves with one lookup and the statements are only parsed for
+ * apps that are not cached yet. Entries expire after {@link #TTL_MS}, and the whole cache is
+ * dropped when the statement sources change. Apps signed by more than one certificate are
+ * not resolved.
+ */
+class AppDomainResolver {
+    static final String ASSET_NAME = "asset_links.json";
+    static final String LOCAL_FILE_NAME = "asset_links.json";
+    static final String CACHE_FILE_NAME = "app_domains.cache";
+
+    static final String RELATION_LOGIN_CREDENTIALS = "delegate_permission/common.get_login_creds";
+
+    // How long a resolved app is trusted before its statements are looked up again
+    static final long TTL_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final int CACHE_MAGIC = 0x44414443; // DADC
+    private static final int CACHE_VERSION = 1;
+
+    private static AppDomainResolver instance = null;
+
+    private final Context context;
+    private final File localFile;
+    private final File cacheFile;
+
+    // Package name and certificate digest to resolved domains, null until loaded
+    private HashMap<String, Entry> cache;
+    private long sourceStamp;
+
+    // All statements by package name and certificate digest, null until an app misses the cache
+    private HashMap<String, List<String>> statements;
+
+    private int hits = 0;
+    private int misses = 0;
+    private int expirations = 0;
+
+    private static final class Entry {
+        final List<String> domains;
+        final long resolvedAt;
+
+        Entry(List<String> domains, long resolvedAt) {
+            this.domains = domains;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+
+    static synchronized AppDomainResolver getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppDomainResolver(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AppDomainResolver(Context context) {
+        this.context = context;
+        this.localFile = new File(context.getFilesDir(), LOCAL_FILE_NAME);
+        this.cacheFile = new File(context.getNoBackupFilesDir(), CACHE_FILE_NAME);
+    }
+
+    /**
+     * @return the web domains associated with an app, empty if there are none
+     */
+    synchronized List<String> resolve(String packageName) {
+        if (packageName == null || packageName.isEmpty()) return Collections.emptyList();
+
+        // Checked on every request: an app with the same package name but another signer
+        // must not inherit the associations
+        String digest = getCertificateDigest(packageName);
+        if (digest == null) return Collections.emptyList();
+
+        loadCache();
+
+        String key = packageName + '/' + digest;
+        long now = System.currentTimeMillis();
+
+        Entry entry = cache.get(key);
+        if (entry != null && now - entry.resolvedAt < TTL_MS) {
+            ++hits;
+            return entry.domains;
+        }
+
+        if (entry != null) {
+            ++expirations;
+        } else {
+            ++misses;
+        }
+
+        List<String> domains = getStatements().get(key);
+        if (domains == null) domains = Collections.emptyList();
+
+        // Apps without associations are cached as well, so they are not looked up again
+        cache.put(key, new Entry(domains, now));
+        evictExpired(now);
+        writeCache();
+
+        return domains;
+    }
+
+    /**
+     * Stores the statements of a site in the local statement file and drops all cached
+     * results.
+     *
+     * @param statements the content of the site's assetlinks.json
+     */
+    synchronized void putStatements(String site, String statements) throws IOException, JSONException {
+        JSONObject local = readJson(localFile);
+        if (local == null) local = new JSONObject();
+
+        local.put(site, new JSONArray(statements));
+
+        File written = new File(localFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(written)) {
+            out.write(local.toString(2).getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        }
+
+        if (!written.renameTo(localFile)) {
+            throw new IOException("Could not replace " + localFile);
+        }
+
+        this.statements = null;
+        this.cache = null;
+        cacheFile.delete();
+    }
+
+    /**
+     * @return the hex SHA-256 digest of the signing certificate of an app, or null if it
+     * is not installed or has several signers
+     */
+    private String getCertificateDigest(String packageName) {
+        Signature[] signers;
+
+        try {
+            PackageManager packageManager = context.getPackageManager();
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                PackageInfo info = packageManager.getPackageInfo(packageName, PackageManager.GET_SIGNING_CERTIFICATES);
+                signers = info.signingInfo != null ? info.signingInfo.getApkContentsSigners() : null;
+            } else {
+                @SuppressWarnings("deprecation")
+                PackageInfo info = packageManager.getPackageInfo(packageName, PackageManager.GET_SIGNATURES);
+                signers = info.signatures;
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            return null;
+        }
+
+        if (signers == null || signers.length != 1) return null;
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(signers[0].toByteArray());
+
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format(Locale.ROOT, "%02X", b & 0xff));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long getSourceStamp() {
+        long stamp = localFile.lastModified();
+
+        try {
+            stamp = 31 * stamp + context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            // Only the local file counts
+        }
+
+        return stamp;
+    }
+
+    private void loadCache() {
+        if (cache != null) return;
+
+        cache = new HashMap<>();
+        sourceStamp = getSourceStamp();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) return;
+
+            // Statements changed since the cache was written
+            if (in.readLong() != sourceStamp) return;
+
+            int count = in.readInt();
+            for (int i = 0; i < count; ++i) {
+                String key = in.readUTF();
+                long resolvedAt = in.readLong();
+
+                int domainCount = in.readInt();
+                List<String> domains = new ArrayList<>(domainCount);
+                for (int j = 0; j < domainCount; ++j) {
+                    domains.add(in.readUTF());
+                }
+
+                cache.put(key, new Entry(Collections.unmodifiableList(domains), resolvedAt));
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing cached yet
+        } catch (IOException e) {
+            Log.w("DGMV-Autofill", "Dropping unreadable app domain cache", e);
+            cache.clear();
+        }
+
+        evictExpired(System.currentTimeMillis());
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry> entries = cache.values().iterator();
+        while (entries.hasNext()) {
+            if (now - entries.next().resolvedAt >= TTL_MS) {
+                entries.remove();
+            }
+        }
+    }
+
+    private void writeCache() {
+        File written = new File(cacheFile.getPath() + ".tmp");
+
+        try {
+            FileOutputStream stream = new FileOutputStream(written);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_VERSION);
+                out.writeLong(sourceStamp);
+                out.writeInt(cache.size());
+
+                for (Map.Entry<String, Entry> entry : cache.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().resolvedAt);
+                    out.writeInt(entry.getValue().domains.size());
+
+                    for (String domain : entry.getValue().domains) {
+                        out.writeUTF(domain);
+                    }
+                }
+            }
+
+            if (!written.renameTo(cacheFile)) {
+                throw new IOException("Could not replace " + cacheFile);
+            }
+        } catch (IOException e) {
+            // The cache is rebuilt from the statements
+            Log.w("DGMV-Autofill", "Could not write app domain cache", e);
+        }
+    }
+
+    private HashMap<String, List<String>> getStatements() {
+        if (statements != null) return statements;
+
+        statements = new HashMap<>();
+
+        try (InputStream in = context.getAssets().open(ASSET_NAME)) {
+            addStatements(new JSONObject(readFully(in)));
+        } catch (IOException | JSONException e) {
+            Log.w("DGMV-Autofill", "Could not read bundled asset links", e);
+        }
+
+        JSONObject local = null;
+        try {
+            local = readJson(localFile);
+        } catch (IOException | JSONException e) {
+            Log.w("DGMV-Autofill", "Could not read local asset links", e);
+        }
+
+        if (local != null) addStatements(local);
+
+        return statements;
+    }
+
+    private void addStatements(JSONObject sites) {
+        Iterator<String> siteNames = sites.keys();
+        while (siteNames.hasNext()) {
+            String site = siteNames.next();
+            String domain = getSiteDomain(site);
+            JSONArray siteStatements = sites.optJSONArray(site);
+            if (domain == null || siteStatements == null) continue;
+
+            for (int i = 0; i < siteStatements.length(); ++i) {
+                JSONObject statement = siteStatements.optJSONObject(i);
+                if (statement == null || !grantsLoginCredentials(statement)) continue;
+
+                JSONObject target = statement.optJSONObject("target");
+                if (target == null || !"android_app".equals(target.optString("namespace"))) continue;
+
+                String packageName = target.optString("package_name", "");
+                JSONArray fingerprints = target.optJSONArray("sha256_cert_fingerprints");
+                if (packageName.isEmpty() || fingerprints == null) continue;
+
+                for (int j = 0; j < fingerprints.length(); ++j) {
+                    String fingerprint = fingerprints.optString(j);
+                    if (fingerprint == null) continue;
+
+                    String key = packageName + '/' + fingerprint.replace(":", "").toUpperCase(Locale.ROOT);
+                    List<String> domains = statements.get(key);
+                    if (domains == null) {
+                        domains = new ArrayList<>();
+                        statements.put(key, domains);
+                    }
+
+                    if (!domains.contains(domain)) domains.add(domain);
+                }
+            }
+        }
+    }
+
+    private static boolean grantsLoginCredentials(JSONObject statement) {
+        JSONArray relations = statement.optJSONArray("relation");
+        if (relations == null) return false;
+
+        for (int i = 0; i < relations.length(); ++i) {
+            if (RELATION_LOGIN_CREDENTIALS.equals(relations.optString(i))) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the host of a site such as "https://example.com", or null if it is not a site
+     */
+    private static String getSiteDomain(String site) {
+        try {
+            URI uri = new URI(site);
+            if (!"https".equalsIgnoreCase(uri.getScheme())) return null;
+            return DomainMatcher.normalizeHost(uri.getHost());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static JSONObject readJson(File file) throws IOException, JSONException {
+        try (InputStream in = new FileInputStream(file)) {
+            return new JSONObject(readFully(in));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AppDomainResolver{" +
+                "cached=" + (cache != null ? cache.size() : 0) +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", expirations=" + expirations +
+                '}';
+    }
+}
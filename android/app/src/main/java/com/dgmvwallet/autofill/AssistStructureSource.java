@@ -0,0 +1,223 @@
+package com.dgmvwallet.autofill;
+
+import android.app.assist.AssistStructure;
+import android.content.ComponentName;
+import android.os.Build;
+import android.util.Pair;
+import android.view.View;
+import android.view.ViewStructure;
+
+import java.util.List;
+
+/**
+ * {@link NodeSource} over the {@link AssistStructure} of a fill request. Nodes are the
+ * platform {@link AssistStructure.ViewNode}s themselves, so no wrappers are allocated.
+ */
+final class AssistStructureSource implements NodeSource<AssistStructure, AssistStructure.ViewNode> {
+    static final AssistStructureSource INSTANCE = new AssistStructureSource();
+
+    private AssistStructureSource() {}
+
+    @Override
+    public String getActivityComponent(AssistStructure structure) {
+        ComponentName component = structure.getActivityComponent();
+        return component != null ? component.flattenToShortString() : null;
+    }
+
+    @Override
+    public int getWindowCount(AssistStructure structure) {
+        return structure.getWindowNodeCount();
+    }
+
+    @Override
+    public AssistStructure.ViewNode getWindowRoot(AssistStructure structure, int index) {
+        return structure.getWindowNodeAt(index).getRootViewNode();
+    }
+
+    @Override
+    public CharSequence getWindowTitle(AssistStructure structure, int index) {
+        return structure.getWindowNodeAt(index).getTitle();
+    }
+
+    @Override
+    public int getChildCount(AssistStructure.ViewNode node) {
+        return node.getChildCount();
+    }
+
+    @Override
+    public AssistStructure.ViewNode getChildAt(AssistStructure.ViewNode node, int index) {
+        return node.getChildAt(index);
+    }
+
+    @Override
+    public int getId(AssistStructure.ViewNode node) {
+        return node.getId();
+    }
+
+    @Override
+    public boolean isFocused(AssistStructure.ViewNode node) {
+        return node.isFocused();
+    }
+
+    @Override
+    public boolean isFocusable(AssistStructure.ViewNode node) {
+        return node.isFocusable();
+    }
+
+    @Override
+    public int getVisibility(AssistStructure.ViewNode node) {
+        return node.getVisibility();
+    }
+
+    @Override
+    public int getImportantForAutofill(AssistStructure.ViewNode node) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return node.getImportantForAutofill();
+        }
+
+        return View.IMPORTANT_FOR_AUTOFILL_AUTO;
+    }
+
+    @Override
+    public int getWidth(AssistStructure.ViewNode node) {
+        return node.getWidth();
+    }
+
+    @Override
+    public int getHeight(AssistStructure.ViewNode node) {
+        return node.getHeight();
+    }
+
+    @Override
+    public String getClassName(AssistStructure.ViewNode node) {
+        return node.getClassName();
+    }
+
+    @Override
+    public CharSequence getText(AssistStructure.ViewNode node) {
+        return node.getText();
+    }
+
+    @Override
+    public String getHint(AssistStructure.ViewNode node) {
+        return node.getHint();
+    }
+
+    @Override
+    public String[] getAutofillHints(AssistStructure.ViewNode node) {
+        return node.getAutofillHints();
+    }
+
+    @Override
+    public int getInputType(AssistStructure.ViewNode node) {
+        return node.getInputType();
+    }
+
+    @Override
+    public String getWebDomain(AssistStructure.ViewNode node) {
+        return node.getWebDomain();
+    }
+
+    @Override
+    public String getWebScheme(AssistStructure.ViewNode node) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return node.getWebScheme();
+        }
+
+        return null;
+    }
+
+    @Override
+    public String getHtmlTag(AssistStructure.ViewNode node) {
+        ViewStructure.HtmlInfo htmlInfo = node.getHtmlInfo();
+        return htmlInfo != null ? htmlInfo.getTag() : null;
+    }
+
+    @Override
+    public int getHtmlAttributeCount(AssistStructure.ViewNode node) {
+        List<Pair<String, String>> attributes = getHtmlAttributes(node);
+        return attributes != null ? attributes.size() : 0;
+    }
+
+    @Override
+    public String getHtmlAttributeName(AssistStructure.ViewNode node, int index) {
+        return getHtmlAttributes(node).get(index).first;
+    }
+
+    @Override
+    public String getHtmlAttributeValue(AssistStructure.ViewNode node, int index) {
+        return getHtmlAttributes(node).get(index).second;
+    }
+
+    private static List<Pair<String, String>> getHtmlAttributes(AssistStructure.ViewNode node) {
+        ViewStructure.HtmlInfo htmlInfo = node.getHtmlInfo();
+        return htmlInfo != null ? htmlInfo.getAttributes() : null;
+    }
+
+    @Override
+    public String describe(AssistStructure.ViewNode node, int t) {
+        String intention = new String(new char[t * 2]).replace('\0', ' ');
+
+        String info = "@DEPTH=" + t + ": " + intention;
+
+        info += "id=" + node.getId() + ", ";
+
+        String[] strings = node.getAutofillHints();
+        if (strings != null) {
+            info += "hints=" + String.join(",", strings);
+        }
+
+        // Get Hint
+        String hint = node.getHint();
+        if (hint != null && !hint.isEmpty())
+            info += "HINT=" + hint + ", ";
+
+        // Get Text
+        CharSequence cs = node.getText();
+        if (cs != null)
+            info += "text=" + cs.toString() + ", ";
+
+        // More attributes
+        info += "focused=" + node.isFocused() + ", ";
+        info += "focusable=" + node.isFocusable() + ", ";
+
+        ViewStructure.HtmlInfo htmlInfo = node.getHtmlInfo();
+        if (htmlInfo != null) {
+            String tag = htmlInfo.getTag();
+            String htmlDescription = htmlInfo.toString();
+            List<Pair<String, String>> attributes = htmlInfo.getAttributes();
+
+            if (attributes != null) {
+                info += "htmlAttributes=" + attributes.size() + ", ";
+            }
+
+            if (tag != null && !tag.isEmpty())
+                info += "htmlTag=" + tag + ", ";
+
+            if (htmlDescription != null && !htmlDescription.isEmpty())
+                info += "htmlDescription=" + htmlDescription + ", ";
+        }
+
+        String className = node.getClassName();
+        if (className != null && !className.isEmpty())
+            info += "className=" + className + ", ";
+
+        CharSequence contentDescription = node.getContentDescription();
+        if (contentDescription != null && contentDescription.length() > 0) {
+            info += "cd=" + contentDescription.toString() + ", ";
+        }
+
+        info += "it=" + node.getInputType() + ", ";
+
+        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.P) {
+            String textIdEntry = null;
+            textIdEntry = node.getTextIdEntry();
+
+            if (textIdEntry != null && !textIdEntry.isEmpty()) {
+                info += "te=" + textIdEntry + ", ";
+            }
+        }
+
+        return info;
+    }
+}
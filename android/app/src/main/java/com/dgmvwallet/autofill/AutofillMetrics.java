@@ -0,0 +1,95 @@
+package com.dgmvwallet.autofill;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+/**
+ * Latency of each phase of an autofill request, kept in {@link LatencyHistogram}s that are
+ * allocated once.
+ *
+ * Phases are measured with {@link SystemClock#elapsedRealtimeNanos()}, which is shared by
+ * all processes, so a phase may start in the service and end in the authenticator. The
+ * histograms are printed through the dump() output of the autofill service and returned to
+ * JS by {@link CredentialProviderRequest#getLatencyMetrics}.
+ */
+public final class AutofillMetrics {
+    // onFillRequest until a worker picks the request up
+    public static final int PHASE_FILL_QUEUE = 0;
+    // Parsing the fill contexts of a request
+    public static final int PHASE_PARSE = 1;
+    // onFillRequest until the response is handed to the framework
+    public static final int PHASE_FILL = 2;
+    // Response handed to the framework until the authenticator reads its launch options.
+    // Includes the time until the user taps the authentication entry.
+    public static final int PHASE_LAUNCH = 3;
+    // Launch options until the first React content is shown
+    public static final int PHASE_JS_BOOT = 4;
+    // First React content until JS answers the request
+    public static final int PHASE_USER = 5;
+    // Building the response out of the credentials picked in JS
+    public static final int PHASE_RESPONSE = 6;
+
+    static final String[] PHASE_NAMES = {
+        "fill-queue", "parse", "fill", "launch", "js-boot", "user", "response",
+    };
+
+    private static final LatencyHistogram[] histograms = new LatencyHistogram[PHASE_NAMES.length];
+
+    static {
+        for (int i = 0; i < histograms.length; ++i) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    private AutofillMetrics() {}
+
+    /**
+     * @return the current time, to be passed to {@link #record(int, long)} later
+     */
+    public static long now() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    /**
+     * Records the time since a start returned by {@link #now()}.
+     *
+     * @param phase one of the PHASE_ constants
+     * @return the current time, so the next phase can start where this one ended
+     */
+    public static long record(int phase, long startNanos) {
+        long end = now();
+        histograms[phase].record((end - startNanos) / 1000);
+        return end;
+    }
+
+    static LatencyHistogram.Snapshot snapshot(int phase) {
+        return histograms[phase].snapshot();
+    }
+
+    static void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Prints one line per phase, with percentiles in milliseconds.
+     */
+    static void dump(PrintWriter pw) {
+        pw.println("AutofillMetrics{phases=" + PHASE_NAMES.length + "}");
+
+        for (int phase = 0; phase < PHASE_NAMES.length; ++phase) {
+            LatencyHistogram.Snapshot snapshot = snapshot(phase);
+
+            pw.println(String.format(Locale.ROOT, "  %-10s count=%d p50=%.3f p90=%.3f p99=%.3f max=%.3f",
+                    PHASE_NAMES[phase],
+                    snapshot.count,
+                    snapshot.getValueAtPercentile(50) / 1000.0,
+                    snapshot.getValueAtPercentile(90) / 1000.0,
+                    snapshot.getValueAtPercentile(99) / 1000.0,
+                    snapshot.maxMicros / 1000.0));
+        }
+    }
+}
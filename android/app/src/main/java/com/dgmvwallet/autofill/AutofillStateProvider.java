@@ -0,0 +1,280 @@
+package com.dgmvwallet.autofill;
+
+import android.content.BroadcastReceiver;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.dgmvwallet.BuildConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entry point of the autofill process for the state the authenticator changes.
+ *
+ * {@link DGMVAutofillService} runs in its own process, without React Native, so the
+ * credential index and the session cache it reads live there. The authenticator runs in
+ * the app process and hands the credentials the user picked, index locks, rewritten
+ * credential index images and Digital Asset Links statements over through {@link #call}. It
+ * also reads the credential log through it, as only the autofill process may touch that
+ * file. The provider is not exported, so only this app can call it; a call starts the
+ * autofill process if it is not running. Locks are broadcast instead, as there is nothing
+ * to lock in an autofill process that is not running.
+ */
+public class AutofillStateProvider extends ContentProvider {
+    static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".autofill.state";
+
+    private static final Uri URI = Uri.parse("content://" + AUTHORITY);
+
+    // Received by the autofill process while it runs, see lockCredentialIndex()
+    static final String ACTION_LOCK_CREDENTIAL_INDEX = BuildConfig.APPLICATION_ID + ".autofill.LOCK_CREDENTIAL_INDEX";
+
+    private static final String METHOD_PUT_CREDENTIALS = "putCredentials";
+    private static final String METHOD_RELOAD_CREDENTIAL_INDEX = "reloadCredentialIndex";
+    private static final String METHOD_PUT_ASSET_LINKS = "putAssetLinks";
+    private static final String METHOD_READ_CREDENTIAL_LOG = "readCredentialLog";
+
+    // The log is read on its writer thread, after the pending saves
+    private static final long READ_CREDENTIAL_LOG_TIMEOUT_MS = 10 * 1000;
+
+    private static final String KEY_WEB_DOMAIN = "webDomain";
+    private static final String KEY_PACKAGE_NAME = "packageName";
+    private static final String KEY_SESSION_KEY = "sessionKey";
+    private static final String KEY_USERNAMES = "usernames";
+    private static final String KEY_PASSWORDS = "passwords";
+    private static final String KEY_SITE = "site";
+    private static final String KEY_STATEMENTS = "statements";
+    private static final String KEY_REALMS = "realms";
+    private static final String KEY_TIMESTAMPS = "timestamps";
+    private static final String KEY_ERROR = "error";
+
+    // Any app could send the lock, but all it does is lock
+    private final BroadcastReceiver lockReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            CredentialIndex.getInstance().lock();
+        }
+    };
+
+    @Override
+    public boolean onCreate() {
+        // May run before the service, which sets the same matcher
+        CredentialIndex.getInstance().setDomainMatcher(DomainMatcher.getInstance(getContext()));
+
+        // Runs when the autofill process starts, and lives as long as it
+        getContext().registerReceiver(lockReceiver, new IntentFilter(ACTION_LOCK_CREDENTIAL_INDEX));
+        return true;
+    }
+
+    /**
+     * Remembers the credentials the user picked for a request, in the credential index
+     * and in the session of the request.
+     */
+    static void putCredentials(Context context, String webDomain, String packageName, String sessionKey,
+                               List<DGMVAutofillServiceBridge.Credential> credentials) {
+        String[] usernames = new String[credentials.size()];
+        String[] passwords = new String[credentials.size()];
+        for (int i = 0; i < credentials.size(); ++i) {
+            usernames[i] = credentials.get(i).username;
+            passwords[i] = credentials.get(i).password;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putString(KEY_WEB_DOMAIN, webDomain);
+        extras.putString(KEY_PACKAGE_NAME, packageName);
+        extras.putString(KEY_SESSION_KEY, sessionKey);
+        extras.putStringArray(KEY_USERNAMES, usernames);
+        extras.putStringArray(KEY_PASSWORDS, passwords);
+        send(context, METHOD_PUT_CREDENTIALS, extras);
+    }
+
+    /**
+     * Locks the credential index if the autofill process is running. Unlike a call, the
+     * broadcast does not start the process and does not wait for it.
+     */
+    static void lockCredentialIndex(Context context) {
+        context.sendBroadcast(new Intent(ACTION_LOCK_CREDENTIAL_INDEX).setPackage(context.getPackageName()));
+    }
+
+    /**
+     * Maps the credential index image again, after the wallet replaced or deleted it.
+     */
+    static void reloadCredentialIndex(Context context) {
+        send(context, METHOD_RELOAD_CREDENTIAL_INDEX, null);
+    }
+
+    /**
+     * @see AppDomainResolver#putStatements(String, String)
+     */
+    static void putAssetLinks(Context context, String site, String statements) throws IOException {
+        Bundle extras = new Bundle();
+        extras.putString(KEY_SITE, site);
+        extras.putString(KEY_STATEMENTS, statements);
+
+        Bundle result = send(context, METHOD_PUT_ASSET_LINKS, extras);
+        if (result == null) throw new IOException("Autofill process not available");
+        if (result.getString(KEY_ERROR) != null) throw new IOException(result.getString(KEY_ERROR));
+    }
+
+    /**
+     * @see CredentialLog#read(CredentialLog.Reader)
+     */
+    static List<CredentialLog.Record> readCredentialLog(Context context) throws IOException {
+        Bundle result = send(context, METHOD_READ_CREDENTIAL_LOG, null);
+        if (result == null) throw new IOException("Autofill process not available");
+        if (result.getString(KEY_ERROR) != null) throw new IOException(result.getString(KEY_ERROR));
+
+        long[] timestamps = result.getLongArray(KEY_TIMESTAMPS);
+        String[] realms = result.getStringArray(KEY_REALMS);
+        String[] usernames = result.getStringArray(KEY_USERNAMES);
+        String[] passwords = result.getStringArray(KEY_PASSWORDS);
+
+        List<CredentialLog.Record> records = new ArrayList<>(timestamps.length);
+        for (int i = 0; i < timestamps.length; ++i) {
+            records.add(new CredentialLog.Record(timestamps[i], realms[i], usernames[i], passwords[i]));
+        }
+        return records;
+    }
+
+    private static Bundle send(Context context, String method, Bundle extras) {
+        try {
+            return context.getContentResolver().call(URI, method, null, extras);
+        } catch (RuntimeException e) {
+            // The autofill process died during the call, it starts over without this state
+            Log.e("DGMV-Autofill", "Could not reach the autofill process", e);
+            return null;
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        switch (method) {
+            case METHOD_PUT_CREDENTIALS: {
+                String webDomain = extras.getString(KEY_WEB_DOMAIN);
+                String packageName = extras.getString(KEY_PACKAGE_NAME);
+                String[] usernames = extras.getStringArray(KEY_USERNAMES);
+                String[] passwords = extras.getStringArray(KEY_PASSWORDS);
+
+                List<DGMVAutofillServiceBridge.Credential> credentials = new ArrayList<>(usernames.length);
+                CredentialIndex index = CredentialIndex.getInstance();
+                for (int i = 0; i < usernames.length; ++i) {
+                    index.put(webDomain, packageName, usernames[i], passwords[i]);
+                    credentials.add(new DGMVAutofillServiceBridge.Credential(usernames[i], passwords[i]));
+                }
+
+                SessionCredentialCache.getInstance().put(extras.getString(KEY_SESSION_KEY), credentials);
+                return null;
+            }
+
+            case METHOD_RELOAD_CREDENTIAL_INDEX:
+                CredentialIndex.getInstance().loadImage(CredentialIndex.getImageFile(getContext()));
+                return null;
+
+            case METHOD_PUT_ASSET_LINKS: {
+                Bundle result = new Bundle();
+                try {
+                    AppDomainResolver.getInstance(getContext())
+                            .putStatements(extras.getString(KEY_SITE), extras.getString(KEY_STATEMENTS));
+                } catch (Exception e) {
+                    result.putString(KEY_ERROR, e.getMessage());
+                }
+                return result;
+            }
+
+            case METHOD_READ_CREDENTIAL_LOG:
+                return readCredentialLog();
+
+            default:
+                throw new IllegalArgumentException("Unknown method " + method);
+        }
+    }
+
+    private Bundle readCredentialLog() {
+        Bundle result = new Bundle();
+        CountDownLatch done = new CountDownLatch(1);
+
+        CredentialLog.getInstance(getContext()).read(new CredentialLog.Reader() {
+            @Override
+            public void onRecords(List<CredentialLog.Record> records) {
+                long[] timestamps = new long[records.size()];
+                String[] realms = new String[records.size()];
+                String[] usernames = new String[records.size()];
+                String[] passwords = new String[records.size()];
+                for (int i = 0; i < records.size(); ++i) {
+                    CredentialLog.Record record = records.get(i);
+                    timestamps[i] = record.timestamp;
+                    realms[i] = record.realm;
+                    usernames[i] = record.username;
+                    passwords[i] = record.password;
+                }
+
+                result.putLongArray(KEY_TIMESTAMPS, timestamps);
+                result.putStringArray(KEY_REALMS, realms);
+                result.putStringArray(KEY_USERNAMES, usernames);
+                result.putStringArray(KEY_PASSWORDS, passwords);
+                done.countDown();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                result.putString(KEY_ERROR, e.getMessage() != null ? e.getMessage() : e.toString());
+                done.countDown();
+            }
+        });
+
+        String error = null;
+        try {
+            if (!done.await(READ_CREDENTIAL_LOG_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                error = "Timed out reading the credential log";
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "Interrupted reading the credential log";
+        }
+
+        if (error != null) {
+            // The reader may still fill the other bundle later
+            Bundle failed = new Bundle();
+            failed.putString(KEY_ERROR, error);
+            return failed;
+        }
+        return result;
+    }
+
+    // Only call() is used
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,117 @@
+package com.dgmvwallet.autofill;
+
+import java.io.PrintWriter;
+
+/**
+ * Level-gated tracing for the autofill hot path.
+ *
+ * Events are fixed-size records of plain ints written into a ring buffer that is
+ * allocated once, so recording neither builds strings nor calls into the log. Call sites
+ * check {@link #on(int)} first, which makes tracing a single field read when disabled.
+ * The buffer is printed on demand through the dump() output of the autofill service.
+ */
+final class AutofillTrace {
+    static final int LEVEL_OFF = 0;
+    static final int LEVEL_EVENTS = 1;
+    // Additionally logs a full description of every visited node. Allocates heavily.
+    static final int LEVEL_VERBOSE = 2;
+
+    static final int EVENT_LABEL = 1;
+    static final int EVENT_SELECT = 2;
+    static final int EVENT_DUPLICATE = 3;
+    static final int EVENT_WINDOW_FOCUSED = 4;
+    static final int EVENT_LAYOUT_HIT = 5;
+    static final int EVENT_LAYOUT_INVALID = 6;
+    static final int EVENT_BUDGET = 7;
+
+    static final int KIND_NONE = 0;
+    static final int KIND_USERNAME = 1;
+    static final int KIND_PASSWORD = 2;
+
+    private static final String[] EVENT_NAMES = {
+        "?", "label", "select", "duplicate", "window-focused", "layout-hit", "layout-invalid", "budget",
+    };
+
+    private static final String[] KIND_NAMES = { "-", "username", "password" };
+
+    private static final int CAPACITY = 512;
+    private static final int FIELDS = 6;
+
+    private static final int[] events = new int[CAPACITY * FIELDS];
+    private static int sequence = 0;
+
+    /**
+     * Receives the output of the verbose level.
+     */
+    interface Printer {
+        void println(String line);
+    }
+
+    private static volatile int level = LEVEL_OFF;
+    private static volatile Printer verbosePrinter = null;
+
+    private AutofillTrace() {}
+
+    static boolean on(int atLeast) {
+        return level >= atLeast;
+    }
+
+    static void setLevel(int newLevel) {
+        level = newLevel;
+    }
+
+    static void setVerbosePrinter(Printer printer) {
+        verbosePrinter = printer;
+    }
+
+    static void verbose(String line) {
+        Printer printer = verbosePrinter;
+        if (printer != null) printer.println(line);
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param depth depth of the node in the window, or -1
+     * @param kind one of the KIND_ constants
+     * @param value event specific value, such as a confidence or a text length
+     * @param viewId view id of the node, or 0
+     */
+    static synchronized void record(int event, int depth, int kind, int value, int viewId) {
+        int offset = (sequence % CAPACITY) * FIELDS;
+
+        events[offset] = sequence;
+        events[offset + 1] = event;
+        events[offset + 2] = depth;
+        events[offset + 3] = kind;
+        events[offset + 4] = value;
+        events[offset + 5] = viewId;
+
+        ++sequence;
+    }
+
+    static synchronized void clear() {
+        sequence = 0;
+    }
+
+    /**
+     * Prints the buffered events, oldest first.
+     */
+    static synchronized void dump(PrintWriter pw) {
+        int count = Math.min(sequence, CAPACITY);
+        pw.println("AutofillTrace{level=" + level + ", events=" + sequence + ", buffered=" + count + "}");
+
+        for (int i = sequence - count; i < sequence; ++i) {
+            int offset = (i % CAPACITY) * FIELDS;
+            int event = events[offset + 1];
+            int kind = events[offset + 3];
+
+            pw.println("  #" + events[offset]
+                    + " " + (event < EVENT_NAMES.length ? EVENT_NAMES[event] : EVENT_NAMES[0])
+                    + " depth=" + events[offset + 2]
+                    + " kind=" + (kind < KIND_NAMES.length ? KIND_NAMES[kind] : KIND_NAMES[0])
+                    + " value=" + events[offset + 4]
+                    + " id=" + events[offset + 5]);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.dgmvwallet.autofill;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Native index of the credentials the user has already picked. Websites are keyed by their
+ * registrable domain, so all hosts of a site share credentials; apps by their package name.
+ *
+ * The index is locked by default: usernames stay available so the service can offer one
+ * dataset per account, but passwords are only kept for a short time after the user
+ * authenticated in the app. Locking wipes them from memory.
+ *
+ * Besides the credentials picked in this process, lookups consult the
+ * {@link CredentialIndexImage} the wallet writes, memory-mapped from
+ * {@link #IMAGE_FILE_NAME}. The same locking applies: passwords of the image are only
+ * decrypted while the index is unlocked.
+ */
+class CredentialIndex {
+    // How long passwords stay available after the user authenticated
+    static final long UNLOCK_TIMEOUT_MS = 5 * 60 * 1000;
+
+    // Keeps package names apart from web domains
+    private static final String APP_KEY_PREFIX = "android:";
+
+    static final String IMAGE_FILE_NAME = "credential_index.img";
+
+    private static CredentialIndex instance = null;
+
+    private final HashMap<String, List<Entry>> entries = new HashMap<>();
+    private DomainMatcher domainMatcher;
+    private CredentialIndexImage image;
+    private long unlockedUntil = 0;
+
+    private static final class Entry {
+        final String username;
+        // Web host the credential was last picked for, null for apps
+        String host;
+        char[] password;
+
+        Entry(String username) {
+            this.username = username;
+        }
+    }
+
+    /**
+     * A credential returned by a lookup. The password is null while the index is locked.
+     */
+    static final class Credential {
+        final String username;
+        final String password;
+
+        Credential(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+
+        boolean isLocked() {
+            return password == null;
+        }
+    }
+
+    static synchronized CredentialIndex getInstance() {
+        if (instance == null) {
+            instance = new CredentialIndex();
+        }
+        return instance;
+    }
+
+    static String normalizeRealm(String realm) {
+        return realm != null ? realm.toLowerCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Groups web domains by registrable domain once a matcher is set. Without one,
+     * web domains are only matched exactly.
+     */
+    synchronized void setDomainMatcher(DomainMatcher domainMatcher) {
+        this.domainMatcher = domainMatcher;
+    }
+
+    private String getKey(String webDomain, String packageName) {
+        return getRealmKey(domainMatcher, webDomain, packageName);
+    }
+
+    /**
+     * @return the key credentials of a website or app are stored under, or null if there
+     * is neither
+     */
+    static String getRealmKey(DomainMatcher domainMatcher, String webDomain, String packageName) {
+        String host = DomainMatcher.normalizeHost(webDomain);
+        if (host != null) {
+            return domainMatcher != null ? domainMatcher.getRegistrableDomain(host) : host;
+        }
+
+        if (packageName == null || packageName.isEmpty()) return null;
+        return APP_KEY_PREFIX + normalizeRealm(packageName);
+    }
+
+    /**
+     * Stores a credential the user picked and keeps the index unlocked for
+     * {@link #UNLOCK_TIMEOUT_MS}.
+     *
+     * @param webDomain the web domain of the request, or null for apps
+     * @param packageName the package name of the requesting app
+     */
+    synchronized void put(String webDomain, String packageName, String username, String password) {
+        String key = getKey(webDomain, packageName);
+        if (key == null) return;
+        if (username == null) username = "";
+
+        List<Entry> realmEntries = entries.get(key);
+        if (realmEntries == null) {
+            realmEntries = new ArrayList<>();
+            entries.put(key, realmEntries);
+        }
+
+        Entry entry = null;
+        for (Entry candidate : realmEntries) {
+            if (candidate.username.equals(username)) {
+                entry = candidate;
+                break;
+            }
+        }
+
+        if (entry == null) {
+            entry = new Entry(username);
+            realmEntries.add(entry);
+        }
+
+        wipe(entry);
+        entry.host = DomainMatcher.normalizeHost(webDomain);
+        entry.password = password != null ? password.toCharArray() : null;
+
+        unlockedUntil = SystemClock.elapsedRealtime() + UNLOCK_TIMEOUT_MS;
+    }
+
+    /**
+     * Returns the credentials stored for a site or app, with passwords if the index is
+     * unlocked. Credentials of a site are ordered by how well their host matches the
+     * requested one, exact matches first.
+     */
+    synchronized List<Credential> find(String webDomain, String packageName) {
+        String key = getKey(webDomain, packageName);
+        if (key == null) return Collections.emptyList();
+
+        boolean unlocked = isUnlocked();
+
+        List<Entry> realmEntries = entries.get(key);
+        if (realmEntries == null) realmEntries = Collections.emptyList();
+
+        // Accounts of the image that were not picked in this process, only for this lookup
+        List<Entry> imageEntries = findInImage(key, realmEntries, unlocked);
+        if (realmEntries.isEmpty() && imageEntries.isEmpty()) return Collections.emptyList();
+
+        List<Entry> ordered = realmEntries;
+        if (!imageEntries.isEmpty()) {
+            ordered = new ArrayList<>(realmEntries);
+            ordered.addAll(imageEntries);
+        }
+
+        if (domainMatcher != null && ordered.size() > 1 && webDomain != null) {
+            if (ordered == realmEntries) ordered = new ArrayList<>(realmEntries);
+
+            // Stable, so entries of equal rank keep the order they were picked in
+            Collections.sort(ordered, (a, b) ->
+                    domainMatcher.rank(b.host, webDomain) - domainMatcher.rank(a.host, webDomain));
+        }
+
+        List<Credential> credentials = new ArrayList<>(ordered.size());
+        for (Entry entry : ordered) {
+            String password = unlocked && entry.password != null ? new String(entry.password) : null;
+            credentials.add(new Credential(entry.username, password));
+        }
+
+        for (Entry entry : imageEntries) {
+            wipe(entry);
+        }
+
+        return credentials;
+    }
+
+    private List<Entry> findInImage(String key, List<Entry> realmEntries, boolean unlocked) {
+        if (image == null) return Collections.emptyList();
+
+        List<CredentialIndexImage.Record> records;
+        try {
+            records = image.find(key, unlocked);
+        } catch (GeneralSecurityException e) {
+            Log.e("DGMV-Autofill", "Could not read credential index image", e);
+            return Collections.emptyList();
+        }
+
+        List<Entry> imageEntries = null;
+        for (CredentialIndexImage.Record record : records) {
+            boolean picked = false;
+            for (Entry entry : realmEntries) {
+                if (entry.username.equals(record.username)) {
+                    picked = true;
+                    break;
+                }
+            }
+            if (picked) continue;
+
+            Entry entry = new Entry(record.username);
+            entry.host = record.host;
+            entry.password = record.password != null ? record.password.toCharArray() : null;
+
+            if (imageEntries == null) imageEntries = new ArrayList<>();
+            imageEntries.add(entry);
+        }
+
+        return imageEntries != null ? imageEntries : Collections.<Entry>emptyList();
+    }
+
+    static File getImageFile(Context context) {
+        return new File(context.getNoBackupFilesDir(), IMAGE_FILE_NAME);
+    }
+
+    /**
+     * Maps the image written by the wallet, replacing the one mapped before. Unwrapping
+     * its key goes through the Keystore, so this runs on a background thread.
+     */
+    void loadImage(File file) {
+        CredentialIndexImage loaded = null;
+
+        if (file.exists()) {
+            // The mapping stays valid after the channel is closed, and after the file is replaced
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                loaded = CredentialIndexImage.wrap(mapped, KeystoreKeyProtector.INSTANCE);
+
+                if (loaded == null) Log.e("DGMV-Autofill", "Invalid credential index image");
+            } catch (IOException | GeneralSecurityException e) {
+                Log.e("DGMV-Autofill", "Could not map credential index image", e);
+            }
+        }
+
+        synchronized (this) {
+            image = loaded;
+        }
+    }
+
+    synchronized boolean isUnlocked() {
+        if (unlockedUntil == 0) return false;
+
+        if (SystemClock.elapsedRealtime() >= unlockedUntil) {
+            lock();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Wipes all passwords. Usernames are kept.
+     */
+    synchronized void lock() {
+        for (List<Entry> realmEntries : entries.values()) {
+            for (Entry entry : realmEntries) {
+                wipe(entry);
+            }
+        }
+
+        unlockedUntil = 0;
+    }
+
+    synchronized void clear() {
+        lock();
+        entries.clear();
+    }
+
+    private static void wipe(Entry entry) {
+        if (entry.password != null) {
+            Arrays.fill(entry.password, '\0');
+            entry.password = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CredentialIndex{" +
+                "realms=" + entries.size() +
+                ", unlocked=" + (unlockedUntil != 0 && SystemClock.elapsedRealtime() < unlockedUntil) +
+                ", image=" + image +
+                '}';
+    }
+}
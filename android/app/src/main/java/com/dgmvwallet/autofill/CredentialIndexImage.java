@@ -0,0 +1,341 @@
+package com.dgmvwallet.autofill;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The credentials of the wallet as a compact, encrypted image that can be memory-mapped.
+ *
+ * Records are keyed by a salted hash of their realm (see {@link CredentialIndex}) and
+ * sorted by it, so a lookup is a binary search over the table followed by decrypting the
+ * records of that realm only. Every record holds two sealed fields: the identity (host and
+ * username) and the secret (password). A locked lookup never decrypts a secret. Fields are
+ * encrypted with AES-GCM under a data key that is stored wrapped by a {@link KeyProtector},
+ * and authenticated with their realm, so a record cannot be moved to another realm.
+ *
+ * Image layout (big-endian):
+ * <pre>
+ *   header   int magic, int version, 16 bytes salt, int recordCount, int wrappedKeyLength
+ *   key      wrappedKeyLength bytes
+ *   table    recordCount * (long realmHash, int recordOffset), sorted by realmHash
+ *   records  int identityLength, identity, int secretLength, secret
+ * </pre>
+ * A sealed field is a 12 byte IV followed by the ciphertext. The identity is the host and
+ * the username as modified UTF-8 strings, the secret the UTF-8 password. A record without
+ * a password has a secret of length 0, and is found with a null password, so it is only
+ * ever filled through the authenticator.
+ */
+final class CredentialIndexImage {
+    private static final int MAGIC = 0x44434958; // DCIX
+    private static final int VERSION = 1;
+
+    private static final int SALT_LENGTH = 16;
+    private static final int HEADER_SIZE = 16 + SALT_LENGTH;
+    private static final int ENTRY_SIZE = 12;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_LENGTH = 32;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private static final byte FIELD_IDENTITY = 'I';
+    private static final byte FIELD_SECRET = 'S';
+
+    /**
+     * Protects the data key of an image, for example with a key of the Android Keystore.
+     */
+    interface KeyProtector {
+        byte[] wrap(byte[] key) throws GeneralSecurityException;
+        byte[] unwrap(byte[] wrappedKey) throws GeneralSecurityException;
+    }
+
+    /**
+     * A credential of a realm. The password is null in results of a locked lookup and for
+     * records without a password.
+     */
+    static final class Record {
+        final String realm;
+        // Web host the credential belongs to, null for apps
+        final String host;
+        final String username;
+        final String password;
+
+        Record(String realm, String host, String username, String password) {
+            this.realm = realm;
+            this.host = host;
+            this.username = username;
+            this.password = password;
+        }
+    }
+
+    private final ByteBuffer image;
+    private final byte[] salt;
+    private final int recordCount;
+    private final int tableOffset;
+    private final SecretKey dataKey;
+
+    private CredentialIndexImage(ByteBuffer image, byte[] salt, int recordCount, int tableOffset, SecretKey dataKey) {
+        this.image = image;
+        this.salt = salt;
+        this.recordCount = recordCount;
+        this.tableOffset = tableOffset;
+        this.dataKey = dataKey;
+    }
+
+    /**
+     * Wraps a compiled image, for example a memory-mapped file, and unwraps its data key.
+     *
+     * @return the image, or null if it is not a valid image of this version
+     */
+    static CredentialIndexImage wrap(ByteBuffer image, KeyProtector protector) throws GeneralSecurityException {
+        if (image.capacity() < HEADER_SIZE) return null;
+        if (image.getInt(0) != MAGIC || image.getInt(4) != VERSION) return null;
+
+        int recordCount = image.getInt(8 + SALT_LENGTH);
+        int wrappedKeyLength = image.getInt(12 + SALT_LENGTH);
+        long tableOffset = (long) HEADER_SIZE + wrappedKeyLength;
+
+        if (recordCount < 0 || wrappedKeyLength <= 0
+                || tableOffset + (long) recordCount * ENTRY_SIZE > image.capacity()) {
+            return null;
+        }
+
+        ByteBuffer view = image.duplicate();
+        byte[] salt = new byte[SALT_LENGTH];
+        view.position(8);
+        view.get(salt);
+
+        byte[] wrappedKey = new byte[wrappedKeyLength];
+        view.position(HEADER_SIZE);
+        view.get(wrappedKey);
+
+        byte[] key = protector.unwrap(wrappedKey);
+        try {
+            return new CredentialIndexImage(image, salt, recordCount, (int) tableOffset, new SecretKeySpec(key, "AES"));
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Compiles records into an image under a fresh data key and salt.
+     */
+    static byte[] compile(List<Record> records, KeyProtector protector) throws GeneralSecurityException {
+        SecureRandom random = new SecureRandom();
+
+        byte[] salt = new byte[SALT_LENGTH];
+        random.nextBytes(salt);
+
+        byte[] key = new byte[DATA_KEY_LENGTH];
+        random.nextBytes(key);
+
+        try {
+            SecretKey dataKey = new SecretKeySpec(key, "AES");
+            byte[] wrappedKey = protector.wrap(key);
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+
+            // Sorted by realm hash; records of the same realm keep their order
+            int count = records.size();
+            long[] hashes = new long[count];
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; ++i) {
+                hashes[i] = hash(salt, records.get(i).realm);
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(recordBytes);
+            int[] offsets = new int[count];
+            int recordsOffset = HEADER_SIZE + wrappedKey.length + count * ENTRY_SIZE;
+
+            for (int i = 0; i < count; ++i) {
+                Record record = records.get(order[i]);
+                offsets[i] = recordsOffset + out.size();
+
+                ByteArrayOutputStream identity = new ByteArrayOutputStream();
+                DataOutputStream identityOut = new DataOutputStream(identity);
+                identityOut.writeUTF(record.host != null ? record.host : "");
+                identityOut.writeUTF(record.username != null ? record.username : "");
+
+                byte[] sealedIdentity = seal(cipher, dataKey, random, record.realm, FIELD_IDENTITY, identity.toByteArray());
+                byte[] sealedSecret = record.password != null && !record.password.isEmpty()
+                        ? seal(cipher, dataKey, random, record.realm, FIELD_SECRET, record.password.getBytes(StandardCharsets.UTF_8))
+                        : new byte[0];
+
+                out.writeInt(sealedIdentity.length);
+                out.write(sealedIdentity);
+                out.writeInt(sealedSecret.length);
+                out.write(sealedSecret);
+            }
+
+            ByteBuffer image = ByteBuffer.allocate(recordsOffset + out.size());
+            image.putInt(MAGIC).putInt(VERSION).put(salt).putInt(count).putInt(wrappedKey.length).put(wrappedKey);
+            for (int i = 0; i < count; ++i) {
+                image.putLong(hashes[order[i]]).putInt(offsets[i]);
+            }
+            image.put(recordBytes.toByteArray());
+            return image.array();
+        } catch (IOException e) {
+            // Only written to memory
+            throw new IllegalStateException(e);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Decrypts the records of a realm, in the order they were compiled in.
+     *
+     * @param withPasswords false to decrypt the identities only, as for a locked index
+     * @return the records of the realm, empty if it has none
+     */
+    List<Record> find(String realm, boolean withPasswords) throws GeneralSecurityException {
+        if (realm == null || recordCount == 0) return Collections.emptyList();
+
+        long hash = hash(salt, realm);
+
+        // First table entry with the hash
+        int low = 0;
+        int high = recordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (image.getLong(tableOffset + middle * ENTRY_SIZE) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        List<Record> records = null;
+        Cipher cipher = null;
+
+        for (int i = low; i < recordCount && image.getLong(tableOffset + i * ENTRY_SIZE) == hash; ++i) {
+            if (cipher == null) cipher = Cipher.getInstance(TRANSFORMATION);
+
+            int offset = image.getInt(tableOffset + i * ENTRY_SIZE + 8);
+            int identityLength = readLength(offset);
+            byte[] identity;
+            try {
+                identity = open(cipher, realm, FIELD_IDENTITY, offset + 4, identityLength);
+            } catch (GeneralSecurityException e) {
+                // Another realm with the same hash
+                continue;
+            }
+
+            String host;
+            String username;
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(identity))) {
+                host = in.readUTF();
+                username = in.readUTF();
+            } catch (IOException e) {
+                throw new GeneralSecurityException("Invalid credential record", e);
+            } finally {
+                Arrays.fill(identity, (byte) 0);
+            }
+
+            String password = null;
+            if (withPasswords) {
+                int secretOffset = offset + 4 + identityLength;
+                int secretLength = readLength(secretOffset);
+                if (secretLength != 0) {
+                    byte[] secret = open(cipher, realm, FIELD_SECRET, secretOffset + 4, secretLength);
+                    // A sealed empty password counts as none as well
+                    if (secret.length != 0) password = new String(secret, StandardCharsets.UTF_8);
+                    Arrays.fill(secret, (byte) 0);
+                }
+            }
+
+            if (records == null) records = new ArrayList<>(2);
+            records.add(new Record(realm, !host.isEmpty() ? host : null, username, password));
+        }
+
+        return records != null ? records : Collections.<Record>emptyList();
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    private static byte[] seal(Cipher cipher, SecretKey key, SecureRandom random, String realm, byte field,
+                               byte[] plain) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, iv));
+        cipher.updateAAD(associatedData(realm, field));
+
+        byte[] sealed = Arrays.copyOf(iv, IV_LENGTH + cipher.getOutputSize(plain.length));
+        cipher.doFinal(plain, 0, plain.length, sealed, IV_LENGTH);
+        Arrays.fill(plain, (byte) 0);
+        return sealed;
+    }
+
+    private int readLength(int offset) throws GeneralSecurityException {
+        if (offset < 0 || (long) offset + 4 > image.capacity()) {
+            throw new GeneralSecurityException("Invalid credential record");
+        }
+        return image.getInt(offset);
+    }
+
+    private byte[] open(Cipher cipher, String realm, byte field, int offset, int length) throws GeneralSecurityException {
+        if (length < IV_LENGTH || offset < 0 || (long) offset + length > image.capacity()) {
+            throw new GeneralSecurityException("Invalid credential record");
+        }
+
+        byte[] sealed = new byte[length];
+        ByteBuffer view = image.duplicate();
+        view.position(offset);
+        view.get(sealed);
+
+        cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(TAG_LENGTH, sealed, 0, IV_LENGTH));
+        cipher.updateAAD(associatedData(realm, field));
+        return cipher.doFinal(sealed, IV_LENGTH, length - IV_LENGTH);
+    }
+
+    private static byte[] associatedData(String realm, byte field) {
+        byte[] realmBytes = realm.getBytes(StandardCharsets.UTF_8);
+        byte[] data = Arrays.copyOf(realmBytes, realmBytes.length + 1);
+        data[realmBytes.length] = field;
+        return data;
+    }
+
+    /**
+     * @return the first 8 bytes of SHA-256(salt, realm)
+     */
+    private static long hash(byte[] salt, String realm) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return ByteBuffer.wrap(digest.digest(realm.getBytes(StandardCharsets.UTF_8))).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CredentialIndexImage{" +
+                "records=" + recordCount +
+                ", bytes=" + image.capacity() +
+                '}';
+    }
+}
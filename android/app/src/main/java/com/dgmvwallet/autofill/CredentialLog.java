@@ -0,0 +1,353 @@
+package com.dgmvwallet.autofill;
+
+import android.content.Context;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Append-only, encrypted log of the credentials the user entered into other apps.
+ *
+ * Saves are handed to a background writer and return immediately. Pending saves are
+ * coalesced per realm and username, so only the newest value is written. Each record is
+ * encrypted on its own with an AES-GCM key held by the Android Keystore and prefixed by
+ * its length. Once the log has been idle for {@link #COMPACTION_IDLE_MS}, it is rewritten
+ * without the records that were superseded by newer ones.
+ *
+ * Reading cuts off a record that is still being written, so only the autofill process
+ * opens the log. The app process reads it through {@link AutofillStateProvider}.
+ */
+class CredentialLog {
+    static final String FILE_NAME = "autofill-credentials.log";
+
+    // Compaction runs once no save has arrived for this long
+    static final long COMPACTION_IDLE_MS = 30 * 1000;
+
+    private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "dgmv_credential_log";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    // Anything larger is a corrupted length prefix
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private static CredentialLog instance = null;
+
+    private final File file;
+    private final ScheduledExecutorService writer =
+            Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "DGMV-Autofill-Save"));
+
+    // Saves not written yet, keyed by realm and username. Guarded by this.
+    private final LinkedHashMap<String, Record> pending = new LinkedHashMap<>();
+
+    // Only accessed on the writer thread
+    private SecretKey key;
+    private boolean recovered = false;
+    private ScheduledFuture<?> compaction;
+
+    private int appended = 0;
+    private int coalesced = 0;
+    private int compactions = 0;
+    private int failures = 0;
+
+    static final class Record {
+        final long timestamp;
+        final String realm;
+        final String username;
+        final String password;
+
+        Record(long timestamp, String realm, String username, String password) {
+            this.timestamp = timestamp;
+            this.realm = realm;
+            this.username = username;
+            this.password = password;
+        }
+
+        String getKey() {
+            return realm + '\n' + username;
+        }
+    }
+
+    /**
+     * Receives the records of {@link #read(Reader)} on the writer thread.
+     */
+    interface Reader {
+        void onRecords(List<Record> records);
+        void onError(Exception e);
+    }
+
+    static synchronized CredentialLog getInstance(Context context) {
+        if (instance == null) {
+            instance = new CredentialLog(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    CredentialLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Queues a credential for writing and returns without touching the disk.
+     */
+    void append(String realm, String username, String password) {
+        realm = CredentialIndex.normalizeRealm(realm);
+        if (realm == null || realm.isEmpty() || password == null) return;
+        if (username == null) username = "";
+
+        Record record = new Record(System.currentTimeMillis(), realm, username, password);
+
+        synchronized (this) {
+            if (pending.remove(record.getKey()) != null) ++coalesced;
+            pending.put(record.getKey(), record);
+        }
+
+        writer.execute(this::flush);
+    }
+
+    /**
+     * Reads all records, including saves that are still pending. Superseded records are
+     * skipped, so there is one record per realm and username.
+     */
+    void read(Reader reader) {
+        writer.execute(() -> {
+            try {
+                flush();
+
+                LinkedHashMap<String, Record> latest = new LinkedHashMap<>();
+                for (Record record : readRecords()) {
+                    latest.remove(record.getKey());
+                    latest.put(record.getKey(), record);
+                }
+
+                reader.onRecords(new ArrayList<>(latest.values()));
+            } catch (IOException | GeneralSecurityException e) {
+                reader.onError(e);
+            }
+        });
+    }
+
+    private SecretKey getKey() throws GeneralSecurityException, IOException {
+        if (key != null) return key;
+
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+        keyStore.load(null);
+
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            key = ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+            return key;
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        key = generator.generateKey();
+        return key;
+    }
+
+    /**
+     * Writes all pending saves in one append. Runs on the writer thread.
+     */
+    private void flush() {
+        List<Record> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        try {
+            // A record cut short by a crash would hide everything appended after it
+            if (!recovered) {
+                readRecords();
+                recovered = true;
+            }
+
+            FileOutputStream stream = new FileOutputStream(file, true);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                for (Record record : batch) {
+                    writeRecord(out, getKey(), record);
+                }
+
+                out.flush();
+                stream.getFD().sync();
+            }
+
+            synchronized (this) {
+                appended += batch.size();
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            synchronized (this) {
+                ++failures;
+            }
+            Log.e("DGMV-Autofill", "Could not write credential log", e);
+            return;
+        }
+
+        scheduleCompaction();
+    }
+
+    private void scheduleCompaction() {
+        if (compaction != null) compaction.cancel(false);
+        compaction = writer.schedule(this::compact, COMPACTION_IDLE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Rewrites the log with the newest record per realm and username. Runs on the writer
+     * thread, so no append can interleave.
+     */
+    private void compact() {
+        compaction = null;
+
+        try {
+            List<Record> records = readRecords();
+
+            LinkedHashMap<String, Record> latest = new LinkedHashMap<>();
+            for (Record record : records) {
+                latest.remove(record.getKey());
+                latest.put(record.getKey(), record);
+            }
+
+            if (latest.size() == records.size()) return;
+
+            File compacted = new File(file.getPath() + ".tmp");
+            FileOutputStream stream = new FileOutputStream(compacted);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                for (Record record : latest.values()) {
+                    writeRecord(out, getKey(), record);
+                }
+
+                out.flush();
+                stream.getFD().sync();
+            }
+
+            if (!compacted.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+
+            synchronized (this) {
+                ++compactions;
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            synchronized (this) {
+                ++failures;
+            }
+            Log.e("DGMV-Autofill", "Could not compact credential log", e);
+        }
+    }
+
+    /**
+     * Reads all records in the order they were written. A trailing record that was not
+     * written completely is cut off. Records that cannot be decrypted, for example after
+     * the Keystore key was lost, are skipped.
+     */
+    private List<Record> readRecords() throws IOException, GeneralSecurityException {
+        List<Record> records = new ArrayList<>();
+        long validLength = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length = in.readInt();
+                if (length <= IV_LENGTH || length > MAX_RECORD_LENGTH) break;
+
+                byte[] data = new byte[length];
+                in.readFully(data);
+                validLength += 4 + length;
+
+                try {
+                    records.add(decryptRecord(getKey(), data));
+                } catch (GeneralSecurityException | IOException e) {
+                    Log.w("DGMV-Autofill", "Skipping unreadable credential record");
+                }
+            }
+        } catch (FileNotFoundException e) {
+            return records;
+        } catch (EOFException e) {
+            // End of the log, or a record cut short
+        }
+
+        if (validLength < file.length()) {
+            try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+                truncated.setLength(validLength);
+            }
+        }
+
+        return records;
+    }
+
+    private static void writeRecord(DataOutputStream out, SecretKey key, Record record)
+            throws IOException, GeneralSecurityException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        DataOutputStream fields = new DataOutputStream(plain);
+        fields.writeLong(record.timestamp);
+        fields.writeUTF(record.realm);
+        fields.writeUTF(record.username);
+        fields.writeUTF(record.password);
+
+        // The Keystore picks a fresh IV for every encryption
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+
+        byte[] iv = cipher.getIV();
+        byte[] encrypted = cipher.doFinal(plain.toByteArray());
+
+        out.writeInt(iv.length + encrypted.length);
+        out.write(iv);
+        out.write(encrypted);
+    }
+
+    private static Record decryptRecord(SecretKey key, byte[] data) throws GeneralSecurityException, IOException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH, data, 0, IV_LENGTH));
+        byte[] plain = cipher.doFinal(data, IV_LENGTH, data.length - IV_LENGTH);
+
+        DataInputStream fields = new DataInputStream(new ByteArrayInputStream(plain));
+        return new Record(fields.readLong(), fields.readUTF(), fields.readUTF(), fields.readUTF());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CredentialLog{" +
+                "pending=" + pending.size() +
+                ", appended=" + appended +
+                ", coalesced=" + coalesced +
+                ", compactions=" + compactions +
+                ", failures=" + failures +
+                '}';
+    }
+}
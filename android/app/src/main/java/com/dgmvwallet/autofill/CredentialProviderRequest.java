@@ -2,10 +2,15 @@ package com.dgmvwallet.autofill;
 
 import androidx.annotation.NonNull;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 
 import android.app.Activity;
 import android.content.Intent;
@@ -13,7 +18,17 @@ import android.net.Uri;
 import android.view.autofill.AutofillManager;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class CredentialProviderRequest extends ReactContextBaseJavaModule {
+    // Reads of the credential log wait for the autofill process, which would hold up every
+    // other native method call of React Native
+    private static final ExecutorService logExecutor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "DGMV-CredentialLog"));
+
     CredentialProviderRequest(ReactApplicationContext context) {
         super(context);
     }
@@ -53,11 +68,117 @@ public class CredentialProviderRequest extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void authenticationRequestCompleted(String username, String password) {
-        DGMVAutofillServiceBridge.getInstance().requestCompleted(username, password);
+        DGMVAutofillServiceBridge.getInstance()
+                .requestCompleted(getReactApplicationContext(), getRequestId(), username, password);
+    }
+
+    /**
+     * Completes the request with several credentials ({ username, password }), offered
+     * as one dataset each.
+     */
+    @ReactMethod
+    public void authenticationRequestCompletedWithCredentials(ReadableArray credentials) {
+        List<DGMVAutofillServiceBridge.Credential> list = new ArrayList<>(credentials.size());
+
+        for (int i = 0; i < credentials.size(); ++i) {
+            ReadableMap credential = credentials.getMap(i);
+            String username = credential.hasKey("username") && !credential.isNull("username")
+                    ? credential.getString("username")
+                    : null;
+
+            list.add(new DGMVAutofillServiceBridge.Credential(username, credential.getString("password")));
+        }
+
+        DGMVAutofillServiceBridge.getInstance().requestCompleted(getReactApplicationContext(), getRequestId(), list);
     }
 
     @ReactMethod
     public void authenticationRequestCancelled(String reason) {
-        DGMVAutofillServiceBridge.getInstance().requestCancelled(reason);
+        DGMVAutofillServiceBridge.getInstance().requestCancelled(getRequestId(), reason);
+    }
+
+    /**
+     * @return the autofill request answered by the current activity
+     */
+    private int getRequestId() {
+        Activity activity = getCurrentActivity();
+        if (activity instanceof DGMVAutofillServiceBridge.RequestHost) {
+            return ((DGMVAutofillServiceBridge.RequestHost) activity).getAutofillRequestId();
+        }
+        return DGMVAutofillServiceBridge.NO_REQUEST;
+    }
+
+    @ReactMethod
+    public void lockCredentialIndex() {
+        AutofillStateProvider.lockCredentialIndex(getReactApplicationContext());
+    }
+
+    /**
+     * Stores the Digital Asset Links statements of a site (the content of its
+     * assetlinks.json), so apps the site vouches for are matched with its credentials.
+     */
+    @ReactMethod
+    public void setAssetLinks(String site, String statements, Promise promise) {
+        try {
+            AutofillStateProvider.putAssetLinks(getReactApplicationContext(), site, statements);
+            promise.resolve(true);
+        } catch (Exception e) {
+            promise.reject("E_ASSET_LINKS", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resolves the credentials the user entered into other apps, newest last. The log is
+     * written by the autofill process, so it is read there as well.
+     */
+    @ReactMethod
+    public void getSavedCredentials(Promise promise) {
+        logExecutor.execute(() -> {
+            try {
+                List<CredentialLog.Record> records = AutofillStateProvider.readCredentialLog(getReactApplicationContext());
+                WritableArray result = Arguments.createArray();
+
+                for (CredentialLog.Record record : records) {
+                    WritableMap credential = Arguments.createMap();
+                    credential.putString("realm", record.realm);
+                    credential.putString("username", record.username);
+                    credential.putString("password", record.password);
+                    credential.putDouble("timestamp", record.timestamp);
+                    result.pushMap(credential);
+                }
+
+                promise.resolve(result);
+            } catch (Exception e) {
+                promise.reject("E_CREDENTIAL_LOG", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Resolves the latency of each phase of the autofill requests handled by this process,
+     * in milliseconds. The phases of the authenticator are measured here; fill-queue, parse
+     * and fill are measured in the autofill process and printed by its dump().
+     *
+     * @param reset clears the histograms after reading them
+     */
+    @ReactMethod
+    public void getLatencyMetrics(boolean reset, Promise promise) {
+        WritableArray result = Arguments.createArray();
+
+        for (int phase = 0; phase < AutofillMetrics.PHASE_NAMES.length; ++phase) {
+            LatencyHistogram.Snapshot snapshot = AutofillMetrics.snapshot(phase);
+
+            WritableMap metrics = Arguments.createMap();
+            metrics.putString("phase", AutofillMetrics.PHASE_NAMES[phase]);
+            metrics.putDouble("count", snapshot.count);
+            metrics.putDouble("p50", snapshot.getValueAtPercentile(50) / 1000.0);
+            metrics.putDouble("p90", snapshot.getValueAtPercentile(90) / 1000.0);
+            metrics.putDouble("p99", snapshot.getValueAtPercentile(99) / 1000.0);
+            metrics.putDouble("max", snapshot.maxMicros / 1000.0);
+            result.pushMap(metrics);
+        }
+
+        if (reset) AutofillMetrics.reset();
+        promise.resolve(result);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,142 @@
+package com.dgmvwallet.autofill;
+
+import android.content.IntentSender;
+import android.os.Build;
+import android.service.autofill.Dataset;
+import android.service.autofill.FillResponse;
+import android.view.autofill.AutofillId;
+import android.view.autofill.AutofillValue;
+import android.widget.RemoteViews;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Builds a fill response with one dataset per credential.
+ *
+ * Presentations only depend on their label, so they are created once and shared by all
+ * datasets and responses that show the same label. The username field of a dataset has a
+ * filter pattern that matches any prefix of the username, so the system narrows the list
+ * down as the user types. Password fields are never filtered, otherwise typed characters
+ * would be matched against the stored passwords. Filters need API 27, so datasets are
+ * built without them on Android 8.0.
+ */
+class CredentialResponseBuilder {
+    // Number of presentations kept for reuse
+    static final int PRESENTATION_CACHE_SIZE = 64;
+
+    // Longer usernames are only filtered by their first characters
+    static final int MAX_FILTER_LENGTH = 64;
+
+    private static final LinkedHashMap<String, RemoteViews> presentations =
+            new LinkedHashMap<String, RemoteViews>(PRESENTATION_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RemoteViews> eldest) {
+                    return size() > PRESENTATION_CACHE_SIZE;
+                }
+            };
+
+    private final String packageName;
+    private final AutofillId usernameId;
+    private final AutofillId passwordId;
+    private final FillResponse.Builder responseBuilder = new FillResponse.Builder();
+    private int datasetCount = 0;
+
+    CredentialResponseBuilder(String packageName, AutofillId usernameId, AutofillId passwordId) {
+        this.packageName = packageName;
+        this.usernameId = usernameId;
+        this.passwordId = passwordId;
+    }
+
+    /**
+     * @return a presentation showing a label, shared with earlier callers of the same label
+     */
+    RemoteViews getPresentation(String label) {
+        String key = packageName + '\n' + label;
+
+        synchronized (presentations) {
+            RemoteViews presentation = presentations.get(key);
+            if (presentation == null) {
+                presentation = new RemoteViews(packageName, android.R.layout.simple_list_item_1);
+                presentation.setTextViewText(android.R.id.text1, label);
+                presentations.put(key, presentation);
+            }
+            return presentation;
+        }
+    }
+
+    /**
+     * @return a pattern matching every case-insensitive prefix of a username, including
+     * the empty one
+     */
+    static Pattern prefixPattern(String username) {
+        int length = Math.min(username.length(), MAX_FILTER_LENGTH);
+        StringBuilder regex = new StringBuilder("(?i)");
+
+        for (int i = 0; i < length; ++i) {
+            regex.append("(?:").append(Pattern.quote(username.substring(i, i + 1)));
+        }
+        for (int i = 0; i < length; ++i) {
+            regex.append(")?");
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Builds the dataset of one credential.
+     *
+     * @param password the password, or null if the dataset is unlocked by an authentication
+     * @param passwordLabel the label shown on the password field
+     * @param authentication opens the authenticator for this dataset, may be null
+     */
+    Dataset buildDataset(String username, String password, String passwordLabel, IntentSender authentication) {
+        Dataset.Builder builder = new Dataset.Builder();
+        boolean hasUsername = usernameId != null && username != null && !username.isEmpty();
+
+        // Android 8.0 lists every dataset while typing
+        boolean filtered = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1;
+
+        if (hasUsername) {
+            if (filtered) {
+                builder.setValue(
+                        usernameId,
+                        AutofillValue.forText(username),
+                        prefixPattern(username),
+                        getPresentation(username)
+                );
+            } else {
+                builder.setValue(usernameId, AutofillValue.forText(username), getPresentation(username));
+            }
+        }
+
+        AutofillValue passwordValue = password != null ? AutofillValue.forText(password) : null;
+        if (filtered) {
+            // A null filter turns filtering off for this field
+            builder.setValue(passwordId, passwordValue, null, getPresentation(passwordLabel));
+        } else {
+            builder.setValue(passwordId, passwordValue, getPresentation(passwordLabel));
+        }
+
+        if (authentication != null) {
+            builder.setAuthentication(authentication);
+        }
+
+        return builder.build();
+    }
+
+    CredentialResponseBuilder addDataset(String username, String password, String passwordLabel, IntentSender authentication) {
+        responseBuilder.addDataset(buildDataset(username, password, passwordLabel, authentication));
+        ++datasetCount;
+        return this;
+    }
+
+    int getDatasetCount() {
+        return datasetCount;
+    }
+
+    FillResponse build() {
+        return responseBuilder.build();
+    }
+}
@@ -1,266 +1,237 @@
 package com.dgmvwallet.autofill;
 
 import android.app.assist.AssistStructure;
-import android.os.Build;
+import android.content.ComponentName;
 import android.service.autofill.FillContext;
 import android.service.autofill.FillRequest;
-import android.text.InputType;
-import android.util.Log;
-import android.util.Pair;
-import android.view.ViewStructure;
+import android.service.autofill.SaveRequest;
 import android.view.autofill.AutofillId;
+import android.util.Log;
+import android.view.autofill.AutofillValue;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
+import java.util.Objects;
 
 public class DGMVAutofillParser {
-    private FillRequest request;
+    private List<FillContext> fillContexts;
+    private FormScanner<AssistStructure, AssistStructure.ViewNode> scanner;
+    private FillContextHistory history;
+    private File captureDirectory;
     private boolean parsed;
     private boolean success;
+    private boolean partial;
+    private boolean truncated;
     private String scheme;
     private String domain;
+    private String packageName;
 
     private AutofillId usernameId;
     private AutofillId passwordId;
+    private boolean newPassword;
 
     DGMVAutofillParser(FillRequest request) {
-        this.request = request;
+        this(request, null, null);
+    }
+
+    DGMVAutofillParser(FillRequest request, FormLayoutCache layoutCache, FillContextHistory history) {
+        this(request.getFillContexts(), layoutCache, history);
+    }
+
+    /**
+     * Parses the contexts of a save request. They are the contexts of earlier fill
+     * requests, so their outcomes usually come from the history.
+     */
+    DGMVAutofillParser(SaveRequest request, FormLayoutCache layoutCache, FillContextHistory history) {
+        this(request.getFillContexts(), layoutCache, history);
+    }
+
+    private DGMVAutofillParser(List<FillContext> fillContexts, FormLayoutCache layoutCache, FillContextHistory history) {
+        this.fillContexts = fillContexts;
+        this.scanner = new FormScanner<>(AssistStructureSource.INSTANCE, layoutCache);
+        this.history = history;
         this.parsed = false;
         this.success = false;
+        this.partial = false;
+        this.truncated = false;
         this.usernameId = null;
         this.passwordId = null;
+        this.newPassword = false;
 
         this.scheme = "https";
         this.domain = "";
     }
 
-    protected String getNodeInfo(AssistStructure.ViewNode node, int t) {
-        String intention = new String(new char[t * 2]).replace('\0', ' ');
+    /**
+     * Lets the scan be stopped early, for example when the time budget of the request is
+     * used up. An interrupted parse only reports the password field.
+     */
+    void setInterrupt(FormScanner.Interrupt interrupt) {
+        scanner.setInterrupt(interrupt);
+    }
 
-        String info = "@DEPTH=" + t + ": " + intention;
+    /**
+     * Bounds the scan of each fill context, see {@link FormScanner#setBudget(int, int)}.
+     */
+    void setBudget(int maxNodes, int maxDepth) {
+        scanner.setBudget(maxNodes, maxDepth);
+    }
 
-        info += "id=" + node.getId() + ", ";
+    /**
+     * Enables capture mode: every scanned fill context is written to the directory as an
+     * anonymized {@link HierarchyCapture}, for the replay corpus of the tests. Contexts
+     * answered from the history are not scanned and not captured.
+     */
+    void setCaptureDirectory(File directory) {
+        captureDirectory = directory;
+    }
 
-        String[] strings = node.getAutofillHints();
-        if (strings != null) {
-            info += "hints=" + String.join(",", strings);
+    private void capture(FillContext fillContext, AssistStructure.ViewNode usernameNode,
+                         AssistStructure.ViewNode passwordNode, boolean newPassword) {
+        if (!HierarchyCapture.hasRoom(captureDirectory)) return;
+
+        File file = new File(captureDirectory, "context-" + System.currentTimeMillis() + "-"
+                + fillContext.getRequestId() + HierarchyCapture.FILE_SUFFIX);
+        try {
+            String expectation = HierarchyCapture.capture(file, AssistStructureSource.INSTANCE, FieldRules.getInstance(),
+                    fillContext.getStructure(), usernameNode, passwordNode, newPassword);
+            Log.i("DGMV-Autofill", "Captured " + expectation);
+        } catch (IOException e) {
+            Log.e("DGMV-Autofill", "Could not capture fill context", e);
+            file.delete();
         }
+    }
 
-        // Get Hint
-        String hint = node.getHint();
-        if (hint != null && !hint.isEmpty())
-            info += "HINT=" + hint + ", ";
-
-        // Get Text
-        CharSequence cs = node.getText();
-        if (cs != null)
-            info += "text=" + cs.toString() + ", ";
-
-        // More attributes
-        info += "focused=" + node.isFocused() + ", ";
-        info += "focusable=" + node.isFocusable() + ", ";
-
-        ViewStructure.HtmlInfo htmlInfo = node.getHtmlInfo();
-        if (htmlInfo != null) {
-            String tag = htmlInfo.getTag();
-            String htmlDescription = htmlInfo.toString();
-            List<Pair<String, String>> attributes = htmlInfo.getAttributes();
-
-            if (attributes != null) {
-                info += "htmlAttributes=" + attributes.size() + ", ";
-            }
-
-            if (tag != null && !tag.isEmpty())
-                info += "htmlTag=" + tag + ", ";
-
-            if (htmlDescription != null && !htmlDescription.isEmpty())
-                info += "htmlDescription=" + htmlDescription + ", ";
+    private FillContextHistory.Outcome scanContext(FillContext fillContext) {
+        if (partial) {
+            // The budget is used up, later contexts are not scanned anymore
+            return new FillContextHistory.Outcome(false, null, null, false, null, null);
         }
 
-        String className = node.getClassName();
-        if (className != null && !className.isEmpty())
-            info += "className=" + className + ", ";
+        boolean focused = scanner.scan(Collections.singletonList(fillContext.getStructure()));
+        partial = scanner.isInterrupted();
+        truncated |= scanner.isTruncated();
 
-        CharSequence contentDescription = node.getContentDescription();
-        if (contentDescription != null && contentDescription.length() > 0) {
-            info += "cd=" + contentDescription.toString() + ", ";
+        // Unfocused contexts too, forms that were not detected are the interesting ones
+        if (captureDirectory != null) {
+            capture(fillContext, focused ? scanner.getUsernameNode() : null,
+                    focused ? scanner.getPasswordNode() : null, focused && scanner.isNewPassword());
         }
 
-        info += "it=" + node.getInputType() + ", ";
-
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.P) {
-            String textIdEntry = null;
-            textIdEntry = node.getTextIdEntry();
-
-            if (textIdEntry != null && !textIdEntry.isEmpty()) {
-                info += "te=" + textIdEntry + ", ";
-            }
+        if (!focused) {
+            return new FillContextHistory.Outcome(false, null, null, false, null, null);
         }
 
-        return info;
+        AssistStructure.ViewNode usernameNode = scanner.getUsernameNode();
+        AssistStructure.ViewNode passwordNode = scanner.getPasswordNode();
+
+        return new FillContextHistory.Outcome(
+            true,
+            usernameNode != null ? usernameNode.getAutofillId() : null,
+            passwordNode != null ? passwordNode.getAutofillId() : null,
+            scanner.isNewPassword(),
+            scanner.getDomain(),
+            scanner.getScheme()
+        );
     }
 
-    protected boolean isUsernameField(AssistStructure.ViewNode node, String parentTextHint, int t) {
-        boolean result = false;
-
-        // Element must be focusable
-        if (!node.isFocusable()) return result;
+    /**
+     * Returns the outcome of a context, scanning it only if it is not known from an
+     * earlier request of the same flow.
+     */
+    private FillContextHistory.Outcome getOutcome(FillContext fillContext) {
+        if (history == null) return scanContext(fillContext);
 
-        // If a classname was given, check if it is an EditText element
-        if (!"android.widget.EditText".equalsIgnoreCase(node.getClassName())) return result;
+        FillContextHistory.Outcome outcome = history.get(fillContext.getRequestId());
+        if (outcome == null) {
+            outcome = scanContext(fillContext);
 
-        // ToDo: Select username field according to the autofill hints using getAutoFillHints()
-
-        // Process using hint
-        String hint = node.getHint();
-        if (hint == null || hint.isEmpty()) {
-            if (parentTextHint != null && !parentTextHint.isEmpty()) {
-                hint = parentTextHint;
-            } else {
-                return result;
-            }
+            // Outcomes of an interrupted scan are incomplete
+            if (!partial) history.put(fillContext.getRequestId(), outcome);
         }
 
-        hint = hint.toLowerCase(Locale.ROOT);
-
-        return hint.contains("user") || hint.contains("mail");
+        return outcome;
     }
 
-    protected boolean isPasswordField(AssistStructure.ViewNode node, String parentTextHint, int t) {
-        boolean result = false;
-
-        // Element must be focusable
-        if (!node.isFocusable()) return result;
-
-        // Check if it is an EditText element
-        if (!"android.widget.EditText".equalsIgnoreCase(node.getClassName())) return result;
+    public boolean parse() {
+        if (parsed) return success;
 
-        // ToDo: Select password field according to the autofill hints using getAutoFillHints()
-        //
+        long start = AutofillMetrics.now();
 
-        // Process using hint
-        String hint = node.getHint();
-        if (hint == null || hint.isEmpty()) {
-            if (parentTextHint == null || parentTextHint.isEmpty()) return result;
-            hint = parentTextHint;
+        if (!fillContexts.isEmpty()) {
+            ComponentName component = fillContexts.get(fillContexts.size() - 1).getStructure().getActivityComponent();
+            if (component != null) packageName = component.getPackageName();
         }
 
-        hint = hint.toLowerCase(Locale.ROOT);
-
-        result |= hint.contains("pass");
-        result |= (node.getInputType() & InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD) != 0;
-        result |= (node.getInputType() & InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD) != 0;
-        result |= (node.getInputType() & InputType.TYPE_TEXT_VARIATION_PASSWORD) != 0;
-
-        return result;
-    }
-
-    private void processAutoFillIdsInner(AssistStructure.ViewNode node, String parentTextHint, int t) {
-        String lastTextHint = parentTextHint;
-
-        for (int i = 0; i < node.getChildCount(); ++i) {
-            AssistStructure.ViewNode childNode = node.getChildAt(i);
-
-            // Extract webdomain (if available)
-            String webDomain = childNode.getWebDomain();
-            if (webDomain != null && !webDomain.isEmpty()) {
-                this.domain = webDomain;
+        FillContextHistory.Outcome[] outcomes = new FillContextHistory.Outcome[fillContexts.size()];
+        for (int i = 0; i < fillContexts.size(); ++i) {
+            outcomes[i] = getOutcome(fillContexts.get(i));
+        }
 
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-                    this.scheme = childNode.getWebScheme();
+        // For security reasons, we will only process a window that has focused elements such
+        // a focused textbox. The newest context is the screen the user is looking at, so it is
+        // preferred; earlier contexts are used if it has no focus.
+        FillContextHistory.Outcome focusedOutcome = null;
+        int focusedIndex = outcomes.length - 1;
+        if (focusedIndex >= 0 && outcomes[focusedIndex].focused) {
+            focusedOutcome = outcomes[focusedIndex];
+        } else {
+            for (focusedIndex = 0; focusedIndex < outcomes.length; ++focusedIndex) {
+                if (outcomes[focusedIndex].focused) {
+                    focusedOutcome = outcomes[focusedIndex];
+                    break;
                 }
             }
+        }
+
+        if (focusedOutcome != null) {
+            usernameId = focusedOutcome.usernameId;
+            passwordId = focusedOutcome.passwordId;
+            newPassword = focusedOutcome.newPassword;
 
-            // Get label description text.
-            // Sometimes this is not the editText element itself, but a label
-            // that is located before the input field.
-            CharSequence newTextHint = childNode.getText();
-            if (
-                newTextHint != null &&
-                newTextHint.length() > 0
-            ) {
-                lastTextHint = newTextHint.toString();
-                Log.d("DGMV-Autofill", "newTextHint=" + lastTextHint);
+            if (focusedOutcome.domain != null) {
+                domain = focusedOutcome.domain;
+                if (focusedOutcome.scheme != null) scheme = focusedOutcome.scheme;
             }
 
-            // Log.d("DGMV-Autofill", getNodeInfo(childNode, t));
+            // Multi-step logins show the username and the password on different screens.
+            // Fields missing on the focused screen are taken from the most recent earlier
+            // screen of the same domain.
+            for (int i = focusedIndex - 1; i >= 0 && (usernameId == null || passwordId == null); --i) {
+                FillContextHistory.Outcome earlier = outcomes[i];
+                if (!earlier.focused || !Objects.equals(earlier.domain, focusedOutcome.domain)) continue;
 
-            // Check what type of field that is
-            if (isUsernameField(childNode, lastTextHint, t)) {
-                if (usernameId == null) {
-                    usernameId = childNode.getAutofillId();
-                    Log.d("DGMV-Autofill", "Select id=" + childNode.getId() + " as username field");
-                } else {
-                    Log.w("DGMV-Autofill", "Found multiple username fields, using first occurrence");
-                }
-
-            } else if (isPasswordField(childNode, lastTextHint, t)) {
+                if (usernameId == null) usernameId = earlier.usernameId;
                 if (passwordId == null) {
-                    passwordId = childNode.getAutofillId();
-                    Log.d("DGMV-Autofill", "Select id=" + childNode.getId() + " as password field");
-                } else {
-                    Log.w("DGMV-Autofill", "Found multiple password fields, using first occurrence");
+                    passwordId = earlier.passwordId;
+                    newPassword = earlier.newPassword;
                 }
             }
-
-            // Process all child nodes recursively
-            processAutoFillIdsInner(childNode, lastTextHint, t + 1);
         }
-    }
-
-    private boolean hasFocusedElement(AssistStructure.ViewNode viewNode, int t) {
-        for (int i = 0; i < viewNode.getChildCount(); ++i) {
-            AssistStructure.ViewNode childNode = viewNode.getChildAt(i);
-
-            if (childNode.isFocused()) {
-                return true;
-            }
 
-            if (hasFocusedElement(childNode, t + 1)) {
-                return true;
-            }
-        }
+        success = hasPasswordId();
 
-        return false;
+        parsed = true;
+        AutofillMetrics.record(AutofillMetrics.PHASE_PARSE, start);
+        return success;
     }
 
-    AssistStructure.WindowNode findFocusedWindow() {
-        if (request.getFillContexts().size() > 0) {
-            List<FillContext> fillContexts = request.getFillContexts();
-
-            for (int i = 0; i < fillContexts.size(); ++i) {
-                FillContext fillContext = fillContexts.get(i);
-                AssistStructure structure = fillContext.getStructure();
-
-                for (int j = 0; j < structure.getWindowNodeCount(); ++j) {
-                    AssistStructure.WindowNode windowNode = structure.getWindowNodeAt(j);
-                    AssistStructure.ViewNode viewNode = windowNode.getRootViewNode();
-                    if (hasFocusedElement(viewNode, 0)) {
-                        return windowNode;
-                    }
-                }
-            };
-        }
-
-        return null;
+    /**
+     * @return true if the parse was interrupted and only holds a best-effort result
+     */
+    public boolean isPartial() {
+        return partial;
     }
 
-    public boolean parse() {
-        if (parsed) return success;
-
-        // For security reasons, we will only process the first window that we find, that has
-        // focused elements such a focused textbox.
-        AssistStructure.WindowNode window = findFocusedWindow();
-
-        if (window != null) {
-            AssistStructure.ViewNode viewNode = window.getRootViewNode();
-            processAutoFillIdsInner(viewNode, null, 0);
-            success = hasPasswordId();
-        }
-
-        parsed = true;
-        return success;
+    /**
+     * @return true if the node or depth budget cut the scan of a context short
+     */
+    public boolean isTruncated() {
+        return truncated;
     }
 
     public boolean hasUsernameId() {
@@ -271,6 +242,13 @@ public class DGMVAutofillParser {
         return passwordId != null;
     }
 
+    /**
+     * @return true if the password field asks for a new password, as on sign-up forms
+     */
+    public boolean isNewPassword() {
+        return newPassword;
+    }
+
     public AutofillId[] getIds() {
         ArrayList<AutofillId> ids = new ArrayList<>();
 
@@ -290,6 +268,67 @@ public class DGMVAutofillParser {
         return passwordId;
     }
 
+    /**
+     * Looks up the text the user entered into a field, newest context first.
+     *
+     * @return the text value of the field, or null if the field was not found or holds no text
+     */
+    public String getValue(AutofillId id) {
+        if (id == null) return null;
+
+        ArrayDeque<AssistStructure.ViewNode> nodes = new ArrayDeque<>();
+
+        for (int i = fillContexts.size() - 1; i >= 0; --i) {
+            AssistStructure structure = fillContexts.get(i).getStructure();
+
+            for (int j = 0; j < structure.getWindowNodeCount(); ++j) {
+                nodes.clear();
+                nodes.push(structure.getWindowNodeAt(j).getRootViewNode());
+
+                while (!nodes.isEmpty()) {
+                    AssistStructure.ViewNode node = nodes.pop();
+
+                    if (id.equals(node.getAutofillId())) {
+                        AutofillValue value = node.getAutofillValue();
+                        return value != null && value.isText() ? value.getTextValue().toString() : null;
+                    }
+
+                    for (int k = node.getChildCount() - 1; k >= 0; --k) {
+                        nodes.push(node.getChildAt(k));
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the package name of the app that requested autofill
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * @return the web domain of the focused window, or null for native apps
+     */
+    public String getWebDomain() {
+        return !domain.isEmpty() ? domain : null;
+    }
+
+    /**
+     * @return the realm credentials are stored under: the web domain for websites,
+     * the package name for native apps
+     */
+    public String getRealm() {
+        if (!domain.isEmpty()) {
+            return domain;
+        }
+
+        return packageName;
+    }
+
     public String getURL() {
         if (!domain.isEmpty()) {
             return scheme + "://" + domain;
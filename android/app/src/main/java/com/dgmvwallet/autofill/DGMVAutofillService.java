@@ -1,12 +1,17 @@
 package com.dgmvwallet.autofill;
 
+import com.dgmvwallet.BuildConfig;
 import com.dgmvwallet.MainActivity;
 
 import android.app.PendingIntent;
 import android.app.assist.AssistStructure;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.IntentSender;
 import android.os.CancellationSignal;
+import android.os.SystemClock;
 import android.service.autofill.AutofillService;
 import android.service.autofill.FillCallback;
 import android.service.autofill.FillRequest;
@@ -14,51 +19,395 @@ import android.service.autofill.FillResponse;
 import android.service.autofill.SaveCallback;
 import android.service.autofill.SaveRequest;
 import android.util.Log;
-import android.view.autofill.AutofillId;
 import android.widget.RemoteViews;
 
 import androidx.annotation.NonNull;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class DGMVAutofillService extends AutofillService {
+    private static final int FORM_LAYOUT_CACHE_SIZE = 32;
+    private static final int FILL_CONTEXT_HISTORY_SIZE = 16;
+
+    // PendingIntents are told apart by their request code, so every authentication intent
+    // gets its own. Otherwise FLAG_CANCEL_CURRENT would cancel the intents of a request
+    // that is still shown in another window.
+    private final AtomicInteger intentRequestCode = new AtomicInteger();
+
+    // Fill requests whose scan was cut short by the node or depth budget
+    private final AtomicInteger truncatedScans = new AtomicInteger();
+
+    // The framework gives up on a fill request after a few seconds. Parsing stops after
+    // this budget and answers with whatever it has found so far.
+    private static final long FILL_REQUEST_BUDGET_MS = 2000;
+    private static final int FILL_REQUEST_QUEUE_SIZE = 4;
+
+    // Scans of huge pages stop after this many nodes or below this depth, so their cost
+    // does not grow with the page. Real login forms are far within both.
+    private static final int SCAN_NODE_BUDGET = 60_000;
+    private static final int SCAN_DEPTH_BUDGET = 128;
+
+    // Fill and save requests are handled here instead of on the main thread. A single
+    // worker keeps the parse caches uncontended; requests that do not fit the queue are
+    // rejected.
+    private final ThreadPoolExecutor fillExecutor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(FILL_REQUEST_QUEUE_SIZE),
+            runnable -> new Thread(runnable, "DGMV-Autofill-Fill")
+    );
+
+    // Warms up the React host of the app process once a response needs the authenticator.
+    // Starting that process blocks, so it does not happen on the fill thread; a warm-up that
+    // is already queued covers later responses.
+    private final ThreadPoolExecutor handoffExecutor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1),
+            runnable -> new Thread(runnable, "DGMV-Autofill-Handoff"),
+            new ThreadPoolExecutor.DiscardPolicy()
+    );
+
+    // Loads the rules, the public suffix trie and the credential index image once the service
+    // is bound, off the fill thread, so the first fill request does not queue behind it. A
+    // fill request that comes first loads what it needs itself; a load that is already
+    // queued covers later bindings.
+    private final ThreadPoolExecutor loaderExecutor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1),
+            runnable -> new Thread(runnable, "DGMV-Autofill-Loader"),
+            new ThreadPoolExecutor.DiscardPolicy()
+    );
+
+    // Login forms resolved by earlier requests, keyed by window fingerprint
+    private final FormLayoutCache formLayoutCache = new FormLayoutCache(FORM_LAYOUT_CACHE_SIZE);
+
+    // Parse outcomes of the fill contexts of earlier requests, keyed by request id
+    private final FillContextHistory fillContextHistory = new FillContextHistory(FILL_CONTEXT_HISTORY_SIZE);
+
+    // Credentials entered by the user, written in the background
+    private CredentialLog credentialLog;
+
+    // Registrable domains from the public suffix list, loaded on first use
+    private DomainMatcher domainMatcher;
+
+    // Web domains of native apps, from Digital Asset Links statements
+    private AppDomainResolver appDomainResolver;
+
+    // Set while fill contexts are captured for the replay corpus, see dump()
+    private volatile File captureDirectory = null;
+
+    // Session credentials do not survive the screen going off
+    private final BroadcastReceiver screenOffReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            SessionCredentialCache.getInstance().clear();
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        credentialLog = CredentialLog.getInstance(this);
+
+        domainMatcher = DomainMatcher.getInstance(this);
+        CredentialIndex.getInstance().setDomainMatcher(domainMatcher);
+
+        appDomainResolver = AppDomainResolver.getInstance(this);
+
+        // Field detection rules, compiled by the first scan
+        FieldRules.setSource(() -> getAssets().open(FieldRules.ASSET_NAME));
+
+        registerReceiver(screenOffReceiver, new IntentFilter(Intent.ACTION_SCREEN_OFF));
+
+        if (BuildConfig.DEBUG) {
+            AutofillTrace.setLevel(AutofillTrace.LEVEL_EVENTS);
+        }
+
+        AutofillTrace.setVerbosePrinter(line -> Log.v("DGMV-Autofill", line));
+    }
+
+    @Override
+    public void onConnected() {
+        super.onConnected();
+
+        // Compile the field detection rules before the first scan, then map or compile the
+        // public suffix trie and map the credential index image before the first lookup
+        loaderExecutor.execute(() -> {
+            FieldRules.getInstance();
+            if (FieldRules.getLoadError() != null) {
+                Log.e("DGMV-Autofill", "Could not load field detection rules", FieldRules.getLoadError());
+            }
+
+            domainMatcher.load();
+            CredentialIndex.getInstance().loadImage(CredentialIndex.getImageFile(this));
+        });
+    }
+
+    @Override
+    public void onDestroy() {
+        unregisterReceiver(screenOffReceiver);
+        SessionCredentialCache.getInstance().clear();
+        fillExecutor.shutdownNow();
+        handoffExecutor.shutdownNow();
+        loaderExecutor.shutdownNow();
+        super.onDestroy();
+    }
+
     @Override
     public void onFillRequest(FillRequest request, CancellationSignal cancellationSignal,
                               @NonNull FillCallback callback) {
+        long start = AutofillMetrics.now();
+        long deadline = SystemClock.uptimeMillis() + FILL_REQUEST_BUDGET_MS;
+
+        try {
+            fillExecutor.execute(() -> handleFillRequest(request, cancellationSignal, start, deadline, callback));
+        } catch (RejectedExecutionException e) {
+            Log.d("DGMV-Autofill", "Too many pending fill requests");
+            callback.onFailure("Too many pending fill requests");
+        }
+    }
+
+    private void handleFillRequest(FillRequest request, CancellationSignal cancellationSignal, long start,
+                                   long deadline, FillCallback callback) {
+        AutofillMetrics.record(AutofillMetrics.PHASE_FILL_QUEUE, start);
 
-        DGMVAutofillParser parser = new DGMVAutofillParser(request);
+        // The framework does not expect an answer to a cancelled request
+        if (cancellationSignal.isCanceled()) return;
+
+        DGMVAutofillParser parser = new DGMVAutofillParser(request, formLayoutCache, fillContextHistory);
+        parser.setInterrupt(() -> cancellationSignal.isCanceled() || SystemClock.uptimeMillis() >= deadline);
+        parser.setBudget(SCAN_NODE_BUDGET, SCAN_DEPTH_BUDGET);
+        parser.setCaptureDirectory(captureDirectory);
         boolean successfullyParsed = parser.parse();
 
+        if (cancellationSignal.isCanceled()) return;
+
+        if (parser.isPartial()) {
+            Log.d("DGMV-Autofill", "Fill request budget exceeded, answering with partial result");
+        }
+
+        if (parser.isTruncated()) {
+            truncatedScans.incrementAndGet();
+            Log.d("DGMV-Autofill", "View hierarchy exceeds the scan budget, not all nodes were visited");
+        }
+
         if (!successfullyParsed) {
             Log.d("DGMV-Autofill", "Failed to find password field");
             callback.onFailure("Failed to find password field");
             return;
         }
 
-        RemoteViews authPresentation = new RemoteViews(getPackageName(), android.R.layout.simple_list_item_1);
-        authPresentation.setTextViewText(android.R.id.text1, "DGMV Authenticator");
+        DGMVAutofillServiceBridge bridge = DGMVAutofillServiceBridge.getInstance();
 
-        Intent authIntent = new Intent(this, MainActivity.class);
+        // Sign-up and change-password forms are offered a password generated here, without
+        // starting the React Native app. Existing accounts are still picked in the authenticator.
+        if (parser.isNewPassword()) {
+            DGMVAutofillServiceBridge.RequestInfo requestInfo =
+                    bridge.createRequest(request.getId(), parser, true, domainMatcher, Collections.<String>emptyList());
 
-        // Store webDomain address
-        DGMVAutofillServiceBridge.setPackageName(getPackageName());
-        DGMVAutofillServiceBridge bridge = DGMVAutofillServiceBridge.getInstance();
-        bridge.prepareToStartExtension(parser);
+            CredentialResponseBuilder builder =
+                    new CredentialResponseBuilder(getPackageName(), parser.getUsernameId(), parser.getPasswordId());
+            builder.addDataset(null, PasswordGenerator.generate(), "Generated password", null);
+            builder.addDataset(null, null, "DGMV Authenticator", buildAuthentication(requestInfo));
 
-        IntentSender intentSender = PendingIntent.getActivity(
-                this,
-                999,
-                authIntent,
-                PendingIntent.FLAG_CANCEL_CURRENT
-        ).getIntentSender();
+            callback.onSuccess(builder.build());
+            AutofillMetrics.record(AutofillMetrics.PHASE_FILL, start);
+            return;
+        }
+
+        // Next step of a login the user just authenticated, e.g. the password page after the
+        // username page. The datasets carry their values, so no request is created. New-password
+        // forms never get the password of the current login.
+        List<CredentialIndex.Credential> sessionCredentials =
+                SessionCredentialCache.getInstance().find(SessionCredentialCache.getKey(parser, domainMatcher));
+        if (!sessionCredentials.isEmpty()) {
+            callback.onSuccess(buildCredentialResponse(null, parser, sessionCredentials));
+            AutofillMetrics.record(AutofillMetrics.PHASE_FILL, start);
+            return;
+        }
+
+        // Fast path: credentials the user already picked for this realm are offered
+        // directly, without starting the React Native app.
+        List<CredentialIndex.Credential> credentials =
+                CredentialIndex.getInstance().find(parser.getWebDomain(), parser.getPackageName());
+
+        // Native apps also get the credentials of the websites they are associated with
+        List<String> associatedDomains = parser.getWebDomain() == null
+                ? appDomainResolver.resolve(parser.getPackageName())
+                : Collections.<String>emptyList();
+
+        for (int i = 0; i < associatedDomains.size() && credentials.isEmpty(); ++i) {
+            credentials = CredentialIndex.getInstance().find(associatedDomains.get(i), null);
+        }
+
+        if (!credentials.isEmpty()) {
+            DGMVAutofillServiceBridge.RequestInfo requestInfo =
+                    bridge.createRequest(request.getId(), parser, true, domainMatcher, associatedDomains);
+            callback.onSuccess(buildCredentialResponse(requestInfo, parser, credentials));
+            AutofillMetrics.record(AutofillMetrics.PHASE_FILL, start);
+            return;
+        }
+
+        RemoteViews authPresentation = new RemoteViews(getPackageName(), android.R.layout.simple_list_item_1);
+        authPresentation.setTextViewText(android.R.id.text1, "DGMV Authenticator");
+
+        DGMVAutofillServiceBridge.RequestInfo requestInfo =
+                bridge.createRequest(request.getId(), parser, false, domainMatcher, associatedDomains);
+        IntentSender intentSender = buildAuthentication(requestInfo);
 
         // Successfully found field with password
         FillResponse response = new FillResponse.Builder()
                 .setAuthentication(parser.getIds(), intentSender, authPresentation)
                 .build();
         callback.onSuccess(response);
+        AutofillMetrics.record(AutofillMetrics.PHASE_FILL, start);
     }
 
+    /**
+     * Builds one dataset per stored credential. While the index is unlocked the datasets
+     * carry their values; otherwise each dataset opens the authenticator for that account.
+     *
+     * @param requestInfo the request answered by the authenticator, may be null if all
+     *                    credentials are unlocked
+     */
+    private FillResponse buildCredentialResponse(DGMVAutofillServiceBridge.RequestInfo requestInfo,
+                                                 DGMVAutofillParser parser, List<CredentialIndex.Credential> credentials) {
+        CredentialResponseBuilder builder =
+                new CredentialResponseBuilder(getPackageName(), parser.getUsernameId(), parser.getPasswordId());
+
+        for (int i = 0; i < credentials.size(); ++i) {
+            CredentialIndex.Credential credential = credentials.get(i);
+
+            String description = credential.username.isEmpty()
+                    ? "Password for " + parser.getRealm()
+                    : credential.username;
+
+            IntentSender authentication = null;
+            if (credential.isLocked()) {
+                // Values are provided by the authenticator after the user unlocked the wallet
+                authentication = buildAuthentication(requestInfo, credential.username);
+            }
+
+            builder.addDataset(credential.username, credential.password, description, authentication);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Hands a request over to the authenticator in the app process, which is warmed up in
+     * the meantime. The launch of the authenticator is measured from here.
+     *
+     * @return starts the authenticator for the request
+     */
+    private IntentSender buildAuthentication(DGMVAutofillServiceBridge.RequestInfo requestInfo) {
+        return buildAuthentication(requestInfo, null);
+    }
+
+    /**
+     * @param datasetUsername the account of the dataset the authentication belongs to, which
+     *                        is the only one the authenticator may answer with
+     * @see #buildAuthentication(DGMVAutofillServiceBridge.RequestInfo)
+     */
+    private IntentSender buildAuthentication(DGMVAutofillServiceBridge.RequestInfo requestInfo, String datasetUsername) {
+        handoffExecutor.execute(() -> ReactWarmUpProvider.warmUp(this));
+
+        Intent intent = new Intent(this, MainActivity.class);
+        intent.putExtra(DGMVAutofillServiceBridge.EXTRA_REQUEST, requestInfo.toBundle(datasetUsername));
+
+        return PendingIntent.getActivity(
+                this,
+                intentRequestCode.getAndIncrement() & 0xffff,
+                intent,
+                PendingIntent.FLAG_CANCEL_CURRENT
+        ).getIntentSender();
+    }
+
+    // Responses carry no SaveInfo, so the framework does not offer to save yet. Nothing in
+    // the wallet reads the credential log, and a saved password would never show up there.
     @Override
     public void onSaveRequest(SaveRequest request, SaveCallback callback) {
-        // System.out.println("XXX");
+        // Saves are parsed on the fill thread with the budget of a fill request, a history
+        // miss scans the whole structure
+        long deadline = SystemClock.uptimeMillis() + FILL_REQUEST_BUDGET_MS;
+
+        try {
+            fillExecutor.execute(() -> handleSaveRequest(request, deadline, callback));
+        } catch (RejectedExecutionException e) {
+            Log.d("DGMV-Autofill", "Too many pending requests");
+            callback.onFailure("Too many pending requests");
+        }
+    }
+
+    private void handleSaveRequest(SaveRequest request, long deadline, SaveCallback callback) {
+        // The contexts are known from the fill requests, so this is mostly a history lookup
+        DGMVAutofillParser parser = new DGMVAutofillParser(request, formLayoutCache, fillContextHistory);
+        parser.setInterrupt(() -> SystemClock.uptimeMillis() >= deadline);
+        parser.setBudget(SCAN_NODE_BUDGET, SCAN_DEPTH_BUDGET);
+        if (!parser.parse()) {
+            Log.d("DGMV-Autofill", "Failed to find password field");
+            callback.onFailure("Failed to find password field");
+            return;
+        }
+
+        String password = parser.getValue(parser.getPasswordId());
+        if (password == null || password.isEmpty()) {
+            callback.onFailure("No password entered");
+            return;
+        }
+
+        String username = parser.hasUsernameId() ? parser.getValue(parser.getUsernameId()) : null;
+
+        // Written by a background thread, the callback does not wait for the disk
+        credentialLog.append(parser.getRealm(), username, password);
+        callback.onSuccess();
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        // "dumpsys activity service .autofill.DGMVAutofillService trace <level>" changes the trace level
+        if (args != null && args.length == 2 && "trace".equals(args[0])) {
+            try {
+                AutofillTrace.setLevel(Integer.parseInt(args[1]));
+            } catch (NumberFormatException e) {
+                pw.println("Invalid trace level: " + args[1]);
+            }
+        }
+
+        // "... capture on|off" writes anonymized fill contexts to the external files
+        // directory, to be pulled into the replay corpus of the tests
+        if (args != null && args.length == 2 && "capture".equals(args[0])) {
+            File directory = "on".equals(args[1]) ? new File(getExternalFilesDir(null), "autofill_captures") : null;
+            if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+                pw.println("Could not create " + directory);
+                directory = null;
+            }
+            captureDirectory = directory;
+        }
+
+        pw.println(formLayoutCache);
+        pw.println(fillContextHistory);
+        pw.println(CredentialIndex.getInstance());
+        pw.println(SessionCredentialCache.getInstance());
+        PasswordGenerator.dump(pw);
+        pw.println(credentialLog);
+        pw.println(domainMatcher);
+        pw.println(appDomainResolver);
+        pw.println(FieldRules.getInstance());
+        pw.println("Capture{directory=" + captureDirectory + "}");
+        AutofillMetrics.dump(pw);
+        pw.println("ScanBudget{maxNodes=" + SCAN_NODE_BUDGET
+                + ", maxDepth=" + SCAN_DEPTH_BUDGET
+                + ", truncated=" + truncatedScans.get() + "}");
+        AutofillTrace.dump(pw);
     }
 }
@@ -1,66 +1,174 @@
 package com.dgmvwallet.autofill;
 
+import android.content.Context;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.service.autofill.Dataset;
 import android.service.autofill.FillRequest;
 import android.service.autofill.FillResponse;
 import android.util.Log;
 import android.view.autofill.AutofillId;
-import android.view.autofill.AutofillValue;
-import android.widget.RemoteViews;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands fill requests from the service to the authenticator activity and routes the
+ * answer back.
+ *
+ * The service runs in its own process, so a request that needs the authenticator travels
+ * to the activity as a bundle in {@link #EXTRA_REQUEST}. The activity registers it under
+ * the id of its fill request. Requests from several windows can therefore be in flight at
+ * the same time, each answered through the completion handler registered for its id.
+ * Lookups don't lock; an entry is removed when it is answered or once it is older than
+ * {@link #REQUEST_TIMEOUT_MS}. The credentials picked for a request are handed back to the
+ * autofill process through {@link AutofillStateProvider}.
+ */
 public class DGMVAutofillServiceBridge {
     public interface CompletionHandler {
         void requestCompleted(FillResponse fillResponse);
+        void requestCompleted(Dataset dataset);
         void requestCancelled(String reason);
     }
 
-    private static DGMVAutofillServiceBridge instance = null;
-    private CredentialProviderRequest credentialProviderRequestInstance;
+    /**
+     * Implemented by activities that answer a request, so React methods can find the
+     * request of the activity that called them.
+     */
+    public interface RequestHost {
+        int getAutofillRequestId();
+    }
 
-    private String websiteURL = "";
-    private boolean startExtension = false;
+    public static final String EXTRA_REQUEST = "com.dgmvwallet.autofill.REQUEST";
+    public static final int NO_REQUEST = Integer.MIN_VALUE;
 
-    private RequestInfo requestInfo;
-    private CompletionHandler completionHandler;
+    // The framework discards the authentication intent long before this
+    static final long REQUEST_TIMEOUT_MS = 10 * 60 * 1000;
 
-    public class RequestInfo {
-        private boolean startExtension = false;
-        private String websiteURL;
-        private AutofillId usernameFieldId;
-        private AutofillId passwordFieldId;
+    private static volatile DGMVAutofillServiceBridge instance = null;
+    private volatile CredentialProviderRequest credentialProviderRequestInstance;
 
-        RequestInfo() {
-            this.startExtension = false;
-        }
+    // In-flight requests, keyed by the id of their fill request
+    private final ConcurrentHashMap<Integer, RequestInfo> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger expired = new AtomicInteger();
+    private final AtomicInteger unknown = new AtomicInteger();
 
-        RequestInfo(DGMVAutofillParser parser) {
-            this.startExtension = true;
+    public class RequestInfo {
+        private final int requestId;
+        private final String websiteURL;
+        private final String realm;
+        private final String webDomain;
+        private final String packageName;
+        private final String siteURL;
+        private final String sessionKey;
+        private final List<String> associatedDomains;
+        private final boolean datasetAuthentication;
+        // Account of the dataset that started the authenticator, only set in its process and
+        // only for datasets of stored accounts
+        private final String datasetUsername;
+        private final AutofillId usernameFieldId;
+        private final AutofillId passwordFieldId;
+        private final long expiresAt;
+
+        private volatile CompletionHandler completionHandler;
+
+        // Start of the phase the request is in, see AutofillMetrics
+        private volatile long phaseStart;
+
+        private static final String KEY_REQUEST_ID = "requestId";
+        private static final String KEY_WEBSITE_URL = "websiteURL";
+        private static final String KEY_REALM = "realm";
+        private static final String KEY_WEB_DOMAIN = "webDomain";
+        private static final String KEY_PACKAGE_NAME = "packageName";
+        private static final String KEY_SITE_URL = "siteURL";
+        private static final String KEY_SESSION_KEY = "sessionKey";
+        private static final String KEY_ASSOCIATED_DOMAINS = "associatedDomains";
+        private static final String KEY_DATASET_AUTHENTICATION = "datasetAuthentication";
+        private static final String KEY_DATASET_USERNAME = "datasetUsername";
+        private static final String KEY_USERNAME_FIELD_ID = "usernameFieldId";
+        private static final String KEY_PASSWORD_FIELD_ID = "passwordFieldId";
+        private static final String KEY_EXPIRES_AT = "expiresAt";
+        private static final String KEY_PHASE_START = "phaseStart";
+
+        RequestInfo(int requestId, DGMVAutofillParser parser, String siteURL, String sessionKey,
+                    List<String> associatedDomains, boolean datasetAuthentication) {
+            this.requestId = requestId;
             this.websiteURL = parser.getURL();
+            this.realm = parser.getRealm();
+            this.webDomain = parser.getWebDomain();
+            this.packageName = parser.getPackageName();
+            this.siteURL = siteURL;
+            this.sessionKey = sessionKey;
+            this.associatedDomains = associatedDomains;
+            this.datasetAuthentication = datasetAuthentication;
+            this.datasetUsername = null;
             this.usernameFieldId = parser.getUsernameId();
             this.passwordFieldId = parser.getPasswordId();
+            this.expiresAt = SystemClock.elapsedRealtime() + REQUEST_TIMEOUT_MS;
+            this.phaseStart = AutofillMetrics.now();
         }
 
-        RequestInfo(String websiteURL) {
-            this.startExtension = true;
-            this.websiteURL = websiteURL;
+        /**
+         * Restores a request in the process of the authenticator, see {@link #toBundle()}.
+         */
+        RequestInfo(Bundle bundle) {
+            this.requestId = bundle.getInt(KEY_REQUEST_ID);
+            this.websiteURL = bundle.getString(KEY_WEBSITE_URL);
+            this.realm = bundle.getString(KEY_REALM);
+            this.webDomain = bundle.getString(KEY_WEB_DOMAIN);
+            this.packageName = bundle.getString(KEY_PACKAGE_NAME);
+            this.siteURL = bundle.getString(KEY_SITE_URL);
+            this.sessionKey = bundle.getString(KEY_SESSION_KEY);
+            List<String> associatedDomains = bundle.getStringArrayList(KEY_ASSOCIATED_DOMAINS);
+            this.associatedDomains = associatedDomains != null ? associatedDomains : Collections.<String>emptyList();
+            this.datasetAuthentication = bundle.getBoolean(KEY_DATASET_AUTHENTICATION);
+            this.datasetUsername = bundle.getString(KEY_DATASET_USERNAME);
+            this.usernameFieldId = bundle.getParcelable(KEY_USERNAME_FIELD_ID);
+            this.passwordFieldId = bundle.getParcelable(KEY_PASSWORD_FIELD_ID);
+            // Both clocks are shared by all processes
+            this.expiresAt = bundle.getLong(KEY_EXPIRES_AT);
+            this.phaseStart = bundle.getLong(KEY_PHASE_START);
         }
 
-        RequestInfo(RequestInfo other) {
-            this.startExtension = other.startExtension;
-            this.websiteURL = other.websiteURL;
+        /**
+         * @return the request as a bundle for {@link #EXTRA_REQUEST}. The current phase
+         * continues from the time the bundle is created.
+         */
+        Bundle toBundle() {
+            return toBundle(null);
         }
 
-        protected void setConsumed() {
-            this.startExtension = false;
-            this.websiteURL = null;
-            this.usernameFieldId = null;
-            this.passwordFieldId = null;
+        /**
+         * @param datasetUsername the account of the dataset the bundle authenticates, null
+         *                        for a response authentication
+         * @see #toBundle()
+         */
+        Bundle toBundle(String datasetUsername) {
+            Bundle bundle = new Bundle();
+            bundle.putInt(KEY_REQUEST_ID, requestId);
+            bundle.putString(KEY_WEBSITE_URL, websiteURL);
+            bundle.putString(KEY_REALM, realm);
+            bundle.putString(KEY_WEB_DOMAIN, webDomain);
+            bundle.putString(KEY_PACKAGE_NAME, packageName);
+            bundle.putString(KEY_SITE_URL, siteURL);
+            bundle.putString(KEY_SESSION_KEY, sessionKey);
+            bundle.putStringArrayList(KEY_ASSOCIATED_DOMAINS, new ArrayList<>(associatedDomains));
+            bundle.putBoolean(KEY_DATASET_AUTHENTICATION, datasetAuthentication);
+            bundle.putString(KEY_DATASET_USERNAME, datasetUsername);
+            bundle.putParcelable(KEY_USERNAME_FIELD_ID, usernameFieldId);
+            bundle.putParcelable(KEY_PASSWORD_FIELD_ID, passwordFieldId);
+            bundle.putLong(KEY_EXPIRES_AT, expiresAt);
+            bundle.putLong(KEY_PHASE_START, AutofillMetrics.now());
+            return bundle;
         }
 
-        public boolean willStartExtension() {
-            return this.startExtension;
+        public int getRequestId() {
+            return this.requestId;
         }
 
         public boolean hasURL() {
@@ -72,11 +180,53 @@ public class DGMVAutofillServiceBridge {
             return this.websiteURL;
         }
 
+        /**
+         * @return the URL of the registrable domain, e.g. "https://example.co.uk" for
+         * "https://login.example.co.uk", or null if it equals the website URL or is unknown
+         */
+        public String getSiteURL() {
+            return this.siteURL;
+        }
+
+        /**
+         * @return the username of the dataset the user tapped, or null if the authenticator
+         * answers the whole response
+         */
+        public String getDatasetUsername() {
+            return this.datasetUsername;
+        }
+
+        /**
+         * @return the web domains the requesting app is associated with through Digital
+         * Asset Links, empty for websites
+         */
+        public List<String> getAssociatedDomains() {
+            return this.associatedDomains;
+        }
+
+        /**
+         * Records the phase that ends now, and starts the next one.
+         *
+         * @param phase one of the AutofillMetrics.PHASE_ constants
+         */
+        public void recordPhase(int phase) {
+            this.phaseStart = AutofillMetrics.record(phase, this.phaseStart);
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
         @Override
         public String toString() {
             return "RequestInfo{" +
-                    "startExtension=" + startExtension +
+                    "requestId=" + requestId +
                     ", websiteURL='" + websiteURL + '\'' +
+                    ", realm='" + realm + '\'' +
+                    ", siteURL='" + siteURL + '\'' +
+                    ", associatedDomains=" + associatedDomains +
+                    ", datasetAuthentication=" + datasetAuthentication +
+                    ", datasetUsername=" + (datasetUsername != null) +
                     ", usernameFieldId=" + usernameFieldId +
                     ", passwordFieldId=" + passwordFieldId +
                     '}';
@@ -84,10 +234,10 @@ public class DGMVAutofillServiceBridge {
     }
 
     protected DGMVAutofillServiceBridge() {
-        requestInfo = new RequestInfo();
     }
 
-    private static String packageName;
+    // Set by MainApplication in every process of the app
+    private static volatile String packageName;
 
     public static void setPackageName(String packageName) {
         DGMVAutofillServiceBridge.packageName = packageName;
@@ -98,14 +248,17 @@ public class DGMVAutofillServiceBridge {
     }
 
     public static DGMVAutofillServiceBridge getInstance() {
-        if (DGMVAutofillServiceBridge.packageName == null) {
-            throw new RuntimeException("Package Name not set");
-        }
-
-        if (instance == null) {
-            instance = new DGMVAutofillServiceBridge();
+        DGMVAutofillServiceBridge bridge = instance;
+        if (bridge == null) {
+            synchronized (DGMVAutofillServiceBridge.class) {
+                bridge = instance;
+                if (bridge == null) {
+                    bridge = new DGMVAutofillServiceBridge();
+                    instance = bridge;
+                }
+            }
         }
-        return instance;
+        return bridge;
     }
 
     public void setCredentialProviderRequestInstance(CredentialProviderRequest instance) {
@@ -116,9 +269,109 @@ public class DGMVAutofillServiceBridge {
         return credentialProviderRequestInstance;
     }
 
-    public void prepareToStartExtension(DGMVAutofillParser parser) {
-        // Save request info
-        requestInfo = new RequestInfo(parser);
+    /**
+     * Creates a request that is answered by the authenticator, to be passed to it in
+     * {@link #EXTRA_REQUEST}.
+     *
+     * @param requestId the id of the fill request
+     * @param datasetAuthentication true if the extension unlocks a single dataset of the
+     *                              response instead of the whole response
+     * @param domainMatcher resolves the registrable domain of the website, may be null
+     * @param associatedDomains the web domains of a native app, empty for websites
+     */
+    RequestInfo createRequest(int requestId, DGMVAutofillParser parser, boolean datasetAuthentication,
+                              DomainMatcher domainMatcher, List<String> associatedDomains) {
+        String siteURL = null;
+
+        String webDomain = parser.getWebDomain();
+        if (domainMatcher != null && webDomain != null) {
+            String site = domainMatcher.getRegistrableDomain(webDomain);
+
+            if (site != null && !site.equals(DomainMatcher.normalizeHost(webDomain))) {
+                // getURL() is the scheme followed by the web domain
+                String url = parser.getURL();
+                siteURL = url.substring(0, url.length() - webDomain.length()) + site;
+            }
+        }
+
+        String sessionKey = SessionCredentialCache.getKey(parser, domainMatcher);
+
+        return new RequestInfo(requestId, parser, siteURL, sessionKey, associatedDomains, datasetAuthentication);
+    }
+
+    /**
+     * Registers a request passed to the authenticator in {@link #EXTRA_REQUEST}.
+     *
+     * @return the request, or null if there is none or it expired
+     */
+    public RequestInfo register(Bundle request) {
+        if (request == null) return null;
+
+        RequestInfo requestInfo = new RequestInfo(request);
+        if (requestInfo.isExpired(SystemClock.elapsedRealtime())) {
+            expired.incrementAndGet();
+            return null;
+        }
+
+        // Registering is rare compared to lookups, so abandoned requests are swept here
+        evictExpired();
+        requests.put(requestInfo.requestId, requestInfo);
+        return requestInfo;
+    }
+
+    private void evictExpired() {
+        long now = SystemClock.elapsedRealtime();
+
+        for (RequestInfo requestInfo : requests.values()) {
+            if (requestInfo.isExpired(now) && requests.remove(requestInfo.requestId, requestInfo)) {
+                expired.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the request registered under an id, or null if it is unknown, was answered
+     * or expired
+     */
+    public RequestInfo getRequestInfo(int requestId) {
+        RequestInfo requestInfo = requests.get(requestId);
+        if (requestInfo == null) return null;
+
+        if (requestInfo.isExpired(SystemClock.elapsedRealtime())) {
+            if (requests.remove(requestId, requestInfo)) expired.incrementAndGet();
+            return null;
+        }
+
+        return requestInfo;
+    }
+
+    /**
+     * @return false if no request is registered under the id
+     */
+    public boolean registerCompletionHandler(int requestId, CompletionHandler handler) {
+        RequestInfo requestInfo = getRequestInfo(requestId);
+        if (requestInfo == null) return false;
+
+        requestInfo.completionHandler = handler;
+        return true;
+    }
+
+    /**
+     * Removes a request so it is answered exactly once.
+     *
+     * @return the request, or null if it was unknown, answered already or has no handler
+     */
+    private RequestInfo take(int requestId) {
+        RequestInfo requestInfo = getRequestInfo(requestId);
+
+        if (requestInfo == null || requestInfo.completionHandler == null
+                || !requests.remove(requestId, requestInfo)) {
+            unknown.incrementAndGet();
+            Log.w("DGMV-Autofill", "No pending request " + requestId);
+            return null;
+        }
+
+        return requestInfo;
     }
 
     /*
@@ -127,64 +380,117 @@ public class DGMVAutofillServiceBridge {
     }
     */
 
-    public void requestCompleted(String username, String password) {
-        if (completionHandler == null) throw new RuntimeException("No completionHandler registered");
+    /**
+     * A credential picked in the authenticator.
+     */
+    public static final class Credential {
+        final String username;
+        final String password;
 
-        Log.d("DGMV-Autofill", requestInfo.toString());
+        public Credential(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+    }
 
-        boolean hasUsername = requestInfo.usernameFieldId != null && username != null && !username.isEmpty();
-        String packageName = DGMVAutofillServiceBridge.packageName;
-        Dataset.Builder builder = new Dataset.Builder();
+    public void requestCompleted(Context context, int requestId, String username, String password) {
+        requestCompleted(context, requestId, Collections.singletonList(new Credential(username, password)));
+    }
 
-        // Build the presentation of the datasets.
-        if (hasUsername) {
-            RemoteViews usernamePresentation = new RemoteViews(packageName, android.R.layout.simple_list_item_1);
-            usernamePresentation.setTextViewText(android.R.id.text1, username);
+    /**
+     * Answers the request with one dataset per credential, so the user can choose between
+     * several accounts without opening the authenticator again. A dataset authentication
+     * is answered with the credential of the account of the dataset only, and cancelled if
+     * the credentials do not hold that account. A dataset that is not bound to an account,
+     * such as the authenticator entry of sign-up forms, is answered with the first credential.
+     *
+     * The credentials are then remembered by the autofill process, so the next request for
+     * this realm is answered natively.
+     */
+    public void requestCompleted(Context context, int requestId, List<Credential> credentials) {
+        RequestInfo requestInfo = take(requestId);
+        if (requestInfo == null) return;
+
+        requestInfo.recordPhase(AutofillMetrics.PHASE_USER);
+
+        CompletionHandler completionHandler = requestInfo.completionHandler;
+        Log.d("DGMV-Autofill", requestInfo.toString());
 
-            builder.setValue(
-                    requestInfo.usernameFieldId,
-                    AutofillValue.forText(username),
-                    usernamePresentation
-            );
+        if (credentials.isEmpty()) {
+            completionHandler.requestCancelled("NO_CREDENTIALS");
+            return;
         }
 
-        // Build password description for presentation
-        String passwordDescription = "Password for ";
-        if (hasUsername) {
-            passwordDescription += username;
-        } else if (requestInfo.hasURL()) {
-            passwordDescription += requestInfo.getURL();
+        CredentialResponseBuilder builder = new CredentialResponseBuilder(
+                DGMVAutofillServiceBridge.packageName,
+                requestInfo.usernameFieldId,
+                requestInfo.passwordFieldId
+        );
+
+        if (requestInfo.datasetAuthentication) {
+            Credential credential = findDatasetCredential(requestInfo, credentials);
+            if (credential == null) {
+                // Never fill another account than the one the user tapped
+                completionHandler.requestCancelled("NO_MATCHING_CREDENTIAL");
+                return;
+            }
+
+            Dataset dataset = builder.buildDataset(
+                    credential.username, credential.password, getPasswordLabel(requestInfo, credential.username), null);
+            requestInfo.recordPhase(AutofillMetrics.PHASE_RESPONSE);
+            completionHandler.requestCompleted(dataset);
         } else {
-            passwordDescription = "Generated Password";
+            for (Credential credential : credentials) {
+                builder.addDataset(credential.username, credential.password, getPasswordLabel(requestInfo, credential.username), null);
+            }
+
+            FillResponse fillResponse = builder.build();
+            requestInfo.recordPhase(AutofillMetrics.PHASE_RESPONSE);
+            completionHandler.requestCompleted(fillResponse);
         }
 
-        // Return generated password
-        RemoteViews passwordPresentation = new RemoteViews(packageName, android.R.layout.simple_list_item_1);
-        passwordPresentation.setTextViewText(android.R.id.text1, passwordDescription);
+        // After answering, the call may have to start the autofill process
+        AutofillStateProvider.putCredentials(context, requestInfo.webDomain, requestInfo.packageName,
+                requestInfo.sessionKey, credentials);
+    }
 
-        builder.setValue(
-                requestInfo.passwordFieldId,
-                AutofillValue.forText(password),
-                passwordPresentation
-        );
+    private static Credential findDatasetCredential(RequestInfo requestInfo, List<Credential> credentials) {
+        if (requestInfo.datasetUsername == null) return credentials.get(0);
 
-        FillResponse fillResponse = new FillResponse.Builder()
-                .addDataset(builder.build())
-                .build();
+        // The index keeps accounts without a username under ""
+        String username = requestInfo.datasetUsername;
+        for (Credential credential : credentials) {
+            if (username.equals(credential.username != null ? credential.username : "")) return credential;
+        }
 
-        completionHandler.requestCompleted(fillResponse);
+        return null;
     }
 
-    public void requestCancelled(String reason) {
-        if (completionHandler == null) throw new RuntimeException("No completionHandler registered");
-        completionHandler.requestCancelled(reason);
+    private static String getPasswordLabel(RequestInfo requestInfo, String username) {
+        boolean hasUsername = requestInfo.usernameFieldId != null && username != null && !username.isEmpty();
+
+        if (hasUsername) {
+            return "Password for " + username;
+        } else if (requestInfo.hasURL()) {
+            return "Password for " + requestInfo.getURL();
+        }
+
+        return "Generated Password";
     }
 
-    public void registerCompletionHandler(CompletionHandler handler) {
-        this.completionHandler = handler;
+    public void requestCancelled(int requestId, String reason) {
+        RequestInfo requestInfo = take(requestId);
+        if (requestInfo == null) return;
+
+        requestInfo.completionHandler.requestCancelled(reason);
     }
 
-    public RequestInfo getRequestInfo() {
-        return requestInfo;
+    @Override
+    public String toString() {
+        return "DGMVAutofillServiceBridge{" +
+                "pending=" + requests.size() +
+                ", expired=" + expired.get() +
+                ", unknown=" + unknown.get() +
+                '}';
     }
 }
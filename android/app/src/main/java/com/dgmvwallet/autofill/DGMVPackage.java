@@ -1,5 +1,8 @@
 package com.dgmvwallet.autofill;
 
+import com.dgmvwallet.KeychainBatch;
+import com.dgmvwallet.crypto.NativeCrypto;
+import com.dgmvwallet.wallet.NativeDeriver;
 import com.facebook.react.ReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
@@ -24,6 +27,11 @@ public class DGMVPackage implements ReactPackage {
         DGMVAutofillServiceBridge.getInstance().setCredentialProviderRequestInstance(credentialProviderRequest);
         modules.add(credentialProviderRequest);
 
+        modules.add(new NativeCrypto(reactContext));
+        modules.add(new NativeDeriver(reactContext));
+        modules.add(new KeychainBatch(reactContext));
+        modules.add(new NativeCredentialIndex(reactContext));
+
         return modules;
     }
 }
\ No newline at end of file
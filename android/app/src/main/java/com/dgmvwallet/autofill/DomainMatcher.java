@@ -0,0 +1,199 @@
+package com.dgmvwallet.autofill;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.IDN;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Matches web domains by their registrable domain (eTLD+1), so "login.example.co.uk"
+ * and "www.example.co.uk" share credentials while "example.co.uk" and "other.co.uk" don't.
+ *
+ * The public suffix list ships as an asset. On first use it is compiled into a
+ * {@link PublicSuffixTrie} image in the no-backup files directory, which is memory-mapped
+ * from then on. The image is compiled again after an app update.
+ */
+class DomainMatcher {
+    static final String ASSET_NAME = "public_suffix_list.dat";
+    static final String TRIE_FILE_NAME = "public_suffix.trie";
+
+    static final int MATCH_NONE = 0;
+    // Same registrable domain, e.g. "www.example.com" and "login.example.com"
+    static final int MATCH_SAME_SITE = 1;
+    // One host is a subdomain of the other, e.g. "example.com" and "login.example.com"
+    static final int MATCH_SUBDOMAIN = 2;
+    static final int MATCH_EXACT = 3;
+
+    private static DomainMatcher instance = null;
+
+    private final Context context;
+    private PublicSuffixTrie trie;
+    private boolean loaded = false;
+
+    static synchronized DomainMatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new DomainMatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DomainMatcher(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Maps or compiles the trie if that has not happened yet. Called by the first lookup,
+     * or ahead of time from a background thread.
+     */
+    synchronized void load() {
+        if (loaded) return;
+        loaded = true;
+
+        long stamp = 0;
+        try {
+            stamp = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            // Compile on every start
+        }
+
+        File file = new File(context.getNoBackupFilesDir(), TRIE_FILE_NAME);
+
+        try {
+            if (file.exists()) {
+                PublicSuffixTrie mapped = PublicSuffixTrie.wrap(map(file));
+                if (mapped != null && stamp != 0 && mapped.getStamp() == stamp) {
+                    trie = mapped;
+                    return;
+                }
+            }
+
+            byte[] image;
+            try (InputStream in = context.getAssets().open(ASSET_NAME)) {
+                image = PublicSuffixTrie.compile(in, stamp);
+            }
+
+            File compiled = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(compiled)) {
+                out.write(image);
+                out.getFD().sync();
+            }
+
+            if (compiled.renameTo(file)) {
+                trie = PublicSuffixTrie.wrap(map(file));
+            } else {
+                trie = PublicSuffixTrie.wrap(ByteBuffer.wrap(image));
+            }
+        } catch (IOException e) {
+            // Domains are then compared as they are
+            Log.e("DGMV-Autofill", "Could not load public suffix list", e);
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private synchronized PublicSuffixTrie getTrie() {
+        load();
+        return trie;
+    }
+
+    /**
+     * @return the host in lower-case ASCII without a trailing dot, or null if it is empty
+     */
+    static String normalizeHost(String host) {
+        if (host == null) return null;
+
+        host = host.trim();
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+        if (host.isEmpty()) return null;
+
+        for (int i = 0; i < host.length(); ++i) {
+            if (host.charAt(i) >= 0x80) {
+                try {
+                    host = IDN.toASCII(host, IDN.ALLOW_UNASSIGNED);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                break;
+            }
+        }
+
+        return host.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the registrable domain of a host, or the normalized host itself if it has
+     * none (a public suffix, an IP address) or the list could not be loaded
+     */
+    String getRegistrableDomain(String host) {
+        host = normalizeHost(host);
+        if (host == null) return null;
+
+        PublicSuffixTrie trie = getTrie();
+        if (trie == null || isIpAddress(host)) return host;
+
+        String registrable = trie.getRegistrableDomain(host);
+        return registrable != null ? registrable : host;
+    }
+
+    /**
+     * Ranks how well the host a credential was stored for matches the host of a request.
+     *
+     * @return one of the MATCH_ constants, higher is better
+     */
+    int rank(String credentialHost, String requestHost) {
+        credentialHost = normalizeHost(credentialHost);
+        requestHost = normalizeHost(requestHost);
+        if (credentialHost == null || requestHost == null) return MATCH_NONE;
+
+        if (credentialHost.equals(requestHost)) return MATCH_EXACT;
+
+        String credentialSite = getRegistrableDomain(credentialHost);
+        if (!credentialSite.equals(getRegistrableDomain(requestHost))) return MATCH_NONE;
+
+        if (isSubdomain(credentialHost, requestHost) || isSubdomain(requestHost, credentialHost)) {
+            return MATCH_SUBDOMAIN;
+        }
+
+        return MATCH_SAME_SITE;
+    }
+
+    private static boolean isSubdomain(String host, String parent) {
+        return host.length() > parent.length()
+                && host.endsWith(parent)
+                && host.charAt(host.length() - parent.length() - 1) == '.';
+    }
+
+    private static boolean isIpAddress(String host) {
+        if (host.indexOf(':') >= 0) return true;
+
+        for (int i = 0; i < host.length(); ++i) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DomainMatcher{" +
+                "loaded=" + loaded +
+                ", nodes=" + (trie != null ? trie.getNodeCount() : 0) +
+                '}';
+    }
+}
@@ -0,0 +1,207 @@
+package com.dgmvwallet.autofill;
+
+/**
+ * Scores how likely a view node is a username or a password field.
+ *
+ * Explicit signals are checked first: the autofill hints of the view, then the HTML
+ * attributes of web inputs and the input type. Free text (the hint of the view and the
+ * label text preceding it) is only consulted through a keyword automaton. All rules come
+ * from the {@link FieldRules} pack, which is compiled once per process.
+ */
+final class FieldClassifier {
+    static final int CONFIDENCE_NONE = 0;
+    static final int CONFIDENCE_LABEL = 30;
+    static final int CONFIDENCE_HINT_TEXT = 50;
+    static final int CONFIDENCE_HTML_NAME = 60;
+    static final int CONFIDENCE_INPUT_TYPE = 80;
+    static final int CONFIDENCE_HTML_TYPE = 85;
+    static final int CONFIDENCE_HTML_AUTOCOMPLETE = 90;
+    static final int CONFIDENCE_AUTOFILL_HINT = 100;
+
+    static final int KEYWORD_USERNAME = 1;
+    static final int KEYWORD_PASSWORD = 2;
+
+    // Masks of android.text.InputType, kept here so the classifier also runs off-device
+    private static final int TYPE_MASK_CLASS = 0x0000000f;
+    private static final int TYPE_MASK_VARIATION = 0x00000ff0;
+
+    /**
+     * Confidence scores of a single node. The parser keeps one instance and reuses it for
+     * every node, so classification does not allocate.
+     */
+    static final class Scores {
+        int username;
+        int password;
+
+        void reset() {
+            username = CONFIDENCE_NONE;
+            password = CONFIDENCE_NONE;
+        }
+
+        void username(int confidence) {
+            if (confidence > username) username = confidence;
+        }
+
+        void password(int confidence) {
+            if (confidence > password) password = confidence;
+        }
+    }
+
+    private FieldClassifier() {}
+
+    /**
+     * Classifies a node. {@code label} is the text preceding the node in the hierarchy,
+     * which is often a separate label view rather than the input itself.
+     */
+    static <N> void classify(FieldRules rules, NodeSource<?, N> source, N node, CharSequence label, Scores scores) {
+        scores.reset();
+
+        if (!isFillableInput(source, node)) return;
+
+        // Explicit autofill hints set by the app
+        String[] autofillHints = source.getAutofillHints(node);
+        if (autofillHints != null) {
+            for (String autofillHint : autofillHints) {
+                if (containsIgnoreCase(rules.usernameAutofillHints, autofillHint)) {
+                    scores.username(CONFIDENCE_AUTOFILL_HINT);
+                } else if (containsIgnoreCase(rules.passwordAutofillHints, autofillHint)) {
+                    scores.password(CONFIDENCE_AUTOFILL_HINT);
+                }
+            }
+
+            if (scores.username == CONFIDENCE_AUTOFILL_HINT || scores.password == CONFIDENCE_AUTOFILL_HINT) {
+                return;
+            }
+        }
+
+        classifyHtmlAttributes(rules, source, node, scores);
+        classifyInputType(rules, source.getInputType(node), scores);
+
+        // Free text only decides if nothing more explicit was found
+        if (scores.username >= CONFIDENCE_HTML_NAME || scores.password >= CONFIDENCE_HTML_NAME) return;
+
+        applyKeywords(rules.keywords.match(source.getHint(node)), CONFIDENCE_HINT_TEXT, scores);
+        applyKeywords(rules.keywords.match(label), CONFIDENCE_LABEL, scores);
+    }
+
+    /**
+     * @return true if a password field asks for a new password, as on sign-up and
+     * change-password forms
+     */
+    static <N> boolean isNewPassword(FieldRules rules, NodeSource<?, N> source, N node) {
+        String[] autofillHints = source.getAutofillHints(node);
+        if (autofillHints != null) {
+            for (String autofillHint : autofillHints) {
+                if (containsIgnoreCase(rules.newPasswordAutofillHints, autofillHint)) return true;
+            }
+        }
+
+        int count = source.getHtmlAttributeCount(node);
+        for (int i = 0; i < count; ++i) {
+            String value = source.getHtmlAttributeValue(node, i);
+
+            if (value != null && "autocomplete".equalsIgnoreCase(source.getHtmlAttributeName(node, i))
+                    && hasAnyToken(value, rules.newPasswordAutocomplete)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Only focusable text inputs can be filled: native EditText elements or HTML input elements.
+     */
+    static <N> boolean isFillableInput(NodeSource<?, N> source, N node) {
+        if (!source.isFocusable(node)) return false;
+        if ("android.widget.EditText".equalsIgnoreCase(source.getClassName(node))) return true;
+
+        return "input".equalsIgnoreCase(source.getHtmlTag(node));
+    }
+
+    private static <N> void classifyHtmlAttributes(FieldRules rules, NodeSource<?, N> source, N node, Scores scores) {
+        int count = source.getHtmlAttributeCount(node);
+
+        for (int i = 0; i < count; ++i) {
+            String name = source.getHtmlAttributeName(node, i);
+            String value = source.getHtmlAttributeValue(node, i);
+            if (name == null || value == null) continue;
+
+            if ("type".equalsIgnoreCase(name)) {
+                if (containsIgnoreCase(rules.passwordHtmlTypes, value)) {
+                    scores.password(CONFIDENCE_HTML_TYPE);
+                } else if (containsIgnoreCase(rules.usernameHtmlTypes, value)) {
+                    scores.username(CONFIDENCE_HTML_TYPE);
+                }
+
+            } else if ("autocomplete".equalsIgnoreCase(name)) {
+                if (hasAnyToken(value, rules.usernameAutocomplete)) {
+                    scores.username(CONFIDENCE_HTML_AUTOCOMPLETE);
+                } else if (hasAnyToken(value, rules.passwordAutocomplete)) {
+                    scores.password(CONFIDENCE_HTML_AUTOCOMPLETE);
+                }
+
+            } else {
+                for (int j = 0; j < rules.keywordAttributes.length; ++j) {
+                    if (rules.keywordAttributes[j].equalsIgnoreCase(name)) {
+                        applyKeywords(rules.keywords.match(value), rules.keywordAttributeConfidences[j], scores);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void classifyInputType(FieldRules rules, int inputType, Scores scores) {
+        int inputClass = inputType & TYPE_MASK_CLASS;
+        int variation = inputType & TYPE_MASK_VARIATION;
+
+        for (int[] rule : rules.inputTypes) {
+            if (rule[0] == inputClass && rule[1] == variation) {
+                applyKeywords(rule[2], rule[3], scores);
+            }
+        }
+    }
+
+    private static void applyKeywords(int keywords, int confidence, Scores scores) {
+        if ((keywords & KEYWORD_USERNAME) != 0) scores.username(confidence);
+        if ((keywords & KEYWORD_PASSWORD) != 0) scores.password(confidence);
+    }
+
+    private static boolean containsIgnoreCase(String[] values, String value) {
+        if (value == null) return false;
+
+        for (String candidate : values) {
+            if (candidate.equalsIgnoreCase(value)) return true;
+        }
+
+        return false;
+    }
+
+    private static boolean hasAnyToken(String value, String[] tokens) {
+        for (String token : tokens) {
+            if (hasToken(value, token)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks whether a whitespace separated attribute value (such as
+     * {@code autocomplete="section-login username"}) contains the given token.
+     */
+    static boolean hasToken(String value, String token) {
+        int length = token.length();
+        int last = value.length() - length;
+
+        for (int i = 0; i <= last; ++i) {
+            if ((i == 0 || Character.isWhitespace(value.charAt(i - 1)))
+                    && (i == last || Character.isWhitespace(value.charAt(i + length)))
+                    && value.regionMatches(true, i, token, 0, length)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,317 @@
+package com.dgmvwallet.autofill;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The field detection rules of {@link FieldClassifier}, compiled from a rule pack.
+ *
+ * The rule pack ships as a versioned text asset, so keywords of more languages can be
+ * added without touching the classifier. It is compiled once per process, on first use,
+ * into a single {@link KeywordMatcher}, so a label is scanned once no matter how many
+ * keywords the pack holds. If the pack cannot be read, the English rules built into this
+ * class are used instead.
+ *
+ * Rule pack format, UTF-8:
+ * <pre>
+ *   # comment
+ *   version 1
+ *   [username-keywords]          lines of "language keyword", the keyword may contain spaces
+ *   [password-keywords]
+ *   [username-autofill-hints]    one autofill hint per line
+ *   [password-autofill-hints]
+ *   [new-password-autofill-hints] autofill hints of fields that take a new password
+ *   [username-html-types]        values of the HTML type attribute
+ *   [password-html-types]
+ *   [username-autocomplete]      tokens of the HTML autocomplete attribute
+ *   [password-autocomplete]
+ *   [new-password-autocomplete]
+ *   [keyword-attributes]         lines of "attribute confidence", matched against the keywords
+ *   [input-types]                lines of "class variation username|password confidence"
+ * </pre>
+ * Confidences are named after the CONFIDENCE_ constants of FieldClassifier, e.g. "html-name".
+ */
+final class FieldRules {
+    static final String ASSET_NAME = "autofill_rules.txt";
+
+    /**
+     * Opens the rule pack, for example from the app assets.
+     */
+    interface Source {
+        InputStream open() throws IOException;
+    }
+
+    private static final String BUILT_IN_RULES = String.join("\n",
+        "version 0",
+        "[username-keywords]", "en user", "en mail", "en login",
+        "[password-keywords]", "en pass", "en pwd",
+        "[username-autofill-hints]", "username", "emailAddress", "newUsername", "email",
+        "[password-autofill-hints]", "password", "newPassword", "current-password", "new-password",
+        "[new-password-autofill-hints]", "newPassword", "new-password",
+        "[username-html-types]", "email",
+        "[password-html-types]", "password",
+        "[username-autocomplete]", "username", "email",
+        "[password-autocomplete]", "current-password", "new-password",
+        "[new-password-autocomplete]", "new-password",
+        "[keyword-attributes]", "name html-name", "id html-name",
+        "[input-types]", "0x1 0x80 password input-type", "0x1 0x90 password input-type",
+        "0x1 0xe0 password input-type", "0x1 0x20 username html-name", "0x1 0xd0 username html-name",
+        "0x2 0x10 password input-type"
+    );
+
+    private static volatile Source source = null;
+    private static volatile FieldRules instance = null;
+    private static volatile Exception loadError = null;
+
+    final int version;
+    final int keywordCount;
+    final KeywordMatcher keywords;
+
+    final String[] usernameAutofillHints;
+    final String[] passwordAutofillHints;
+    final String[] usernameHtmlTypes;
+    final String[] passwordHtmlTypes;
+    final String[] usernameAutocomplete;
+    final String[] passwordAutocomplete;
+    final String[] newPasswordAutofillHints;
+    final String[] newPasswordAutocomplete;
+
+    final String[] keywordAttributes;
+    final int[] keywordAttributeConfidences;
+
+    // Rows of class, variation, category and confidence
+    final int[][] inputTypes;
+
+    private FieldRules(int version, int keywordCount, KeywordMatcher keywords, List<List<String>> lists,
+                       List<String> keywordAttributes, List<Integer> keywordAttributeConfidences,
+                       List<int[]> inputTypes) {
+        this.version = version;
+        this.keywordCount = keywordCount;
+        this.keywords = keywords;
+        this.usernameAutofillHints = lists.get(0).toArray(new String[0]);
+        this.passwordAutofillHints = lists.get(1).toArray(new String[0]);
+        this.usernameHtmlTypes = lists.get(2).toArray(new String[0]);
+        this.passwordHtmlTypes = lists.get(3).toArray(new String[0]);
+        this.usernameAutocomplete = lists.get(4).toArray(new String[0]);
+        this.passwordAutocomplete = lists.get(5).toArray(new String[0]);
+        this.newPasswordAutofillHints = lists.get(6).toArray(new String[0]);
+        this.newPasswordAutocomplete = lists.get(7).toArray(new String[0]);
+        this.keywordAttributes = keywordAttributes.toArray(new String[0]);
+        this.keywordAttributeConfidences = new int[keywordAttributeConfidences.size()];
+        for (int i = 0; i < this.keywordAttributeConfidences.length; ++i) {
+            this.keywordAttributeConfidences[i] = keywordAttributeConfidences.get(i);
+        }
+        this.inputTypes = inputTypes.toArray(new int[0][]);
+    }
+
+    /**
+     * Sets where the rule pack is read from. Takes effect if the rules were not compiled yet.
+     */
+    static void setSource(Source newSource) {
+        source = newSource;
+    }
+
+    /**
+     * @return the compiled rules, compiling them on the first call
+     */
+    static FieldRules getInstance() {
+        FieldRules rules = instance;
+        if (rules != null) return rules;
+
+        synchronized (FieldRules.class) {
+            if (instance == null) instance = load(source);
+            return instance;
+        }
+    }
+
+    /**
+     * @return why the rule pack could not be read, or null if it was read or is not
+     * compiled yet
+     */
+    static Exception getLoadError() {
+        return loadError;
+    }
+
+    private static FieldRules load(Source source) {
+        if (source != null) {
+            try (InputStream in = source.open()) {
+                return compile(in);
+            } catch (IOException | IllegalArgumentException e) {
+                // Detection degrades to the built-in English rules
+                loadError = e;
+            }
+        }
+
+        try {
+            return compile(new ByteArrayInputStream(BUILT_IN_RULES.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final String[] LIST_SECTIONS = {
+        "username-autofill-hints", "password-autofill-hints",
+        "username-html-types", "password-html-types",
+        "username-autocomplete", "password-autocomplete",
+        "new-password-autofill-hints", "new-password-autocomplete",
+    };
+
+    private static final String[] CONFIDENCE_NAMES = {
+        "label", "hint-text", "html-name", "input-type", "html-type", "html-autocomplete", "autofill-hint",
+    };
+
+    private static final int[] CONFIDENCE_VALUES = {
+        FieldClassifier.CONFIDENCE_LABEL,
+        FieldClassifier.CONFIDENCE_HINT_TEXT,
+        FieldClassifier.CONFIDENCE_HTML_NAME,
+        FieldClassifier.CONFIDENCE_INPUT_TYPE,
+        FieldClassifier.CONFIDENCE_HTML_TYPE,
+        FieldClassifier.CONFIDENCE_HTML_AUTOCOMPLETE,
+        FieldClassifier.CONFIDENCE_AUTOFILL_HINT,
+    };
+
+    /**
+     * Compiles a rule pack.
+     *
+     * @throws IllegalArgumentException if the pack is malformed
+     */
+    static FieldRules compile(InputStream pack) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(pack, StandardCharsets.UTF_8));
+
+        int version = -1;
+        String section = null;
+
+        List<String> keywords = new ArrayList<>();
+        List<Integer> categories = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+
+        List<List<String>> lists = new ArrayList<>();
+        for (int i = 0; i < LIST_SECTIONS.length; ++i) lists.add(new ArrayList<>());
+
+        List<String> keywordAttributes = new ArrayList<>();
+        List<Integer> keywordAttributeConfidences = new ArrayList<>();
+        List<int[]> inputTypes = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            ++lineNumber;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            if (version < 0) {
+                if (!line.startsWith("version ")) throw invalid(lineNumber, "missing version");
+                version = parseInt(line.substring(8).trim(), lineNumber);
+                continue;
+            }
+
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = line.substring(1, line.length() - 1);
+                continue;
+            }
+
+            if (section == null) throw invalid(lineNumber, "rule outside of a section");
+
+            String[] fields = line.split("\\s+");
+
+            switch (section) {
+                case "username-keywords":
+                case "password-keywords": {
+                    // The language tag only documents the keyword
+                    if (fields.length < 2) throw invalid(lineNumber, "expected language and keyword");
+                    String keyword = line.substring(fields[0].length()).trim().toLowerCase(Locale.ROOT);
+                    int category = section.startsWith("username")
+                            ? FieldClassifier.KEYWORD_USERNAME
+                            : FieldClassifier.KEYWORD_PASSWORD;
+
+                    if (seen.add(category + keyword)) {
+                        keywords.add(keyword);
+                        categories.add(category);
+                    }
+                    break;
+                }
+
+                case "keyword-attributes":
+                    if (fields.length != 2) throw invalid(lineNumber, "expected attribute and confidence");
+                    keywordAttributes.add(fields[0]);
+                    keywordAttributeConfidences.add(parseConfidence(fields[1], lineNumber));
+                    break;
+
+                case "input-types":
+                    if (fields.length != 4) throw invalid(lineNumber, "expected class, variation, field and confidence");
+                    inputTypes.add(new int[] {
+                        parseInt(fields[0], lineNumber),
+                        parseInt(fields[1], lineNumber),
+                        parseCategory(fields[2], lineNumber),
+                        parseConfidence(fields[3], lineNumber),
+                    });
+                    break;
+
+                default: {
+                    int list = indexOf(LIST_SECTIONS, section);
+                    if (list < 0) throw invalid(lineNumber, "unknown section " + section);
+                    lists.get(list).add(line);
+                }
+            }
+        }
+
+        if (version < 0) throw invalid(lineNumber, "missing version");
+
+        int[] categoryArray = new int[categories.size()];
+        for (int i = 0; i < categoryArray.length; ++i) categoryArray[i] = categories.get(i);
+
+        KeywordMatcher matcher = new KeywordMatcher(keywords.toArray(new String[0]), categoryArray);
+        return new FieldRules(version, keywords.size(), matcher, lists,
+                keywordAttributes, keywordAttributeConfidences, inputTypes);
+    }
+
+    private static int parseInt(String value, int lineNumber) {
+        try {
+            return value.startsWith("0x") ? Integer.parseInt(value.substring(2), 16) : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw invalid(lineNumber, "invalid number " + value);
+        }
+    }
+
+    private static int parseConfidence(String name, int lineNumber) {
+        int index = indexOf(CONFIDENCE_NAMES, name);
+        if (index < 0) throw invalid(lineNumber, "unknown confidence " + name);
+        return CONFIDENCE_VALUES[index];
+    }
+
+    private static int parseCategory(String name, int lineNumber) {
+        if ("username".equals(name)) return FieldClassifier.KEYWORD_USERNAME;
+        if ("password".equals(name)) return FieldClassifier.KEYWORD_PASSWORD;
+        throw invalid(lineNumber, "unknown field " + name);
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i].equals(value)) return i;
+        }
+        return -1;
+    }
+
+    private static IllegalArgumentException invalid(int lineNumber, String message) {
+        return new IllegalArgumentException("Invalid rule pack, line " + lineNumber + ": " + message);
+    }
+
+    @Override
+    public String toString() {
+        return "FieldRules{" +
+                "version=" + version +
+                ", keywords=" + keywordCount +
+                ", keywordAttributes=" + keywordAttributes.length +
+                ", inputTypes=" + inputTypes.length +
+                '}';
+    }
+}
@@ -0,0 +1,91 @@
+package com.dgmvwallet.autofill;
+
+import android.view.autofill.AutofillId;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the parse outcome of every fill context, keyed by request id.
+ *
+ * Android keeps the contexts of earlier steps of a flow in every later
+ * {@link android.service.autofill.FillRequest}. Their outcomes do not change, so only
+ * the newest structure has to be scanned and earlier decisions are looked up here.
+ */
+class FillContextHistory {
+    private final int capacity;
+    private final LinkedHashMap<Integer, Outcome> outcomes;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    static final class Outcome {
+        final boolean focused;
+        final AutofillId usernameId;
+        final AutofillId passwordId;
+        final boolean newPassword;
+        final String domain;
+        final String scheme;
+
+        Outcome(boolean focused, AutofillId usernameId, AutofillId passwordId, boolean newPassword,
+                String domain, String scheme) {
+            this.focused = focused;
+            this.usernameId = usernameId;
+            this.passwordId = passwordId;
+            this.newPassword = newPassword;
+            this.domain = domain;
+            this.scheme = scheme;
+        }
+
+        @Override
+        public String toString() {
+            return "Outcome{" +
+                    "focused=" + focused +
+                    ", usernameId=" + usernameId +
+                    ", passwordId=" + passwordId +
+                    ", newPassword=" + newPassword +
+                    ", domain='" + domain + '\'' +
+                    '}';
+        }
+    }
+
+    FillContextHistory(int capacity) {
+        this.capacity = capacity;
+        this.outcomes = new LinkedHashMap<Integer, Outcome>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Outcome> eldest) {
+                return size() > FillContextHistory.this.capacity;
+            }
+        };
+    }
+
+    synchronized Outcome get(int requestId) {
+        Outcome outcome = outcomes.get(requestId);
+
+        if (outcome != null) {
+            ++hits;
+        } else {
+            ++misses;
+        }
+
+        return outcome;
+    }
+
+    synchronized void put(int requestId, Outcome outcome) {
+        outcomes.put(requestId, outcome);
+    }
+
+    synchronized void clear() {
+        outcomes.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FillContextHistory{" +
+                "size=" + outcomes.size() +
+                ", capacity=" + capacity +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                '}';
+    }
+}
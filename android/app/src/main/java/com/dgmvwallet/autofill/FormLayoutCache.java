@@ -0,0 +1,229 @@
+package com.dgmvwallet.autofill;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded LRU cache of resolved login form layouts.
+ *
+ * Layouts are keyed by a cheap structural fingerprint of a window, so the same login
+ * screen of the same app does not have to be scanned again on every fill request.
+ * A layout stores the child index paths to the username and password fields instead
+ * of their autofill ids, which are only valid for one view hierarchy.
+ */
+class FormLayoutCache {
+    // Number of nodes (breadth-first, from the window root) that contribute to a fingerprint
+    static final int FINGERPRINT_NODES = 32;
+
+    private final int capacity;
+    private final LinkedHashMap<Fingerprint, Layout> layouts;
+
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+    private int invalidations = 0;
+
+    static final class Fingerprint {
+        private final String activity;
+        private final String title;
+        private final String webDomain;
+        private final int windowIndex;
+        private final int childCountSignature;
+
+        private Fingerprint(String activity, String title, String webDomain, int windowIndex, int childCountSignature) {
+            this.activity = activity;
+            this.title = title;
+            this.webDomain = webDomain;
+            this.windowIndex = windowIndex;
+            this.childCountSignature = childCountSignature;
+        }
+
+        /**
+         * Builds the fingerprint of a window from its activity, its title and the child
+         * counts of the first {@link #FINGERPRINT_NODES} nodes in breadth-first order.
+         * A web domain found among those nodes is part of the fingerprint as well.
+         */
+        static <S, N> Fingerprint of(NodeSource<S, N> source, S structure, int windowIndex) {
+            CharSequence title = source.getWindowTitle(structure, windowIndex);
+
+            Object[] queue = new Object[FINGERPRINT_NODES];
+            queue[0] = source.getWindowRoot(structure, windowIndex);
+            int head = 0;
+            int tail = queue[0] != null ? 1 : 0;
+
+            String webDomain = null;
+            int signature = 1;
+
+            while (head < tail) {
+                @SuppressWarnings("unchecked")
+                N node = (N) queue[head++];
+                int childCount = source.getChildCount(node);
+                signature = 31 * signature + childCount;
+
+                if (webDomain == null) {
+                    String domain = source.getWebDomain(node);
+                    if (domain != null && !domain.isEmpty()) webDomain = domain;
+                }
+
+                for (int i = 0; i < childCount && tail < FINGERPRINT_NODES; ++i) {
+                    queue[tail++] = source.getChildAt(node, i);
+                }
+            }
+
+            return new Fingerprint(
+                source.getActivityComponent(structure),
+                title != null ? title.toString() : null,
+                webDomain,
+                windowIndex,
+                signature
+            );
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Fingerprint)) return false;
+
+            Fingerprint other = (Fingerprint) o;
+            return windowIndex == other.windowIndex
+                && childCountSignature == other.childCountSignature
+                && Objects.equals(activity, other.activity)
+                && Objects.equals(title, other.title)
+                && Objects.equals(webDomain, other.webDomain);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(activity, title, webDomain, windowIndex, childCountSignature);
+        }
+
+        @Override
+        public String toString() {
+            return "Fingerprint{" +
+                    "activity='" + activity + '\'' +
+                    ", title='" + title + '\'' +
+                    ", webDomain='" + webDomain + '\'' +
+                    ", windowIndex=" + windowIndex +
+                    ", childCountSignature=" + childCountSignature +
+                    '}';
+        }
+    }
+
+    /**
+     * Resolved form of one window. Paths are child indexes starting below the window root.
+     */
+    static final class Layout {
+        final int[] usernamePath;
+        final int[] passwordPath;
+        final int[] domainPath;
+        final String domain;
+        final String scheme;
+
+        Layout(int[] usernamePath, int[] passwordPath, int[] domainPath, String domain, String scheme) {
+            this.usernamePath = usernamePath;
+            this.passwordPath = passwordPath;
+            this.domainPath = domainPath;
+            this.domain = domain;
+            this.scheme = scheme;
+        }
+
+        static <N> N resolve(NodeSource<?, N> source, N root, int[] path) {
+            if (path == null) return null;
+
+            N node = root;
+            for (int index : path) {
+                if (node == null || index >= source.getChildCount(node)) return null;
+                node = source.getChildAt(node, index);
+            }
+
+            return node;
+        }
+
+        @Override
+        public String toString() {
+            return "Layout{" +
+                    "usernamePath=" + Arrays.toString(usernamePath) +
+                    ", passwordPath=" + Arrays.toString(passwordPath) +
+                    ", domain='" + domain + '\'' +
+                    '}';
+        }
+    }
+
+    FormLayoutCache(int capacity) {
+        this.capacity = capacity;
+        this.layouts = new LinkedHashMap<Fingerprint, Layout>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Fingerprint, Layout> eldest) {
+                if (size() > FormLayoutCache.this.capacity) {
+                    ++evictions;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    synchronized Layout get(Fingerprint fingerprint) {
+        Layout layout = layouts.get(fingerprint);
+
+        if (layout != null) {
+            ++hits;
+        } else {
+            ++misses;
+        }
+
+        return layout;
+    }
+
+    synchronized void put(Fingerprint fingerprint, Layout layout) {
+        layouts.put(fingerprint, layout);
+    }
+
+    /**
+     * Drops a layout whose candidate nodes no longer match the window it was stored for.
+     */
+    synchronized void invalidate(Fingerprint fingerprint) {
+        if (layouts.remove(fingerprint) != null) {
+            ++invalidations;
+        }
+    }
+
+    synchronized void clear() {
+        layouts.clear();
+    }
+
+    synchronized int size() {
+        return layouts.size();
+    }
+
+    synchronized int getHitCount() {
+        return hits;
+    }
+
+    synchronized int getMissCount() {
+        return misses;
+    }
+
+    synchronized int getEvictionCount() {
+        return evictions;
+    }
+
+    synchronized int getInvalidationCount() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "FormLayoutCache{" +
+                "size=" + layouts.size() +
+                ", capacity=" + capacity +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                ", invalidations=" + invalidations +
+                '}';
+    }
+}
@@ -0,0 +1,525 @@
+package com.dgmvwallet.autofill;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the username and password fields of a fill request.
+ *
+ * The scanner only reads the view hierarchy through a {@link NodeSource}, which keeps it
+ * free of platform classes. {@link DGMVAutofillParser} runs it against the
+ * AssistStructures of a request; benchmarks run it against synthetic trees.
+ *
+ * @param <S> structure type, one per fill context
+ * @param <N> node type
+ */
+class FormScanner<S, N> {
+    // Number of nodes visited between two checks of the interrupt
+    static final int INTERRUPT_CHECK_INTERVAL = 128;
+
+    static final int UNLIMITED = Integer.MAX_VALUE;
+
+    // Values of android.view.View
+    static final int VISIBLE = 0;
+    static final int IMPORTANT_FOR_AUTOFILL_NO = 0x2;
+    static final int IMPORTANT_FOR_AUTOFILL_YES_EXCLUDE_DESCENDANTS = 0x4;
+    static final int IMPORTANT_FOR_AUTOFILL_NO_EXCLUDE_DESCENDANTS = 0x8;
+
+    /**
+     * Checked cooperatively during a scan, for example against a deadline or a
+     * cancellation signal.
+     */
+    interface Interrupt {
+        boolean shouldStop();
+    }
+
+    private final NodeSource<S, N> source;
+    private final FormLayoutCache layoutCache;
+    private final FieldRules rules;
+    private Interrupt interrupt;
+    private boolean interrupted;
+
+    private int nodeBudget = UNLIMITED;
+    private int depthBudget = UNLIMITED;
+    private boolean truncated;
+    private int visitedNodes;
+
+    private N usernameNode;
+    private N passwordNode;
+    private String scheme;
+    private String domain;
+
+    private final NodeStack<N> stack = new NodeStack<>();
+    private final FieldClassifier.Scores scores = new FieldClassifier.Scores();
+
+    // Child indexes from the window root to the node being visited
+    private int[] path = new int[32];
+
+    FormScanner(NodeSource<S, N> source, FormLayoutCache layoutCache) {
+        this.source = source;
+        this.layoutCache = layoutCache;
+        this.rules = FieldRules.getInstance();
+    }
+
+    void setInterrupt(Interrupt interrupt) {
+        this.interrupt = interrupt;
+    }
+
+    /**
+     * Bounds the work of a scan on huge hierarchies. A scan stops after visiting
+     * maxNodes nodes over all windows, and does not descend below maxDepth.
+     */
+    void setBudget(int maxNodes, int maxDepth) {
+        this.nodeBudget = maxNodes;
+        this.depthBudget = maxDepth;
+    }
+
+    /**
+     * @return true if a child is skipped together with its subtree: it is not visible,
+     * has no size, or excludes itself and its descendants from autofill
+     */
+    static <N> boolean isPruned(NodeSource<?, N> source, N node) {
+        return source.getVisibility(node) != VISIBLE
+                || source.getWidth(node) <= 0
+                || source.getHeight(node) <= 0
+                || source.getImportantForAutofill(node) == IMPORTANT_FOR_AUTOFILL_NO_EXCLUDE_DESCENDANTS;
+    }
+
+    /**
+     * Explicit depth-first stack for the view tree walk, so huge WebView hierarchies
+     * do not recurse once per nesting level. It is reused for every window of a request.
+     */
+    private static final class NodeStack<N> {
+        private Object[] nodes = new Object[64];
+        private CharSequence[] textHints = new CharSequence[64];
+        private int[] depths = new int[64];
+        private int[] childIndexes = new int[64];
+        private int size = 0;
+
+        // Subtrees skipped by isPruned() since the last reset
+        int pruned = 0;
+
+        // Frame popped last
+        N node;
+        CharSequence textHint;
+        int depth;
+        int childIndex;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            Arrays.fill(nodes, 0, size, null);
+            Arrays.fill(textHints, 0, size, null);
+            size = 0;
+            node = null;
+            textHint = null;
+        }
+
+        @SuppressWarnings("unchecked")
+        void pop() {
+            --size;
+            node = (N) nodes[size];
+            textHint = textHints[size];
+            depth = depths[size];
+            childIndex = childIndexes[size];
+            nodes[size] = null;
+            textHints[size] = null;
+        }
+
+        /**
+         * Pushes all children of a node in reverse order, so they are popped in document
+         * order. Each child carries the label text that precedes it: its own text, the text
+         * of the closest previous sibling, or the text inherited from its parent. Pruned
+         * children are not pushed, and their text is no label.
+         */
+        void pushChildren(NodeSource<?, N> source, N parent, CharSequence parentTextHint, int childDepth) {
+            int count = source.getChildCount(parent);
+            if (count == 0) return;
+
+            ensureCapacity(size + count);
+
+            CharSequence lastTextHint = parentTextHint;
+            int slot = size;
+
+            for (int i = 0; i < count; ++i) {
+                N childNode = source.getChildAt(parent, i);
+
+                if (isPruned(source, childNode)) {
+                    ++pruned;
+                    continue;
+                }
+
+                // Get label description text.
+                // Sometimes this is not the editText element itself, but a label
+                // that is located before the input field.
+                CharSequence newTextHint = source.getText(childNode);
+                if (
+                    newTextHint != null &&
+                    newTextHint.length() > 0
+                ) {
+                    lastTextHint = newTextHint;
+
+                    if (AutofillTrace.on(AutofillTrace.LEVEL_EVENTS)) {
+                        AutofillTrace.record(AutofillTrace.EVENT_LABEL, childDepth, AutofillTrace.KIND_NONE,
+                                newTextHint.length(), source.getId(childNode));
+                    }
+                }
+
+                nodes[slot] = childNode;
+                textHints[slot] = lastTextHint;
+                depths[slot] = childDepth;
+                childIndexes[slot] = i;
+                ++slot;
+            }
+
+            reverse(size, slot - 1);
+            size = slot;
+        }
+
+        private void reverse(int from, int to) {
+            for (; from < to; ++from, --to) {
+                Object node = nodes[from];
+                nodes[from] = nodes[to];
+                nodes[to] = node;
+
+                CharSequence textHint = textHints[from];
+                textHints[from] = textHints[to];
+                textHints[to] = textHint;
+
+                int depth = depths[from];
+                depths[from] = depths[to];
+                depths[to] = depth;
+
+                int childIndex = childIndexes[from];
+                childIndexes[from] = childIndexes[to];
+                childIndexes[to] = childIndex;
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= nodes.length) return;
+
+            int newCapacity = Math.max(capacity, nodes.length * 2);
+            nodes = Arrays.copyOf(nodes, newCapacity);
+            textHints = Arrays.copyOf(textHints, newCapacity);
+            depths = Arrays.copyOf(depths, newCapacity);
+            childIndexes = Arrays.copyOf(childIndexes, newCapacity);
+        }
+    }
+
+    /**
+     * Walks a window once, detecting focus and classifying fields in the same pass.
+     * The detected fields and web domain are only committed if the window holds the
+     * focused element. The walk stops as soon as focus has been seen and both the
+     * username and the password field are known.
+     *
+     * If the interrupt fires, the walk stops as well. A focused window then only commits
+     * the password field, because the username may not have been reached yet. A walk cut
+     * short by the node or depth budget commits what it has found, because the same
+     * hierarchy is always cut at the same place.
+     *
+     * @return the layout of the window if it contains a focused element, null otherwise
+     */
+    private FormLayoutCache.Layout scanWindow(N rootNode) {
+        boolean focused = false;
+        String windowScheme = null;
+        String windowDomain = null;
+        N windowUsernameNode = null;
+        N windowPasswordNode = null;
+        int[] usernamePath = null;
+        int[] passwordPath = null;
+        int[] domainPath = null;
+
+        stack.clear();
+        stack.pushChildren(source, rootNode, null, 0);
+
+        int visited = 0;
+        while (!stack.isEmpty()) {
+            if (interrupt != null && ++visited % INTERRUPT_CHECK_INTERVAL == 0 && interrupt.shouldStop()) {
+                interrupted = true;
+                break;
+            }
+
+            if (visitedNodes >= nodeBudget) {
+                truncated = true;
+                trace(AutofillTrace.EVENT_BUDGET, stack.depth, AutofillTrace.KIND_NONE, visitedNodes, null);
+                break;
+            }
+            ++visitedNodes;
+
+            stack.pop();
+            N node = stack.node;
+            CharSequence textHint = stack.textHint;
+            int t = stack.depth;
+
+            // Ancestors are visited first, so path[0..t) is already the path to the parent
+            if (t >= path.length) path = Arrays.copyOf(path, path.length * 2);
+            path[t] = stack.childIndex;
+
+            focused |= source.isFocused(node);
+
+            // Extract webdomain (if available)
+            String webDomain = source.getWebDomain(node);
+            if (webDomain != null && !webDomain.isEmpty()) {
+                windowDomain = webDomain;
+                windowScheme = source.getWebScheme(node);
+                domainPath = Arrays.copyOf(path, t + 1);
+            }
+
+            if (AutofillTrace.on(AutofillTrace.LEVEL_VERBOSE)) {
+                AutofillTrace.verbose(source.describe(node, t));
+            }
+
+            // Check what type of field that is. On equal confidence the username wins.
+            int importance = source.getImportantForAutofill(node);
+            if (importance == IMPORTANT_FOR_AUTOFILL_NO) {
+                scores.reset();
+            } else {
+                FieldClassifier.classify(rules, source, node, textHint, scores);
+            }
+
+            if (scores.username > FieldClassifier.CONFIDENCE_NONE && scores.username >= scores.password) {
+                if (windowUsernameNode == null) {
+                    windowUsernameNode = node;
+                    usernamePath = Arrays.copyOf(path, t + 1);
+                    trace(AutofillTrace.EVENT_SELECT, t, AutofillTrace.KIND_USERNAME, scores.username, node);
+                } else {
+                    // Found multiple username fields, using first occurrence
+                    trace(AutofillTrace.EVENT_DUPLICATE, t, AutofillTrace.KIND_USERNAME, scores.username, node);
+                }
+
+            } else if (scores.password > FieldClassifier.CONFIDENCE_NONE) {
+                if (windowPasswordNode == null) {
+                    windowPasswordNode = node;
+                    passwordPath = Arrays.copyOf(path, t + 1);
+                    trace(AutofillTrace.EVENT_SELECT, t, AutofillTrace.KIND_PASSWORD, scores.password, node);
+                } else {
+                    // Found multiple password fields, using first occurrence
+                    trace(AutofillTrace.EVENT_DUPLICATE, t, AutofillTrace.KIND_PASSWORD, scores.password, node);
+                }
+            }
+
+            if (focused && windowUsernameNode != null && windowPasswordNode != null) {
+                break;
+            }
+
+            if (importance == IMPORTANT_FOR_AUTOFILL_YES_EXCLUDE_DESCENDANTS) continue;
+
+            if (t + 1 >= depthBudget) {
+                if (source.getChildCount(node) > 0) {
+                    if (!truncated) trace(AutofillTrace.EVENT_BUDGET, t, AutofillTrace.KIND_NONE, visitedNodes, node);
+                    truncated = true;
+                }
+                continue;
+            }
+
+            stack.pushChildren(source, node, textHint, t + 1);
+        }
+
+        stack.clear();
+
+        if (!focused) return null;
+
+        if (windowDomain != null) {
+            this.domain = windowDomain;
+            this.scheme = windowScheme;
+        }
+
+        if (interrupted) {
+            this.passwordNode = windowPasswordNode;
+            return null;
+        }
+
+        this.usernameNode = windowUsernameNode;
+        this.passwordNode = windowPasswordNode;
+        return new FormLayoutCache.Layout(usernamePath, passwordPath, domainPath, windowDomain, windowScheme);
+    }
+
+    private void trace(int event, int depth, int kind, int value, N node) {
+        if (AutofillTrace.on(AutofillTrace.LEVEL_EVENTS)) {
+            AutofillTrace.record(event, depth, kind, value, node != null ? source.getId(node) : 0);
+        }
+    }
+
+    private static final int LAYOUT_APPLIED = 0;
+    private static final int LAYOUT_NOT_FOCUSED = 1;
+    private static final int LAYOUT_INVALID = 2;
+
+    /**
+     * Reuses a cached layout for a window. Only the candidate nodes are checked: they must
+     * still be fillable inputs, the web domain must still match, and one of the fields must
+     * hold the focus. Otherwise the window has to be scanned.
+     */
+    private int applyLayout(N rootNode, FormLayoutCache.Layout layout) {
+        N candidateUsername = FormLayoutCache.Layout.resolve(source, rootNode, layout.usernamePath);
+        N candidatePassword = FormLayoutCache.Layout.resolve(source, rootNode, layout.passwordPath);
+
+        if (layout.usernamePath != null
+                && (candidateUsername == null || !FieldClassifier.isFillableInput(source, candidateUsername))) {
+            return LAYOUT_INVALID;
+        }
+
+        if (candidatePassword == null || !FieldClassifier.isFillableInput(source, candidatePassword)) {
+            return LAYOUT_INVALID;
+        }
+
+        // A scan would skip fields that were hidden since
+        if (isPruned(source, candidatePassword)
+                || (candidateUsername != null && isPruned(source, candidateUsername))) {
+            return LAYOUT_INVALID;
+        }
+
+        if (layout.domain != null) {
+            N domainNode = FormLayoutCache.Layout.resolve(source, rootNode, layout.domainPath);
+            if (domainNode == null || !layout.domain.equals(source.getWebDomain(domainNode))) {
+                return LAYOUT_INVALID;
+            }
+        }
+
+        if (!source.isFocused(candidatePassword)
+                && (candidateUsername == null || !source.isFocused(candidateUsername))) {
+            return LAYOUT_NOT_FOCUSED;
+        }
+
+        if (layout.domain != null) {
+            this.domain = layout.domain;
+            this.scheme = layout.scheme;
+        }
+
+        this.usernameNode = candidateUsername;
+        this.passwordNode = candidatePassword;
+        return LAYOUT_APPLIED;
+    }
+
+    /**
+     * Scans the windows of all structures in order and keeps the fields of the first
+     * window that has a focused element. Windows with a cached layout are only scanned
+     * if the layout does not apply anymore.
+     *
+     * @return true if a focused window was found. After an interrupt, true if a password
+     * field was found in a focused window.
+     */
+    boolean scan(List<S> structures) {
+        usernameNode = null;
+        passwordNode = null;
+        scheme = null;
+        domain = null;
+        interrupted = false;
+        truncated = false;
+        visitedNodes = 0;
+        stack.pruned = 0;
+
+        for (int i = 0; i < structures.size(); ++i) {
+            S structure = structures.get(i);
+
+            for (int j = 0; j < source.getWindowCount(structure); ++j) {
+                N rootNode = source.getWindowRoot(structure, j);
+
+                FormLayoutCache.Fingerprint fingerprint = null;
+                if (layoutCache != null) {
+                    fingerprint = FormLayoutCache.Fingerprint.of(source, structure, j);
+                    FormLayoutCache.Layout cached = layoutCache.get(fingerprint);
+
+                    if (cached != null) {
+                        int applied = applyLayout(rootNode, cached);
+
+                        if (applied == LAYOUT_APPLIED) {
+                            trace(AutofillTrace.EVENT_LAYOUT_HIT, -1, AutofillTrace.KIND_NONE, j, null);
+                            return true;
+                        }
+
+                        if (applied == LAYOUT_INVALID) {
+                            trace(AutofillTrace.EVENT_LAYOUT_INVALID, -1, AutofillTrace.KIND_NONE, j, null);
+                            layoutCache.invalidate(fingerprint);
+                        }
+                    }
+                }
+
+                if (visitedNodes >= nodeBudget) {
+                    // Later windows are not scanned at all
+                    truncated = true;
+                    return false;
+                }
+
+                FormLayoutCache.Layout layout = scanWindow(rootNode);
+
+                if (interrupted) {
+                    // Partial results are never cached
+                    return passwordNode != null;
+                }
+
+                if (layout != null) {
+                    trace(AutofillTrace.EVENT_WINDOW_FOCUSED, -1, AutofillTrace.KIND_NONE, j, null);
+
+                    if (layoutCache != null && layout.passwordPath != null) {
+                        layoutCache.put(fingerprint, layout);
+                    }
+
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the last scan was stopped by the interrupt
+     */
+    boolean isInterrupted() {
+        return interrupted;
+    }
+
+    /**
+     * @return true if the node or depth budget cut the last scan short
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the number of nodes visited by the last scan, over all windows
+     */
+    int getVisitedCount() {
+        return visitedNodes;
+    }
+
+    /**
+     * @return the number of subtrees the last scan skipped as invisible, empty or
+     * excluded from autofill
+     */
+    int getPrunedCount() {
+        return stack.pruned;
+    }
+
+    N getUsernameNode() {
+        return usernameNode;
+    }
+
+    N getPasswordNode() {
+        return passwordNode;
+    }
+
+    /**
+     * @return true if the password field of the last scan asks for a new password
+     */
+    boolean isNewPassword() {
+        return passwordNode != null && FieldClassifier.isNewPassword(rules, source, passwordNode);
+    }
+
+    /**
+     * @return the web scheme of the focused window, or null if unknown
+     */
+    String getScheme() {
+        return scheme;
+    }
+
+    /**
+     * @return the web domain of the focused window, or null for native apps
+     */
+    String getDomain() {
+        return domain;
+    }
+}
@@ -0,0 +1,260 @@
+package com.dgmvwallet.autofill;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Records anonymized view hierarchies for the replay corpus of the autofill tests.
+ *
+ * A capture keeps everything {@link FormScanner} reads: the structure, view ids, classes,
+ * hints, autofill hints, input types, web domains and HTML attributes. Texts and HTML
+ * values can hold what the user typed, so they are replaced by category tokens. A text
+ * that matches the username or password keywords of the current rules becomes a token
+ * that matches the same keywords, other texts only keep their shape. Labels therefore
+ * replay as they were classified when captured.
+ *
+ * Capture format, big-endian, varints are unsigned LEB128:
+ * <pre>
+ *   int    magic "DGHC"
+ *   int    version
+ *   int    version of the field rules the tokens were chosen with
+ *   varint string count, then the strings (modified UTF-8)
+ *   int    pre-order index of the selected username node, or -1
+ *   int    pre-order index of the selected password node, or -1
+ *   byte   1 if the password node takes a new password
+ *   string activity component
+ *   varint window count, then per window its title and its root node
+ * </pre>
+ * A string reference is a varint, 0 for null and the table index + 1 otherwise. A node is:
+ * <pre>
+ *   int    view id
+ *   byte   flags, 1 focused, 2 focusable
+ *   byte   visibility
+ *   byte   importantForAutofill
+ *   varint width, height
+ *   string class name, text, hint
+ *   varint autofill hint count + 1 (0 for null), then the hints
+ *   varint input type
+ *   string web domain, web scheme, HTML tag
+ *   varint HTML attribute count, then name and value of each
+ *   varint child count, then the children
+ * </pre>
+ */
+final class HierarchyCapture {
+    static final int MAGIC = 0x44474843; // DGHC
+    static final int VERSION = 1;
+
+    static final String FILE_SUFFIX = ".dghc";
+
+    // Captures stop once the directory holds this many files
+    static final int MAX_CAPTURES = 200;
+
+    static final int FLAG_FOCUSED = 1;
+    static final int FLAG_FOCUSABLE = 2;
+
+    // Category tokens. They match the first keywords of both categories in the rule pack,
+    // and nothing else.
+    static final String TOKEN_USERNAME = "[user]";
+    static final String TOKEN_PASSWORD = "[pass]";
+    static final String TOKEN_USERNAME_PASSWORD = "[user pass]";
+    static final String TOKEN_ADDRESS = "[addr]";
+    static final String TOKEN_DIGITS = "[digits]";
+    static final String TOKEN_TEXT = "[text]";
+
+    // Longer hints and attributes are cut, as nothing matches that far into them
+    private static final int MAX_STRING_LENGTH = 512;
+
+    private HierarchyCapture() {}
+
+    private static final class Writer<S, N> {
+        final NodeSource<S, N> source;
+        final FieldRules rules;
+        final N usernameNode;
+        final N passwordNode;
+
+        final HashMap<String, Integer> stringIndexes = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(body);
+
+        int nodeIndex = 0;
+        int usernameIndex = -1;
+        int passwordIndex = -1;
+
+        Writer(NodeSource<S, N> source, FieldRules rules, N usernameNode, N passwordNode) {
+            this.source = source;
+            this.rules = rules;
+            this.usernameNode = usernameNode;
+            this.passwordNode = passwordNode;
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(out, 0);
+                return;
+            }
+
+            if (value.length() > MAX_STRING_LENGTH) value = value.substring(0, MAX_STRING_LENGTH);
+
+            Integer index = stringIndexes.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.add(value);
+                stringIndexes.put(value, index);
+            }
+            writeVarInt(out, index + 1);
+        }
+
+        void writeNode(N node) throws IOException {
+            // Recursive, view hierarchies are far shallower than the stack
+            if (node == usernameNode) usernameIndex = nodeIndex;
+            if (node == passwordNode) passwordIndex = nodeIndex;
+            ++nodeIndex;
+
+            out.writeInt(source.getId(node));
+            out.writeByte((source.isFocused(node) ? FLAG_FOCUSED : 0) | (source.isFocusable(node) ? FLAG_FOCUSABLE : 0));
+            out.writeByte(source.getVisibility(node));
+            out.writeByte(source.getImportantForAutofill(node));
+            writeVarInt(out, Math.max(source.getWidth(node), 0));
+            writeVarInt(out, Math.max(source.getHeight(node), 0));
+
+            writeString(source.getClassName(node));
+            writeString(tokenize(rules, source.getText(node)));
+            writeString(source.getHint(node));
+
+            String[] autofillHints = source.getAutofillHints(node);
+            writeVarInt(out, autofillHints != null ? autofillHints.length + 1 : 0);
+            if (autofillHints != null) {
+                for (String autofillHint : autofillHints) writeString(autofillHint);
+            }
+
+            writeVarInt(out, source.getInputType(node));
+            writeString(source.getWebDomain(node));
+            writeString(source.getWebScheme(node));
+            writeString(source.getHtmlTag(node));
+
+            int attributeCount = source.getHtmlAttributeCount(node);
+            writeVarInt(out, attributeCount);
+            for (int i = 0; i < attributeCount; ++i) {
+                String name = source.getHtmlAttributeName(node, i);
+                String value = source.getHtmlAttributeValue(node, i);
+
+                writeString(name);
+                // The value attribute holds what the user typed
+                writeString("value".equalsIgnoreCase(name) ? tokenize(rules, value) : value);
+            }
+
+            int childCount = source.getChildCount(node);
+            writeVarInt(out, childCount);
+            for (int i = 0; i < childCount; ++i) {
+                writeNode(source.getChildAt(node, i));
+            }
+        }
+    }
+
+    /**
+     * Captures one structure into a file.
+     *
+     * @param usernameNode the username node the scan selected, or null
+     * @param passwordNode the password node the scan selected, or null
+     * @return the expectation line of the capture for the corpus, see {@link #getExpectation}
+     */
+    static <S, N> String capture(File file, NodeSource<S, N> source, FieldRules rules, S structure,
+                                 N usernameNode, N passwordNode, boolean newPassword) throws IOException {
+        Writer<S, N> writer = new Writer<>(source, rules, usernameNode, passwordNode);
+
+        writer.writeString(source.getActivityComponent(structure));
+        int windowCount = source.getWindowCount(structure);
+        writeVarInt(writer.out, windowCount);
+        for (int i = 0; i < windowCount; ++i) {
+            CharSequence title = source.getWindowTitle(structure, i);
+            writer.writeString(tokenize(rules, title));
+            writer.writeNode(source.getWindowRoot(structure, i));
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rules.version);
+
+            writeVarInt(out, writer.strings.size());
+            for (String string : writer.strings) out.writeUTF(string);
+
+            out.writeInt(writer.usernameIndex);
+            out.writeInt(writer.passwordIndex);
+            out.writeByte(newPassword ? 1 : 0);
+
+            writer.body.writeTo(out);
+        }
+
+        return getExpectation(file.getName(), writer.usernameIndex, writer.passwordIndex, newPassword);
+    }
+
+    /**
+     * @return a line of the expectations file of the corpus:
+     * "name username=&lt;index&gt;|- password=&lt;index&gt;|- [new-password]"
+     */
+    static String getExpectation(String name, int usernameIndex, int passwordIndex, boolean newPassword) {
+        return name
+                + " username=" + (usernameIndex >= 0 ? String.valueOf(usernameIndex) : "-")
+                + " password=" + (passwordIndex >= 0 ? String.valueOf(passwordIndex) : "-")
+                + (newPassword ? " new-password" : "");
+    }
+
+    /**
+     * @return true if another capture fits into the directory
+     */
+    static boolean hasRoom(File directory) {
+        String[] names = directory.list();
+        return names != null && names.length < MAX_CAPTURES;
+    }
+
+    /**
+     * Replaces a text by its category token.
+     */
+    static String tokenize(FieldRules rules, CharSequence text) {
+        if (text == null) return null;
+        if (text.length() == 0) return "";
+
+        int keywords = rules.keywords.match(text);
+        boolean username = (keywords & FieldClassifier.KEYWORD_USERNAME) != 0;
+        boolean password = (keywords & FieldClassifier.KEYWORD_PASSWORD) != 0;
+        if (username && password) return TOKEN_USERNAME_PASSWORD;
+        if (username) return TOKEN_USERNAME;
+        if (password) return TOKEN_PASSWORD;
+
+        boolean digits = true;
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if (c == '@') return TOKEN_ADDRESS;
+            if (!Character.isDigit(c) && " +-().".indexOf(c) < 0) digits = false;
+        }
+
+        return digits ? TOKEN_DIGITS : TOKEN_TEXT;
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+}
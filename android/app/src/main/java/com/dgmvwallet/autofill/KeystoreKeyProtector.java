@@ -0,0 +1,77 @@
+package com.dgmvwallet.autofill;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Wraps the data key of the {@link CredentialIndexImage} with an AES-GCM key held by the
+ * Android Keystore. The Keystore is only used once per image, when it is written or
+ * mapped; records are decrypted with the unwrapped data key.
+ */
+final class KeystoreKeyProtector implements CredentialIndexImage.KeyProtector {
+    static final KeystoreKeyProtector INSTANCE = new KeystoreKeyProtector();
+
+    private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "dgmv_credential_index";
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private KeystoreKeyProtector() {}
+
+    private static SecretKey getKey() throws GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+        try {
+            keyStore.load(null);
+        } catch (IOException e) {
+            throw new GeneralSecurityException(e);
+        }
+
+        KeyStore.Entry entry = keyStore.getEntry(KEY_ALIAS, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+
+    @Override
+    public byte[] wrap(byte[] key) throws GeneralSecurityException {
+        // The Keystore picks a fresh IV for every encryption
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, getKey());
+
+        byte[] iv = cipher.getIV();
+        byte[] encrypted = cipher.doFinal(key);
+
+        byte[] wrapped = Arrays.copyOf(iv, iv.length + encrypted.length);
+        System.arraycopy(encrypted, 0, wrapped, iv.length, encrypted.length);
+        return wrapped;
+    }
+
+    @Override
+    public byte[] unwrap(byte[] wrappedKey) throws GeneralSecurityException {
+        if (wrappedKey.length <= IV_LENGTH) throw new GeneralSecurityException("Invalid wrapped key");
+
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, getKey(), new GCMParameterSpec(TAG_LENGTH, wrappedKey, 0, IV_LENGTH));
+        return cipher.doFinal(wrappedKey, IV_LENGTH, wrappedKey.length - IV_LENGTH);
+    }
+}
@@ -0,0 +1,150 @@
+package com.dgmvwallet.autofill;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Case-insensitive multi-keyword matcher (Aho-Corasick automaton).
+ *
+ * Every keyword belongs to one or more categories, given as bit flags. The automaton is
+ * built once and then scans a label in a single pass without allocating, returning the
+ * categories of all keywords that occur anywhere in the label.
+ */
+final class KeywordMatcher {
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    private final int[] output;
+    private final int allCategories;
+
+    KeywordMatcher(String[] keywords, int[] categories) {
+        if (keywords.length != categories.length) {
+            throw new IllegalArgumentException("Every keyword needs a category");
+        }
+
+        // Build the trie
+        List<TreeMap<Character, Integer>> edges = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        edges.add(new TreeMap<>());
+        outputs.add(0);
+
+        int all = 0;
+        for (int i = 0; i < keywords.length; ++i) {
+            String keyword = keywords[i].toLowerCase(Locale.ROOT);
+            if (keyword.isEmpty()) continue;
+
+            int state = 0;
+            for (int j = 0; j < keyword.length(); ++j) {
+                char c = keyword.charAt(j);
+                Integer target = edges.get(state).get(c);
+
+                if (target == null) {
+                    target = edges.size();
+                    edges.add(new TreeMap<>());
+                    outputs.add(0);
+                    edges.get(state).put(c, target);
+                }
+
+                state = target;
+            }
+
+            outputs.set(state, outputs.get(state) | categories[i]);
+            all |= categories[i];
+        }
+
+        int stateCount = edges.size();
+        edgeChars = new char[stateCount][];
+        edgeTargets = new int[stateCount][];
+        fail = new int[stateCount];
+        output = new int[stateCount];
+        allCategories = all;
+
+        for (int state = 0; state < stateCount; ++state) {
+            TreeMap<Character, Integer> stateEdges = edges.get(state);
+            edgeChars[state] = new char[stateEdges.size()];
+            edgeTargets[state] = new int[stateEdges.size()];
+
+            int k = 0;
+            for (Map.Entry<Character, Integer> edge : stateEdges.entrySet()) {
+                edgeChars[state][k] = edge.getKey();
+                edgeTargets[state][k] = edge.getValue();
+                ++k;
+            }
+
+            output[state] = outputs.get(state);
+        }
+
+        // Compute failure links breadth-first, so that the link of a parent is always
+        // known before the links of its children.
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int target : edgeTargets[0]) {
+            fail[target] = 0;
+            queue.add(target);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+
+            for (int k = 0; k < edgeChars[state].length; ++k) {
+                int child = edgeTargets[state][k];
+                fail[child] = next(fail[state], edgeChars[state][k]);
+                output[child] |= output[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Scans the text once and returns the categories of all keywords found in it,
+     * or 0 if none was found.
+     */
+    int match(CharSequence text) {
+        if (text == null) return 0;
+
+        int state = 0;
+        int found = 0;
+
+        for (int i = 0; i < text.length(); ++i) {
+            state = next(state, Character.toLowerCase(text.charAt(i)));
+            found |= output[state];
+
+            if (found == allCategories) break;
+        }
+
+        return found;
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            int target = transition(state, c);
+            if (target >= 0) return target;
+            if (state == 0) return 0;
+            state = fail[state];
+        }
+    }
+
+    private int transition(int state, char c) {
+        char[] chars = edgeChars[state];
+        int low = 0;
+        int high = chars.length - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char midChar = chars[mid];
+
+            if (midChar < c) {
+                low = mid + 1;
+            } else if (midChar > c) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[state][mid];
+            }
+        }
+
+        return -1;
+    }
+}
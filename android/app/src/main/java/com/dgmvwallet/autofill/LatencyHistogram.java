@@ -0,0 +1,109 @@
+package com.dgmvwallet.autofill;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory histogram of latencies, recorded in microseconds.
+ *
+ * Buckets are log-linear: every power of two is split into {@link #SUB_BUCKETS} equal
+ * parts, so a reported percentile is at most 25% above the true value, from a microsecond
+ * up to hours. Recording is a few atomic increments and never allocates or locks, so it
+ * can be called from any thread on the autofill path.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values of 2^(MAX_EXPONENT + 1) microseconds (about 38 hours) and more share the last bucket
+    private static final int MAX_EXPONENT = 36;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * A consistent-enough copy of the counts, taken while recording continues.
+     */
+    static final class Snapshot {
+        final long count;
+        final long maxMicros;
+        private final long[] counts;
+
+        private Snapshot(long count, long maxMicros, long[] counts) {
+            this.count = count;
+            this.maxMicros = maxMicros;
+            this.counts = counts;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket holding the percentile, in microseconds,
+         * or 0 if nothing was recorded
+         */
+        long getValueAtPercentile(double percentile) {
+            long total = 0;
+            for (long c : counts) total += c;
+            if (total == 0) return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; ++i) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(upperBound(i), maxMicros);
+            }
+
+            return maxMicros;
+        }
+    }
+
+    void record(long micros) {
+        if (micros < 0) micros = 0;
+
+        counts.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+
+        long current;
+        while (micros > (current = max.get())) {
+            if (max.compareAndSet(current, micros)) break;
+        }
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+
+        // The bits below the leading one select the sub-bucket
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value that falls into a bucket
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        if (bucket >= BUCKETS - 1) return Long.MAX_VALUE;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) copy[i] = counts.get(i);
+        return new Snapshot(count.get(), max.get(), copy);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; ++i) counts.set(i, 0);
+        count.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,111 @@
+package com.dgmvwallet.autofill;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes the credential index image the autofill service looks accounts up in.
+ *
+ * The wallet passes all of its accounts at once, whenever they change. The image is
+ * compiled and encrypted here, replaces the previous one atomically and the autofill
+ * process is told to map it again, so lookups never see a partially written file.
+ */
+public class NativeCredentialIndex extends ReactContextBaseJavaModule {
+    private static final ExecutorService executor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "DGMV-CredentialIndex"));
+
+    public NativeCredentialIndex(ReactApplicationContext context) {
+        super(context);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "NativeCredentialIndex";
+    }
+
+    /**
+     * Replaces the image with the given accounts ({ domain?, packageName?, username, password }).
+     * Accounts with neither a domain nor a package name are skipped.
+     *
+     * @return the number of accounts written
+     */
+    @ReactMethod
+    public void write(ReadableArray accounts, Promise promise) {
+        executor.execute(() -> {
+            byte[] image = null;
+            try {
+                DomainMatcher domainMatcher = DomainMatcher.getInstance(getReactApplicationContext());
+                List<CredentialIndexImage.Record> records = new ArrayList<>(accounts.size());
+
+                for (int i = 0; i < accounts.size(); ++i) {
+                    ReadableMap account = accounts.getMap(i);
+                    String domain = getString(account, "domain");
+                    String realm = CredentialIndex.getRealmKey(domainMatcher, domain, getString(account, "packageName"));
+                    if (realm == null) continue;
+
+                    records.add(new CredentialIndexImage.Record(realm, DomainMatcher.normalizeHost(domain),
+                            getString(account, "username"), getString(account, "password")));
+                }
+
+                image = CredentialIndexImage.compile(records, KeystoreKeyProtector.INSTANCE);
+
+                File file = CredentialIndex.getImageFile(getReactApplicationContext());
+                File compiled = new File(file.getPath() + ".tmp");
+                try (FileOutputStream out = new FileOutputStream(compiled)) {
+                    out.write(image);
+                    out.getFD().sync();
+                }
+
+                if (!compiled.renameTo(file)) {
+                    compiled.delete();
+                    throw new IOException("Could not replace credential index image");
+                }
+
+                AutofillStateProvider.reloadCredentialIndex(getReactApplicationContext());
+                promise.resolve(records.size());
+            } catch (Exception e) {
+                promise.reject("E_CREDENTIAL_INDEX", e.getMessage(), e);
+            } finally {
+                // Passwords are encrypted, but the rest of the image should not linger either
+                if (image != null) Arrays.fill(image, (byte) 0);
+            }
+        });
+    }
+
+    /**
+     * Deletes the image, e.g. when the wallet is reset.
+     */
+    @ReactMethod
+    public void clear(Promise promise) {
+        executor.execute(() -> {
+            File file = CredentialIndex.getImageFile(getReactApplicationContext());
+            if (file.exists() && !file.delete()) {
+                promise.reject("E_CREDENTIAL_INDEX", "Could not delete credential index image");
+                return;
+            }
+
+            AutofillStateProvider.reloadCredentialIndex(getReactApplicationContext());
+            promise.resolve(true);
+        });
+    }
+
+    private static String getString(ReadableMap map, String key) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getString(key) : null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.dgmvwallet.autofill;
+
+/**
+ * Read access to a view hierarchy, as needed by {@link FormScanner}.
+ *
+ * The scanner never touches platform classes directly. Structures and nodes are opaque
+ * to it and are only read through this interface, so the same scan runs against a real
+ * {@link android.app.assist.AssistStructure} on the device and against synthetic trees
+ * in a plain JVM. Implementations should return the underlying objects as they are
+ * instead of wrapping every node.
+ *
+ * @param <S> structure type, one per fill context
+ * @param <N> node type
+ */
+interface NodeSource<S, N> {
+    String getActivityComponent(S structure);
+
+    int getWindowCount(S structure);
+
+    N getWindowRoot(S structure, int index);
+
+    CharSequence getWindowTitle(S structure, int index);
+
+    int getChildCount(N node);
+
+    N getChildAt(N node, int index);
+
+    int getId(N node);
+
+    boolean isFocused(N node);
+
+    boolean isFocusable(N node);
+
+    /**
+     * @return one of the visibility constants of android.view.View
+     */
+    int getVisibility(N node);
+
+    /**
+     * @return one of the IMPORTANT_FOR_AUTOFILL_ constants of android.view.View
+     */
+    int getImportantForAutofill(N node);
+
+    int getWidth(N node);
+
+    int getHeight(N node);
+
+    String getClassName(N node);
+
+    CharSequence getText(N node);
+
+    String getHint(N node);
+
+    String[] getAutofillHints(N node);
+
+    int getInputType(N node);
+
+    String getWebDomain(N node);
+
+    String getWebScheme(N node);
+
+    /**
+     * @return the HTML tag of a web node, or null for native views
+     */
+    String getHtmlTag(N node);
+
+    int getHtmlAttributeCount(N node);
+
+    String getHtmlAttributeName(N node, int index);
+
+    String getHtmlAttributeValue(N node, int index);
+
+    /**
+     * Human readable description of a node for verbose tracing. Allowed to allocate.
+     */
+    String describe(N node, int depth);
+}
@@ -0,0 +1,113 @@
+package com.dgmvwallet.autofill;
+
+import java.io.PrintWriter;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates random passwords for sign-up forms inside the autofill service.
+ *
+ * Each thread draws from its own {@link SecureRandom}, seeded once by the platform, so
+ * concurrent fill requests do not contend for one generator. Characters are picked
+ * uniformly from the charsets of a {@link Policy}, and every charset is used at least
+ * once, as many sites require a digit or a symbol.
+ */
+final class PasswordGenerator {
+    static final String LOWERCASE = "abcdefghijklmnopqrstuvwxyz";
+    static final String UPPERCASE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    static final String DIGITS = "0123456789";
+    // Symbols accepted by most sites
+    static final String SYMBOLS = "!#$%&*+-.:=?@_";
+
+    /**
+     * Length and charsets of generated passwords.
+     */
+    static final class Policy {
+        final int length;
+        final String[] charsets;
+
+        // Charsets joined, for the characters after the first of each charset
+        private final String alphabet;
+
+        /**
+         * @param length the length of generated passwords, at least one per charset
+         * @param charsets characters to pick from, at least one of each is used
+         */
+        Policy(int length, String... charsets) {
+            if (charsets.length == 0 || length < charsets.length) {
+                throw new IllegalArgumentException("Password length " + length + " does not fit "
+                        + charsets.length + " charsets");
+            }
+
+            StringBuilder alphabet = new StringBuilder();
+            for (String charset : charsets) {
+                if (charset.isEmpty()) throw new IllegalArgumentException("Empty charset");
+                alphabet.append(charset);
+            }
+
+            this.length = length;
+            this.charsets = charsets.clone();
+            this.alphabet = alphabet.toString();
+        }
+
+        @Override
+        public String toString() {
+            return "Policy{length=" + length + ", charsets=" + charsets.length + '}';
+        }
+    }
+
+    // About 125 bits of entropy
+    static final Policy DEFAULT_POLICY = new Policy(20, LOWERCASE, UPPERCASE, DIGITS, SYMBOLS);
+
+    private static final ThreadLocal<SecureRandom> random = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    private static final AtomicInteger generated = new AtomicInteger();
+
+    private PasswordGenerator() {}
+
+    static String generate() {
+        return generate(DEFAULT_POLICY);
+    }
+
+    static String generate(Policy policy) {
+        SecureRandom random = PasswordGenerator.random.get();
+        char[] password = new char[policy.length];
+
+        int i = 0;
+        for (String charset : policy.charsets) {
+            password[i++] = charset.charAt(random.nextInt(charset.length()));
+        }
+        for (; i < password.length; ++i) {
+            password[i] = policy.alphabet.charAt(random.nextInt(policy.alphabet.length()));
+        }
+
+        // Fisher-Yates, so the required characters are not always in front
+        for (i = password.length - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            char c = password[i];
+            password[i] = password[j];
+            password[j] = c;
+        }
+
+        generated.incrementAndGet();
+
+        try {
+            return new String(password);
+        } finally {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    static void dump(PrintWriter pw) {
+        pw.println("PasswordGenerator{" +
+                "policy=" + DEFAULT_POLICY +
+                ", generated=" + generated.get() +
+                '}');
+    }
+}
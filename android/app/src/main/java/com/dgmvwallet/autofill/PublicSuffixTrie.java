@@ -0,0 +1,314 @@
+package com.dgmvwallet.autofill;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.IDN;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The rules of the public suffix list (https://publicsuffix.org/list/) as a compact trie.
+ *
+ * The trie is compiled once from the text list into a flat binary image that can be
+ * memory-mapped, so later processes only map the file. Lookups walk the labels of a host
+ * from the right and binary search the sorted children of each node, without allocating.
+ *
+ * Image layout (big-endian):
+ * <pre>
+ *   header  int magic, int version, long stamp, int nodeCount, int labelBytes
+ *   nodes   nodeCount * (int labelOffset, int firstChild, short childCount, byte labelLength, byte flags)
+ *   labels  labelBytes ASCII bytes
+ * </pre>
+ * Node 0 is the root. The children of a node are stored next to each other, sorted by
+ * their label bytes. Wildcard rules are stored as a child with the label "*".
+ */
+final class PublicSuffixTrie {
+    private static final int MAGIC = 0x44505354; // DPST
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+    private static final int NODE_SIZE = 12;
+
+    private static final int FLAG_RULE = 1;
+    private static final int FLAG_EXCEPTION = 2;
+
+    private static final byte WILDCARD = '*';
+
+    private final ByteBuffer image;
+    private final long stamp;
+    private final int nodeCount;
+    private final int labelsOffset;
+
+    private PublicSuffixTrie(ByteBuffer image, long stamp, int nodeCount) {
+        this.image = image;
+        this.stamp = stamp;
+        this.nodeCount = nodeCount;
+        this.labelsOffset = HEADER_SIZE + nodeCount * NODE_SIZE;
+    }
+
+    /**
+     * Wraps a compiled image, for example a memory-mapped file.
+     *
+     * @return the trie, or null if the image is not a valid image of this version
+     */
+    static PublicSuffixTrie wrap(ByteBuffer image) {
+        if (image.capacity() < HEADER_SIZE) return null;
+        if (image.getInt(0) != MAGIC || image.getInt(4) != VERSION) return null;
+
+        long stamp = image.getLong(8);
+        int nodeCount = image.getInt(16);
+        int labelBytes = image.getInt(20);
+
+        if (nodeCount < 1 || labelBytes < 0
+                || (long) HEADER_SIZE + (long) nodeCount * NODE_SIZE + labelBytes != image.capacity()) {
+            return null;
+        }
+
+        return new PublicSuffixTrie(image, stamp, nodeCount);
+    }
+
+    /**
+     * @return the stamp the image was compiled with, used to detect an outdated image
+     */
+    long getStamp() {
+        return stamp;
+    }
+
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    private static final class BuildNode {
+        final TreeMap<String, BuildNode> children = new TreeMap<>(PublicSuffixTrie::compareAscii);
+        int flags = 0;
+    }
+
+    private static int compareAscii(String a, String b) {
+        // Labels are ASCII after IDN conversion, so char order is byte order
+        return a.compareTo(b);
+    }
+
+    /**
+     * Compiles the text form of the public suffix list into a trie image.
+     */
+    static byte[] compile(InputStream list, long stamp) throws IOException {
+        BuildNode root = new BuildNode();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(list, StandardCharsets.UTF_8));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//")) continue;
+
+            // A rule ends at the first whitespace
+            int end = 0;
+            while (end < line.length() && !Character.isWhitespace(line.charAt(end))) ++end;
+            String rule = line.substring(0, end);
+
+            int flags = FLAG_RULE;
+            if (rule.startsWith("!")) {
+                flags = FLAG_EXCEPTION;
+                rule = rule.substring(1);
+            }
+
+            String[] labels = rule.split("\\.");
+            BuildNode node = root;
+            for (int i = labels.length - 1; i >= 0; --i) {
+                String label = toAscii(labels[i]);
+                if (label.isEmpty() || label.length() > 255) break;
+
+                BuildNode child = node.children.get(label);
+                if (child == null) {
+                    child = new BuildNode();
+                    node.children.put(label, child);
+                }
+                node = child;
+            }
+
+            node.flags |= flags;
+        }
+
+        // Lay the nodes out breadth-first, so the children of a node are contiguous
+        List<BuildNode> order = new ArrayList<>();
+        List<String> orderLabels = new ArrayList<>();
+        order.add(root);
+        orderLabels.add("");
+
+        for (int i = 0; i < order.size(); ++i) {
+            for (Map.Entry<String, BuildNode> entry : order.get(i).children.entrySet()) {
+                order.add(entry.getValue());
+                orderLabels.add(entry.getKey());
+            }
+        }
+
+        int labelBytes = 0;
+        for (String label : orderLabels) labelBytes += label.length();
+
+        ByteBuffer image = ByteBuffer.allocate(HEADER_SIZE + order.size() * NODE_SIZE + labelBytes);
+        image.putInt(MAGIC).putInt(VERSION).putLong(stamp).putInt(order.size()).putInt(labelBytes);
+
+        int labelOffset = 0;
+        int nextChild = 1;
+        for (int i = 0; i < order.size(); ++i) {
+            BuildNode node = order.get(i);
+            String label = orderLabels.get(i);
+
+            image.putInt(labelOffset);
+            image.putInt(nextChild);
+            image.putShort((short) node.children.size());
+            image.put((byte) label.length());
+            image.put((byte) node.flags);
+
+            labelOffset += label.length();
+            nextChild += node.children.size();
+        }
+
+        for (String label : orderLabels) {
+            image.put(label.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        return image.array();
+    }
+
+    private static String toAscii(String label) {
+        for (int i = 0; i < label.length(); ++i) {
+            if (label.charAt(i) >= 0x80) {
+                return IDN.toASCII(label, IDN.ALLOW_UNASSIGNED).toLowerCase(Locale.ROOT);
+            }
+        }
+
+        return label.toLowerCase(Locale.ROOT);
+    }
+
+    private int labelOffset(int node) {
+        return image.getInt(HEADER_SIZE + node * NODE_SIZE);
+    }
+
+    private int firstChild(int node) {
+        return image.getInt(HEADER_SIZE + node * NODE_SIZE + 4);
+    }
+
+    private int childCount(int node) {
+        return image.getShort(HEADER_SIZE + node * NODE_SIZE + 8) & 0xffff;
+    }
+
+    private int labelLength(int node) {
+        return image.get(HEADER_SIZE + node * NODE_SIZE + 10) & 0xff;
+    }
+
+    private int flags(int node) {
+        return image.get(HEADER_SIZE + node * NODE_SIZE + 11);
+    }
+
+    /**
+     * Compares the label of a node with host[start, end).
+     */
+    private int compareLabel(int node, String host, int start, int end) {
+        int offset = labelsOffset + labelOffset(node);
+        int length = labelLength(node);
+        int hostLength = end - start;
+
+        for (int i = 0; i < length && i < hostLength; ++i) {
+            int a = image.get(offset + i) & 0xff;
+            int b = host.charAt(start + i);
+            if (a != b) return a - b;
+        }
+
+        return length - hostLength;
+    }
+
+    private int findChild(int node, String host, int start, int end) {
+        int low = firstChild(node);
+        int high = low + childCount(node) - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareLabel(mid, host, start, end);
+
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean hasWildcardChild(int node) {
+        // '*' sorts before all characters allowed in a label, so it can only be the first child
+        if (childCount(node) == 0) return false;
+
+        int child = firstChild(node);
+        return labelLength(child) == 1
+                && image.get(labelsOffset + labelOffset(child)) == WILDCARD
+                && (flags(child) & FLAG_RULE) != 0;
+    }
+
+    /**
+     * Returns the number of labels of the public suffix of a host, following the
+     * algorithm of the list: the longest matching rule wins, exception rules win over
+     * wildcards, and a host without any matching rule has its last label as public suffix.
+     *
+     * @param host lower-case ASCII host name without a trailing dot
+     */
+    int getPublicSuffixLabelCount(String host) {
+        int suffixLabels = 1;
+        int node = 0;
+        int end = host.length();
+        int labels = 0;
+
+        while (end > 0) {
+            int start = host.lastIndexOf('.', end - 1) + 1;
+
+            if (hasWildcardChild(node)) suffixLabels = labels + 1;
+
+            int child = findChild(node, host, start, end);
+            if (child < 0) break;
+
+            int childFlags = flags(child);
+            if ((childFlags & FLAG_EXCEPTION) != 0) {
+                // The exception label itself is not part of the public suffix
+                suffixLabels = labels;
+                break;
+            }
+
+            if ((childFlags & FLAG_RULE) != 0) suffixLabels = labels + 1;
+
+            node = child;
+            ++labels;
+            end = start - 1;
+        }
+
+        return suffixLabels;
+    }
+
+    /**
+     * Returns the public suffix plus one label, e.g. "example.co.uk" for
+     * "login.example.co.uk".
+     *
+     * @param host lower-case ASCII host name without a trailing dot
+     * @return the registrable domain, or null if the host is a public suffix itself
+     */
+    String getRegistrableDomain(String host) {
+        int keep = getPublicSuffixLabelCount(host) + 1;
+
+        int start = host.length();
+        for (int i = 0; i < keep; ++i) {
+            if (start <= 0) return null;
+            start = host.lastIndexOf('.', start - 1);
+        }
+
+        // start is the dot before the registrable domain, or -1 if the host is one
+        return host.substring(start + 1);
+    }
+}
@@ -0,0 +1,79 @@
+package com.dgmvwallet.autofill;
+
+import android.app.Application;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.dgmvwallet.BuildConfig;
+
+/**
+ * Lets the autofill process warm up the React host of the app process.
+ *
+ * The autofill service only hands off to the app process when a response needs the
+ * authenticator. Calling {@link #warmUp(Context)} then starts the app process, if needed,
+ * and loads the JS bundle through {@link WarmReactHost} before the user taps the
+ * authentication entry.
+ */
+public class ReactWarmUpProvider extends ContentProvider {
+    static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".autofill.react";
+
+    private static final Uri URI = Uri.parse("content://" + AUTHORITY);
+
+    private static final String METHOD_WARM_UP = "warmUp";
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    /**
+     * Blocks while the app process starts, so it is not called on a fill thread.
+     */
+    static void warmUp(Context context) {
+        try {
+            context.getContentResolver().call(URI, METHOD_WARM_UP, null, null);
+        } catch (RuntimeException e) {
+            Log.e("DGMV-Autofill", "Could not warm up the React host", e);
+        }
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (!METHOD_WARM_UP.equals(method)) throw new IllegalArgumentException("Unknown method " + method);
+
+        WarmReactHost.getInstance((Application) getContext().getApplicationContext()).warmUp();
+        return null;
+    }
+
+    // Only call() is used
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,288 @@
+package com.dgmvwallet.autofill;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Keeps the credentials the user just picked for the next steps of the same login.
+ *
+ * Sites that ask for the username and the password on separate pages send one fill request
+ * per page. The second request is answered from here, without starting the authenticator
+ * again. Entries are bound to the requesting app and the site, live for
+ * {@link #SESSION_TTL_MS} and are encrypted with a key that only exists in memory. Expiry,
+ * screen-off and {@link #clear()} wipe the entries and the key.
+ */
+class SessionCredentialCache {
+    static final long SESSION_TTL_MS = 60 * 1000;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int KEY_LENGTH = 32;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH = 128;
+
+    private static SessionCredentialCache instance = null;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable expireRunnable = this::expire;
+
+    // Guarded by this
+    private final HashMap<String, Session> sessions = new HashMap<>();
+    private byte[] key = null;
+
+    private int hits = 0;
+    private int misses = 0;
+    private int expired = 0;
+
+    private static final class Session {
+        final long expiresAt;
+        // IV followed by the encrypted credentials
+        final byte[] sealed;
+
+        Session(long expiresAt, byte[] sealed) {
+            this.expiresAt = expiresAt;
+            this.sealed = sealed;
+        }
+    }
+
+    static synchronized SessionCredentialCache getInstance() {
+        if (instance == null) {
+            instance = new SessionCredentialCache();
+        }
+        return instance;
+    }
+
+    /**
+     * The steps of one login share the requesting app and the registrable domain, e.g.
+     * "accounts.example.com" and "login.example.com" belong to the same session.
+     *
+     * @return the key of the session of a request, or null if the request cannot be scoped
+     */
+    static String getKey(DGMVAutofillParser parser, DomainMatcher domainMatcher) {
+        String packageName = parser.getPackageName();
+        if (packageName == null || packageName.isEmpty()) return null;
+
+        String webDomain = parser.getWebDomain();
+        String site = domainMatcher != null && webDomain != null
+                ? domainMatcher.getRegistrableDomain(webDomain)
+                : null;
+        if (site == null) site = DomainMatcher.normalizeHost(webDomain);
+
+        return packageName + '\n' + (site != null ? site : "");
+    }
+
+    /**
+     * Replaces the credentials of a session and starts its lifetime. Credentials without
+     * a password are left out: sessions answer without the authenticator, so every
+     * credential has to carry its values.
+     */
+    void put(String sessionKey, List<DGMVAutofillServiceBridge.Credential> credentials) {
+        if (sessionKey == null) return;
+
+        List<DGMVAutofillServiceBridge.Credential> unlocked = new ArrayList<>(credentials.size());
+        for (DGMVAutofillServiceBridge.Credential credential : credentials) {
+            if (credential.password != null) unlocked.add(credential);
+        }
+        if (unlocked.isEmpty()) return;
+        credentials = unlocked;
+
+        synchronized (this) {
+            try {
+                if (key == null) {
+                    key = new byte[KEY_LENGTH];
+                    random.nextBytes(key);
+                }
+
+                long expiresAt = SystemClock.elapsedRealtime() + SESSION_TTL_MS;
+                wipe(sessions.put(sessionKey, new Session(expiresAt, seal(credentials))));
+            } catch (GeneralSecurityException e) {
+                Log.e("DGMV-Autofill", "Could not cache session credentials", e);
+                return;
+            }
+        }
+
+        handler.removeCallbacks(expireRunnable);
+        handler.postDelayed(expireRunnable, SESSION_TTL_MS);
+    }
+
+    /**
+     * @return the credentials of a live session, or an empty list
+     */
+    synchronized List<CredentialIndex.Credential> find(String sessionKey) {
+        Session session = sessionKey != null ? sessions.get(sessionKey) : null;
+
+        if (session == null || SystemClock.elapsedRealtime() >= session.expiresAt) {
+            ++misses;
+            return Collections.emptyList();
+        }
+
+        try {
+            List<CredentialIndex.Credential> credentials = open(session.sealed);
+            ++hits;
+            return credentials;
+        } catch (GeneralSecurityException e) {
+            Log.e("DGMV-Autofill", "Could not read session credentials", e);
+            ++misses;
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Wipes all sessions and the key.
+     */
+    synchronized void clear() {
+        for (Session session : sessions.values()) {
+            wipe(session);
+        }
+        sessions.clear();
+
+        if (key != null) {
+            Arrays.fill(key, (byte) 0);
+            key = null;
+        }
+    }
+
+    private void expire() {
+        long delay;
+
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            long next = Long.MAX_VALUE;
+
+            List<String> expiredKeys = new ArrayList<>();
+            for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+                if (now >= entry.getValue().expiresAt) {
+                    expiredKeys.add(entry.getKey());
+                } else {
+                    next = Math.min(next, entry.getValue().expiresAt);
+                }
+            }
+
+            for (String expiredKey : expiredKeys) {
+                wipe(sessions.remove(expiredKey));
+                ++expired;
+            }
+
+            if (sessions.isEmpty()) {
+                clear();
+                return;
+            }
+
+            delay = next - now;
+        }
+
+        handler.postDelayed(expireRunnable, delay);
+    }
+
+    private static void wipe(Session session) {
+        if (session != null) Arrays.fill(session.sealed, (byte) 0);
+    }
+
+    /**
+     * Encrypts the credentials as a sequence of length-prefixed UTF-8 usernames and
+     * passwords. The plain text only exists in a buffer that is zeroed afterwards.
+     */
+    private byte[] seal(List<DGMVAutofillServiceBridge.Credential> credentials) throws GeneralSecurityException {
+        int capacity = 0;
+        for (DGMVAutofillServiceBridge.Credential credential : credentials) {
+            capacity += 8 + utf8Length(credential.username) + utf8Length(credential.password);
+        }
+
+        ByteBuffer plain = ByteBuffer.allocate(capacity);
+        for (DGMVAutofillServiceBridge.Credential credential : credentials) {
+            putString(plain, credential.username);
+            putString(plain, credential.password);
+        }
+
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+
+        try {
+            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_LENGTH, iv));
+
+            byte[] sealed = Arrays.copyOf(iv, IV_LENGTH + cipher.getOutputSize(plain.position()));
+            cipher.doFinal(plain.array(), 0, plain.position(), sealed, IV_LENGTH);
+            return sealed;
+        } finally {
+            Arrays.fill(plain.array(), (byte) 0);
+        }
+    }
+
+    private List<CredentialIndex.Credential> open(byte[] sealed) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_LENGTH, sealed, 0, IV_LENGTH));
+        byte[] plain = cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(plain);
+            List<CredentialIndex.Credential> credentials = new ArrayList<>();
+
+            while (buffer.hasRemaining()) {
+                String username = getString(buffer);
+                String password = getString(buffer);
+                credentials.add(new CredentialIndex.Credential(username != null ? username : "", password));
+            }
+
+            return credentials;
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+    }
+
+    private static int utf8Length(String value) {
+        if (value == null) return 0;
+
+        // Upper bound, the buffer is only filled up to its position
+        return value.length() * 3;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+
+        int start = buffer.position();
+        buffer.putInt(0);
+        StandardCharsets.UTF_8.newEncoder().encode(CharBuffer.wrap(value), buffer, true);
+        buffer.putInt(start, buffer.position() - start - 4);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SessionCredentialCache{" +
+                "sessions=" + sessions.size() +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", expired=" + expired +
+                '}';
+    }
+}
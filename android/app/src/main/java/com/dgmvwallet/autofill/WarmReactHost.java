@@ -0,0 +1,120 @@
+package com.dgmvwallet.autofill;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.facebook.react.ReactApplication;
+import com.facebook.react.ReactInstanceManager;
+import com.facebook.react.ReactNativeHost;
+
+/**
+ * Keeps the React Native instance of the app process loaded while the authenticator is
+ * likely to be started.
+ *
+ * Starting the authenticator from a fill response otherwise cold-starts the React host
+ * and evaluates the JS bundle before the credential picker can render. The autofill
+ * service warms the host up through {@link ReactWarmUpProvider} whenever it answers with an
+ * authentication, so the activity attaches to an already loaded bundle.
+ * It is released again after {@link #IDLE_TIMEOUT_MS} without an attached activity, or
+ * when the system is low on memory.
+ *
+ * All work happens on the main thread, which the React instance manager requires.
+ */
+public class WarmReactHost {
+    static final long IDLE_TIMEOUT_MS = 3 * 60 * 1000;
+
+    private static WarmReactHost instance = null;
+
+    private final Application application;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable releaseRunnable = this::releaseIfIdle;
+
+    private int attachedActivities = 0;
+    private boolean warmedUp = false;
+
+    private WarmReactHost(Application application) {
+        this.application = application;
+    }
+
+    public static synchronized WarmReactHost getInstance(Application application) {
+        if (instance == null) {
+            instance = new WarmReactHost(application);
+        }
+        return instance;
+    }
+
+    private ReactNativeHost getReactNativeHost() {
+        if (!(application instanceof ReactApplication)) return null;
+        return ((ReactApplication) application).getReactNativeHost();
+    }
+
+    /**
+     * Starts loading the JS bundle in the background, unless it is already loaded.
+     */
+    public void warmUp() {
+        handler.post(() -> {
+            ReactNativeHost host = getReactNativeHost();
+            if (host == null) return;
+
+            ReactInstanceManager manager = host.getReactInstanceManager();
+            if (!manager.hasStartedCreatingInitialContext()) {
+                Log.d("DGMV-Autofill", "Warming up React host");
+                manager.createReactContextInBackground();
+            }
+
+            warmedUp = true;
+            scheduleRelease();
+        });
+    }
+
+    /**
+     * Called by activities that render on the shared host. The host is never released
+     * while an activity is attached.
+     */
+    public void attachActivity() {
+        handler.post(() -> {
+            ++attachedActivities;
+            handler.removeCallbacks(releaseRunnable);
+        });
+    }
+
+    public void detachActivity() {
+        handler.post(() -> {
+            if (attachedActivities > 0) --attachedActivities;
+            scheduleRelease();
+        });
+    }
+
+    /**
+     * Releases the host if the system asks the process to free memory.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            handler.post(this::releaseIfIdle);
+        }
+    }
+
+    private void scheduleRelease() {
+        handler.removeCallbacks(releaseRunnable);
+
+        if (warmedUp && attachedActivities == 0) {
+            handler.postDelayed(releaseRunnable, IDLE_TIMEOUT_MS);
+        }
+    }
+
+    private void releaseIfIdle() {
+        handler.removeCallbacks(releaseRunnable);
+        if (!warmedUp || attachedActivities > 0) return;
+
+        ReactNativeHost host = getReactNativeHost();
+        if (host != null && host.hasInstance()) {
+            Log.d("DGMV-Autofill", "Releasing idle React host");
+            host.clear();
+        }
+
+        warmedUp = false;
+    }
+}
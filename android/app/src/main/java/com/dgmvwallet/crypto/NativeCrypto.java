@@ -0,0 +1,107 @@
+package com.dgmvwallet.crypto;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the key derivation and encryption of the wallet storage natively.
+ *
+ * Binary values cross the bridge as hex strings. All work happens on a background
+ * thread, so neither the JS thread nor the native modules thread is blocked.
+ */
+public class NativeCrypto extends ReactContextBaseJavaModule {
+    private static final ExecutorService executor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "DGMV-Crypto"));
+
+    private interface Task {
+        Object run() throws Exception;
+    }
+
+    public NativeCrypto(ReactApplicationContext context) {
+        super(context);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "NativeCrypto";
+    }
+
+    private static void submit(Promise promise, Task task) {
+        executor.execute(() -> {
+            try {
+                promise.resolve(task.run());
+            } catch (Exception e) {
+                promise.reject("E_CRYPTO", e.getMessage(), e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void pbkdf2(String password, String saltHex, int iterations, int keylen, String digest, Promise promise) {
+        submit(promise, () -> {
+            byte[] key = WalletCrypto.pbkdf2(password, WalletCrypto.fromHex(saltHex), iterations, keylen, digest);
+            try {
+                return WalletCrypto.toHex(key);
+            } finally {
+                Arrays.fill(key, (byte) 0);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void mnemonicToSeed(String mnemonic, String passphrase, Promise promise) {
+        submit(promise, () -> {
+            byte[] seed = WalletCrypto.mnemonicToSeed(mnemonic, passphrase);
+            try {
+                return WalletCrypto.toHex(seed);
+            } finally {
+                Arrays.fill(seed, (byte) 0);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void encrypt(String data, String keyHex, Promise promise) {
+        submit(promise, () -> WalletCrypto.encrypt(data, WalletCrypto.fromHex(keyHex)));
+    }
+
+    @ReactMethod
+    public void decrypt(String data, String keyHex, Promise promise) {
+        submit(promise, () -> WalletCrypto.decrypt(data, WalletCrypto.fromHex(keyHex)));
+    }
+
+    @ReactMethod
+    public void encryptWithPassphrase(String data, String passphrase, String saltHex, int iterations, int keylen,
+                                      String digest, Promise promise) {
+        submit(promise, () -> {
+            byte[] key = WalletCrypto.pbkdf2(passphrase, WalletCrypto.fromHex(saltHex), iterations, keylen, digest);
+            try {
+                return WalletCrypto.encrypt(data, key);
+            } finally {
+                Arrays.fill(key, (byte) 0);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void decryptWithPassphrase(String data, String passphrase, String saltHex, int iterations, int keylen,
+                                      String digest, Promise promise) {
+        submit(promise, () -> {
+            byte[] key = WalletCrypto.pbkdf2(passphrase, WalletCrypto.fromHex(saltHex), iterations, keylen, digest);
+            try {
+                return WalletCrypto.decrypt(data, key);
+            } finally {
+                Arrays.fill(key, (byte) 0);
+            }
+        });
+    }
+}
@@ -0,0 +1,213 @@
+package com.dgmvwallet.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Key derivation and encryption primitives of the wallet storage.
+ *
+ * Every function produces the same bytes as its counterpart in src/crypto (pbkdf2.ts,
+ * aes256.ts and the bip39 seed derivation of SeedGenerator.ts), so values written by
+ * either implementation can be read by the other. Only JDK classes are used, which keeps
+ * this class runnable on a plain JVM for benchmarks.
+ */
+public final class WalletCrypto {
+    public static final int IV_LENGTH = 16;
+    public static final int SEED_ITERATIONS = 2048;
+    public static final int SEED_LENGTH = 64;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private WalletCrypto() {}
+
+    /**
+     * Raw HMAC key. Unlike SecretKeySpec it also accepts an empty password, which is a
+     * valid HMAC key.
+     */
+    private static final class HmacKey implements SecretKey {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] key;
+        private final String algorithm;
+
+        HmacKey(byte[] key, String algorithm) {
+            this.key = key;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        @Override
+        public String getFormat() {
+            return "RAW";
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return key.clone();
+        }
+    }
+
+    private static String macAlgorithm(String digest) {
+        switch (digest.toLowerCase(Locale.ROOT)) {
+            case "sha1":
+                return "HmacSHA1";
+            case "sha256":
+                return "HmacSHA256";
+            case "sha512":
+                return "HmacSHA512";
+            default:
+                throw new IllegalArgumentException("Unsupported digest: " + digest);
+        }
+    }
+
+    /**
+     * PBKDF2 as specified in RFC 8018, with HMAC over the given digest.
+     */
+    public static byte[] pbkdf2(byte[] password, byte[] salt, int iterations, int keylen, String digest)
+            throws GeneralSecurityException {
+        if (iterations < 1) throw new IllegalArgumentException("Invalid iterations: " + iterations);
+        if (keylen < 0) throw new IllegalArgumentException("Invalid key length: " + keylen);
+
+        Mac mac = Mac.getInstance(macAlgorithm(digest));
+        mac.init(new HmacKey(password, mac.getAlgorithm()));
+
+        int hashLength = mac.getMacLength();
+        byte[] derived = new byte[keylen];
+        byte[] block = new byte[hashLength];
+        byte[] u = new byte[hashLength];
+        byte[] counter = new byte[4];
+
+        for (int blockIndex = 1, offset = 0; offset < keylen; ++blockIndex, offset += hashLength) {
+            counter[0] = (byte) (blockIndex >>> 24);
+            counter[1] = (byte) (blockIndex >>> 16);
+            counter[2] = (byte) (blockIndex >>> 8);
+            counter[3] = (byte) blockIndex;
+
+            mac.update(salt);
+            mac.update(counter);
+            mac.doFinal(u, 0);
+            System.arraycopy(u, 0, block, 0, hashLength);
+
+            for (int i = 1; i < iterations; ++i) {
+                mac.update(u);
+                mac.doFinal(u, 0);
+
+                for (int j = 0; j < hashLength; ++j) {
+                    block[j] ^= u[j];
+                }
+            }
+
+            System.arraycopy(block, 0, derived, offset, Math.min(hashLength, keylen - offset));
+        }
+
+        Arrays.fill(block, (byte) 0);
+        Arrays.fill(u, (byte) 0);
+        return derived;
+    }
+
+    public static byte[] pbkdf2(String password, byte[] salt, int iterations, int keylen, String digest)
+            throws GeneralSecurityException {
+        return pbkdf2(password.getBytes(StandardCharsets.UTF_8), salt, iterations, keylen, digest);
+    }
+
+    /**
+     * Seed of a BIP39 mnemonic: PBKDF2-HMAC-SHA512 over the NFKD normalized mnemonic,
+     * salted with "mnemonic" and the passphrase.
+     */
+    public static byte[] mnemonicToSeed(String mnemonic, String passphrase) throws GeneralSecurityException {
+        byte[] password = Normalizer.normalize(mnemonic, Normalizer.Form.NFKD).getBytes(StandardCharsets.UTF_8);
+        byte[] salt = ("mnemonic" + Normalizer.normalize(passphrase != null ? passphrase : "", Normalizer.Form.NFKD))
+                .getBytes(StandardCharsets.UTF_8);
+
+        try {
+            return pbkdf2(password, salt, SEED_ITERATIONS, SEED_LENGTH, "sha512");
+        } finally {
+            Arrays.fill(password, (byte) 0);
+        }
+    }
+
+    private static byte[] aes256Ctr(int mode, byte[] key, byte[] iv, byte[] input) throws GeneralSecurityException {
+        if (key.length != 32) throw new IllegalArgumentException("Invalid key length: " + key.length);
+
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        return cipher.doFinal(input);
+    }
+
+    /**
+     * Encrypts UTF-8 text with AES-256-CTR and a random IV.
+     *
+     * @return hex IV and hex ciphertext, separated by a colon
+     */
+    public static String encrypt(String data, byte[] key) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        byte[] encrypted = aes256Ctr(Cipher.ENCRYPT_MODE, key, iv, data.getBytes(StandardCharsets.UTF_8));
+        return toHex(iv) + ":" + toHex(encrypted);
+    }
+
+    /**
+     * Decrypts a value produced by {@link #encrypt(String, byte[])}.
+     */
+    public static String decrypt(String data, byte[] key) throws GeneralSecurityException {
+        int separator = data.indexOf(':');
+        if (separator < 0) throw new IllegalArgumentException("Invalid encrypted value");
+
+        byte[] iv = fromHex(data.substring(0, separator));
+        int end = data.indexOf(':', separator + 1);
+        byte[] encrypted = fromHex(data.substring(separator + 1, end < 0 ? data.length() : end));
+
+        byte[] decrypted = aes256Ctr(Cipher.DECRYPT_MODE, key, iv, encrypted);
+        try {
+            return new String(decrypted, StandardCharsets.UTF_8);
+        } finally {
+            Arrays.fill(decrypted, (byte) 0);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+
+        for (int i = 0; i < bytes.length; ++i) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[2 * i + 1] = HEX[bytes[i] & 0x0f];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Parses hex the way Node's Buffer.from(value, 'hex') does: decoding stops at the
+     * first pair that is not valid hex.
+     */
+    public static byte[] fromHex(String hex) {
+        int length = hex.length() / 2;
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; ++i) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) return Arrays.copyOf(bytes, i);
+
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,46 @@
+package com.dgmvwallet.wallet;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Base58Check encoding of addresses.
+ */
+final class Base58 {
+    private static final char[] ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+    private static final BigInteger BASE = BigInteger.valueOf(58);
+
+    private Base58() {}
+
+    static String encode(byte[] data) {
+        StringBuilder builder = new StringBuilder();
+        BigInteger value = new BigInteger(1, data);
+
+        while (value.signum() > 0) {
+            BigInteger[] divided = value.divideAndRemainder(BASE);
+            builder.append(ALPHABET[divided[1].intValue()]);
+            value = divided[0];
+        }
+
+        // Leading zero bytes are encoded as leading '1's
+        for (int i = 0; i < data.length && data[i] == 0; ++i) {
+            builder.append(ALPHABET[0]);
+        }
+
+        return builder.reverse().toString();
+    }
+
+    /**
+     * Encodes the data followed by the first four bytes of its double SHA-256.
+     */
+    static String encodeChecked(byte[] data) throws NoSuchAlgorithmException {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[] checksum = sha256.digest(sha256.digest(data));
+
+        byte[] checked = Arrays.copyOf(data, data.length + 4);
+        System.arraycopy(checksum, 0, checked, data.length, 4);
+        return encode(checked);
+    }
+}
@@ -0,0 +1,113 @@
+package com.dgmvwallet.wallet;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Hierarchical deterministic key derivation (BIP32), private keys only.
+ */
+final class Bip32 {
+    static final int HARDENED = 0x80000000;
+
+    private static final byte[] MASTER_KEY = "Bitcoin seed".getBytes(StandardCharsets.US_ASCII);
+
+    private Bip32() {}
+
+    private static byte[] hmacSha512(byte[] key, byte[] data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA512");
+        mac.init(new SecretKeySpec(key, "HmacSHA512"));
+        return mac.doFinal(data);
+    }
+
+    static ExtendedKey fromSeed(byte[] seed) throws GeneralSecurityException {
+        byte[] i = hmacSha512(MASTER_KEY, seed);
+
+        try {
+            if (!Secp256k1.isValidPrivateKey(new BigInteger(1, Arrays.copyOf(i, 32)))) {
+                throw new IllegalArgumentException("Invalid seed");
+            }
+
+            return new ExtendedKey(Arrays.copyOfRange(i, 0, 32), Arrays.copyOfRange(i, 32, 64));
+        } finally {
+            Arrays.fill(i, (byte) 0);
+        }
+    }
+
+    /**
+     * Derives a child key. Indexes with the {@link #HARDENED} bit set are hardened. An index
+     * that yields an invalid key is skipped in favour of the next one, as bitcore does.
+     */
+    static ExtendedKey deriveChild(ExtendedKey parent, int index) throws GeneralSecurityException {
+        byte[] data = new byte[37];
+
+        if ((index & HARDENED) != 0) {
+            System.arraycopy(parent.privateKey, 0, data, 1, 32);
+        } else {
+            System.arraycopy(parent.getPublicKey(), 0, data, 0, 33);
+        }
+
+        data[33] = (byte) (index >>> 24);
+        data[34] = (byte) (index >>> 16);
+        data[35] = (byte) (index >>> 8);
+        data[36] = (byte) index;
+
+        byte[] i = hmacSha512(parent.chainCode, data);
+        Arrays.fill(data, (byte) 0);
+
+        try {
+            BigInteger tweak = new BigInteger(1, Arrays.copyOf(i, 32));
+            BigInteger child = tweak.add(new BigInteger(1, parent.privateKey)).mod(Secp256k1.N);
+
+            if (tweak.compareTo(Secp256k1.N) >= 0 || child.signum() == 0) {
+                return deriveChild(parent, index + 1);
+            }
+
+            byte[] privateKey = new byte[32];
+            Secp256k1.toBytes32(child, privateKey, 0);
+            return new ExtendedKey(privateKey, Arrays.copyOfRange(i, 32, 64));
+        } finally {
+            Arrays.fill(i, (byte) 0);
+        }
+    }
+
+    /**
+     * Parses a path such as {@code m/13'/1'/2'}. Hardened indexes are marked with ' or h.
+     */
+    static int[] parsePath(String path) {
+        String[] parts = path.split("/");
+        if (parts.length == 0 || !"m".equalsIgnoreCase(parts[0])) {
+            throw new IllegalArgumentException("Invalid derivation path: " + path);
+        }
+
+        int[] indexes = new int[parts.length - 1];
+        for (int j = 1; j < parts.length; ++j) {
+            String part = parts[j];
+            boolean hardened = part.endsWith("'") || part.endsWith("h") || part.endsWith("H");
+            if (hardened) part = part.substring(0, part.length() - 1);
+
+            long index;
+            try {
+                index = Long.parseLong(part);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid derivation path: " + path);
+            }
+
+            if (index < 0 || index >= 0x80000000L) {
+                throw new IllegalArgumentException("Invalid derivation path: " + path);
+            }
+
+            indexes[j - 1] = (int) index | (hardened ? HARDENED : 0);
+        }
+
+        return indexes;
+    }
+
+    static String formatIndex(int index) {
+        return (index & HARDENED) != 0 ? (index & ~HARDENED) + "'" : Integer.toString(index);
+    }
+}
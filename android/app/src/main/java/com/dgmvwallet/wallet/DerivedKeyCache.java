@@ -0,0 +1,78 @@
+package com.dgmvwallet.wallet;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of intermediate extended keys, keyed by seed and path prefix.
+ *
+ * Logging in to the same site again derives the same path, so its prefixes are found here
+ * and only the missing levels are derived. Keys are wiped when they are evicted or the
+ * cache is cleared; lookups hand out copies, so a wiped key is never in use.
+ */
+class DerivedKeyCache {
+    private final int capacity;
+    private final LinkedHashMap<String, ExtendedKey> keys;
+
+    private int hits = 0;
+    private int misses = 0;
+
+    DerivedKeyCache(int capacity) {
+        this.capacity = capacity;
+        this.keys = new LinkedHashMap<String, ExtendedKey>(capacity, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ExtendedKey> eldest) {
+                if (size() > DerivedKeyCache.this.capacity) {
+                    eldest.getValue().wipe();
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the cached key, or null
+     */
+    synchronized ExtendedKey get(String prefix) {
+        ExtendedKey key = keys.get(prefix);
+
+        if (key != null) {
+            ++hits;
+            return key.copy();
+        }
+
+        ++misses;
+        return null;
+    }
+
+    /**
+     * Stores a copy of the key.
+     */
+    synchronized void put(String prefix, ExtendedKey key) {
+        ExtendedKey previous = keys.put(prefix, key.copy());
+        if (previous != null) previous.wipe();
+    }
+
+    synchronized void clear() {
+        for (ExtendedKey key : keys.values()) {
+            key.wipe();
+        }
+        keys.clear();
+    }
+
+    synchronized int size() {
+        return keys.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "DerivedKeyCache{" +
+                "size=" + keys.size() +
+                ", capacity=" + capacity +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                '}';
+    }
+}
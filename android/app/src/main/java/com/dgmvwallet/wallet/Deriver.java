@@ -0,0 +1,212 @@
+package com.dgmvwallet.wallet;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Native counterpart of src/wallet/Deriver.ts: key derivation, addresses, signed messages
+ * and Digi-ID authentication signatures. Results match bitcore-lib for the same seed.
+ */
+final class Deriver {
+    private static final Map<String, Integer> PUBKEYHASH = new HashMap<>();
+
+    static {
+        // Bitcoin
+        PUBKEYHASH.put("bitcoin-livenet", 0x00);
+        PUBKEYHASH.put("bitcoin-mainnet", 0x00);
+        PUBKEYHASH.put("bitcoin-testnet", 0x6f);
+        PUBKEYHASH.put("bitcoin-regtest", 0x6f);
+
+        // DigiByte
+        PUBKEYHASH.put("digibyte-mainnet", 0x1e);
+        PUBKEYHASH.put("digibyte-testnet", 0x7e);
+    }
+
+    private static final int DIGI_ID_TYPE = 13;
+
+    // Keys seeds for cache lookups, so the cache never holds a seed or a plain hash of it
+    private static final byte[] SEED_ID_KEY = new byte[32];
+
+    static {
+        new SecureRandom().nextBytes(SEED_ID_KEY);
+    }
+
+    static final class AuthenticationSignature {
+        final String uri;
+        final String address;
+        final String signature;
+
+        AuthenticationSignature(String uri, String address, String signature) {
+            this.uri = uri;
+            this.address = address;
+            this.signature = signature;
+        }
+    }
+
+    private final DerivedKeyCache cache;
+
+    Deriver(DerivedKeyCache cache) {
+        this.cache = cache;
+    }
+
+    private static String seedId(byte[] seed) throws GeneralSecurityException {
+        if (seed.length != 32 && seed.length != 64) {
+            throw new IllegalArgumentException("Invalid seed");
+        }
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SEED_ID_KEY, "HmacSHA256"));
+        return Base64.getEncoder().encodeToString(mac.doFinal(seed));
+    }
+
+    static int getPubkeyhash(String coinName, String networkName) {
+        Integer pubkeyhash = PUBKEYHASH.get(coinName.toLowerCase(Locale.ROOT) + "-" + networkName);
+        if (pubkeyhash == null) {
+            throw new IllegalArgumentException("Network configuration not found");
+        }
+        return pubkeyhash;
+    }
+
+    /**
+     * Derives the key at a path, starting from the longest prefix in the cache. Every newly
+     * derived level is added to the cache. The public key of the result is computed before
+     * it is cached, so repeated derivations of the same path skip the point multiplication.
+     *
+     * @return a key owned by the caller, who should wipe it after use
+     */
+    ExtendedKey deriveKey(byte[] seed, int[] indexes) throws GeneralSecurityException {
+        String[] prefixes = new String[indexes.length + 1];
+        prefixes[0] = seedId(seed) + "/m";
+        for (int i = 0; i < indexes.length; ++i) {
+            prefixes[i + 1] = prefixes[i] + "/" + Bip32.formatIndex(indexes[i]);
+        }
+
+        ExtendedKey key = null;
+        int level = indexes.length;
+        for (; level >= 0; --level) {
+            key = cache != null ? cache.get(prefixes[level]) : null;
+            if (key != null) break;
+        }
+
+        if (key == null) {
+            key = Bip32.fromSeed(seed);
+            level = 0;
+            if (cache != null) cache.put(prefixes[0], key);
+        }
+
+        for (int i = level; i < indexes.length; ++i) {
+            ExtendedKey child = Bip32.deriveChild(key, indexes[i]);
+            key.wipe();
+            key = child;
+
+            if (i == indexes.length - 1) key.getPublicKey();
+            if (cache != null) cache.put(prefixes[i + 1], key);
+        }
+
+        return key;
+    }
+
+    ExtendedKey deriveKey(byte[] seed, String path) throws GeneralSecurityException {
+        return deriveKey(seed, Bip32.parsePath(path));
+    }
+
+    /**
+     * @return the P2PKH address of a compressed public key
+     */
+    static String toAddress(byte[] publicKey, int pubkeyhash) throws GeneralSecurityException {
+        byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(publicKey);
+
+        byte[] payload = new byte[21];
+        payload[0] = (byte) pubkeyhash;
+        System.arraycopy(Ripemd160.digest(sha256), 0, payload, 1, 20);
+        return Base58.encodeChecked(payload);
+    }
+
+    /**
+     * Signs a message the way bitcore's Message.sign does, with "&lt;coin&gt; Signed Message:\n"
+     * as magic bytes.
+     *
+     * @return the base64 encoded compact signature
+     */
+    static String signMessage(String coinName, String message, byte[] privateKey) throws GeneralSecurityException {
+        byte[] magic = (coinName + " Signed Message:\n").getBytes(StandardCharsets.UTF_8);
+        byte[] data = message.getBytes(StandardCharsets.UTF_8);
+
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        writeVarint(sha256, magic.length);
+        sha256.update(magic);
+        writeVarint(sha256, data.length);
+        sha256.update(data);
+        byte[] hash = sha256.digest(sha256.digest());
+
+        return Base64.getEncoder().encodeToString(Secp256k1.signCompact(hash, privateKey));
+    }
+
+    private static void writeVarint(MessageDigest digest, long value) {
+        if (value < 0xfd) {
+            digest.update((byte) value);
+        } else if (value <= 0xffff) {
+            digest.update(new byte[] { (byte) 0xfd, (byte) value, (byte) (value >>> 8) });
+        } else {
+            digest.update(new byte[] {
+                (byte) 0xfe, (byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24),
+            });
+        }
+    }
+
+    /**
+     * Path of a Digi-ID login (SLIP-13): m/13'/A'/B'/C'/D', where A to D are the first four
+     * little endian words of sha256(index || callbackURL).
+     */
+    static int[] getAuthenticationPath(String callbackURL, long index) throws GeneralSecurityException {
+        byte[] url = callbackURL.getBytes(StandardCharsets.UTF_8);
+        byte[] content = new byte[4 + url.length];
+        content[0] = (byte) index;
+        content[1] = (byte) (index >>> 8);
+        content[2] = (byte) (index >>> 16);
+        content[3] = (byte) (index >>> 24);
+        System.arraycopy(url, 0, content, 4, url.length);
+
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+
+        int[] indexes = new int[5];
+        indexes[0] = DIGI_ID_TYPE | Bip32.HARDENED;
+        for (int i = 0; i < 4; ++i) {
+            int word = (hash[4 * i] & 0xff)
+                    | (hash[4 * i + 1] & 0xff) << 8
+                    | (hash[4 * i + 2] & 0xff) << 16
+                    | (hash[4 * i + 3] & 0xff) << 24;
+
+            // SLIP-13 hardens every word with | 0x80000000, so a word that already has the
+            // top bit set keeps its value. Deriver.ts derives the same numeric indexes.
+            indexes[i + 1] = word | Bip32.HARDENED;
+        }
+
+        return indexes;
+    }
+
+    AuthenticationSignature deriveAuthenticationKey(byte[] seed, String coinName, String networkName,
+                                                    String uri, String callbackURL, long index)
+            throws GeneralSecurityException {
+        int pubkeyhash = getPubkeyhash(coinName, networkName);
+        ExtendedKey key = deriveKey(seed, getAuthenticationPath(callbackURL, index));
+
+        try {
+            String address = toAddress(key.getPublicKey(), pubkeyhash);
+            String signature = signMessage(coinName, uri, key.privateKey);
+            return new AuthenticationSignature(uri, address, signature);
+        } finally {
+            key.wipe();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.dgmvwallet.wallet;
+
+import java.util.Arrays;
+
+/**
+ * BIP32 extended private key: a private key and its chain code.
+ */
+final class ExtendedKey {
+    final byte[] privateKey;
+    final byte[] chainCode;
+    private byte[] publicKey;
+
+    ExtendedKey(byte[] privateKey, byte[] chainCode) {
+        this.privateKey = privateKey;
+        this.chainCode = chainCode;
+    }
+
+    /**
+     * @return the compressed public key, computed once per key
+     */
+    synchronized byte[] getPublicKey() {
+        if (publicKey == null) {
+            publicKey = Secp256k1.publicKey(privateKey);
+        }
+        return publicKey;
+    }
+
+    synchronized ExtendedKey copy() {
+        ExtendedKey copy = new ExtendedKey(privateKey.clone(), chainCode.clone());
+        copy.publicKey = publicKey;
+        return copy;
+    }
+
+    /**
+     * Overwrites the key material. The key must not be used afterwards.
+     */
+    synchronized void wipe() {
+        Arrays.fill(privateKey, (byte) 0);
+        Arrays.fill(chainCode, (byte) 0);
+        publicKey = null;
+    }
+}
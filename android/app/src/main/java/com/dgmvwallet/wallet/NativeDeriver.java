@@ -0,0 +1,106 @@
+package com.dgmvwallet.wallet;
+
+import androidx.annotation.NonNull;
+
+import com.dgmvwallet.crypto.WalletCrypto;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Exposes the native {@link Deriver} to JS. Seeds cross the bridge as hex strings and are
+ * wiped after every call; derived keys only live in the {@link DerivedKeyCache}, which is
+ * cleared when the wallet locks.
+ */
+public class NativeDeriver extends ReactContextBaseJavaModule {
+    // Six levels per Digi-ID path, so a few dozen sites stay warm
+    private static final int DERIVED_KEY_CACHE_SIZE = 192;
+
+    private static final DerivedKeyCache cache = new DerivedKeyCache(DERIVED_KEY_CACHE_SIZE);
+    private static final Deriver deriver = new Deriver(cache);
+
+    private static final ExecutorService executor =
+            Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "DGMV-Deriver"));
+
+    private interface Task {
+        Object run(byte[] seed) throws Exception;
+    }
+
+    public NativeDeriver(ReactApplicationContext context) {
+        super(context);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return "NativeDeriver";
+    }
+
+    private static void submit(String seedHex, Promise promise, Task task) {
+        executor.execute(() -> {
+            byte[] seed = WalletCrypto.fromHex(seedHex);
+
+            try {
+                promise.resolve(task.run(seed));
+            } catch (Exception e) {
+                promise.reject("E_DERIVER", e.getMessage(), e);
+            } finally {
+                Arrays.fill(seed, (byte) 0);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void deriveAuthenticationKey(String seedHex, String coinName, String networkName, String uri,
+                                        String callbackURL, double index, Promise promise) {
+        submit(seedHex, promise, seed -> {
+            Deriver.AuthenticationSignature result =
+                    deriver.deriveAuthenticationKey(seed, coinName, networkName, uri, callbackURL, (long) index);
+
+            WritableMap map = Arguments.createMap();
+            map.putString("uri", result.uri);
+            map.putString("address", result.address);
+            map.putString("signature", result.signature);
+            return map;
+        });
+    }
+
+    @ReactMethod
+    public void deriveAddress(String seedHex, String path, String coinName, String networkName, Promise promise) {
+        submit(seedHex, promise, seed -> {
+            ExtendedKey key = deriver.deriveKey(seed, path);
+            try {
+                return Deriver.toAddress(key.getPublicKey(), Deriver.getPubkeyhash(coinName, networkName));
+            } finally {
+                key.wipe();
+            }
+        });
+    }
+
+    @ReactMethod
+    public void signMessage(String seedHex, String path, String coinName, String message, Promise promise) {
+        submit(seedHex, promise, seed -> {
+            ExtendedKey key = deriver.deriveKey(seed, path);
+            try {
+                return Deriver.signMessage(coinName, message, key.privateKey);
+            } finally {
+                key.wipe();
+            }
+        });
+    }
+
+    /**
+     * Wipes all cached keys, e.g. when the wallet locks.
+     */
+    @ReactMethod
+    public void clearKeyCache() {
+        executor.execute(cache::clear);
+    }
+}
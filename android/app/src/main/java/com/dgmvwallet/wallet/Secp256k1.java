@@ -0,0 +1,234 @@
+package com.dgmvwallet.wallet;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The secp256k1 curve: public key derivation and compact (recoverable) ECDSA signatures
+ * with deterministic nonces (RFC 6979) and low S values, as used by signed messages.
+ *
+ * Points are multiplied in Jacobian coordinates to avoid a modular inversion per step.
+ */
+final class Secp256k1 {
+    static final BigInteger P = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F", 16);
+    static final BigInteger N = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16);
+    private static final BigInteger HALF_N = N.shiftRight(1);
+
+    private static final BigInteger GX = new BigInteger("79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798", 16);
+    private static final BigInteger GY = new BigInteger("483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8", 16);
+
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+    private static final BigInteger THREE = BigInteger.valueOf(3);
+    private static final BigInteger EIGHT = BigInteger.valueOf(8);
+
+    private Secp256k1() {}
+
+    /**
+     * Point in Jacobian coordinates (X / Z^2, Y / Z^3). Z = 0 is the point at infinity.
+     */
+    private static final class Point {
+        final BigInteger x;
+        final BigInteger y;
+        final BigInteger z;
+
+        Point(BigInteger x, BigInteger y, BigInteger z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        boolean isInfinity() {
+            return z.signum() == 0;
+        }
+    }
+
+    private static final Point G = new Point(GX, GY, BigInteger.ONE);
+    private static final Point INFINITY = new Point(BigInteger.ONE, BigInteger.ONE, BigInteger.ZERO);
+
+    private static Point twice(Point p) {
+        if (p.isInfinity() || p.y.signum() == 0) return INFINITY;
+
+        BigInteger ySquared = p.y.multiply(p.y).mod(P);
+        BigInteger s = p.x.multiply(ySquared).shiftLeft(2).mod(P);
+        BigInteger m = p.x.multiply(p.x).multiply(THREE).mod(P);
+        BigInteger x = m.multiply(m).subtract(s.shiftLeft(1)).mod(P);
+        BigInteger y = m.multiply(s.subtract(x)).subtract(ySquared.multiply(ySquared).multiply(EIGHT)).mod(P);
+        BigInteger z = p.y.multiply(p.z).shiftLeft(1).mod(P);
+
+        return new Point(x, y, z);
+    }
+
+    private static Point add(Point p, Point q) {
+        if (p.isInfinity()) return q;
+        if (q.isInfinity()) return p;
+
+        BigInteger pz2 = p.z.multiply(p.z).mod(P);
+        BigInteger qz2 = q.z.multiply(q.z).mod(P);
+        BigInteger u1 = p.x.multiply(qz2).mod(P);
+        BigInteger u2 = q.x.multiply(pz2).mod(P);
+        BigInteger s1 = p.y.multiply(qz2).multiply(q.z).mod(P);
+        BigInteger s2 = q.y.multiply(pz2).multiply(p.z).mod(P);
+
+        if (u1.equals(u2)) {
+            return s1.equals(s2) ? twice(p) : INFINITY;
+        }
+
+        BigInteger h = u2.subtract(u1).mod(P);
+        BigInteger r = s2.subtract(s1).mod(P);
+        BigInteger h2 = h.multiply(h).mod(P);
+        BigInteger h3 = h2.multiply(h).mod(P);
+        BigInteger u1h2 = u1.multiply(h2).mod(P);
+
+        BigInteger x = r.multiply(r).subtract(h3).subtract(u1h2.multiply(TWO)).mod(P);
+        BigInteger y = r.multiply(u1h2.subtract(x)).subtract(s1.multiply(h3)).mod(P);
+        BigInteger z = h.multiply(p.z).multiply(q.z).mod(P);
+
+        return new Point(x, y, z);
+    }
+
+    private static Point multiply(Point p, BigInteger k) {
+        Point result = INFINITY;
+
+        for (int i = k.bitLength() - 1; i >= 0; --i) {
+            result = twice(result);
+            if (k.testBit(i)) result = add(result, p);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the affine x and y coordinates of a point
+     */
+    private static BigInteger[] toAffine(Point p) {
+        BigInteger zInverse = p.z.modInverse(P);
+        BigInteger zInverse2 = zInverse.multiply(zInverse).mod(P);
+
+        return new BigInteger[] {
+            p.x.multiply(zInverse2).mod(P),
+            p.y.multiply(zInverse2).multiply(zInverse).mod(P),
+        };
+    }
+
+    static boolean isValidPrivateKey(BigInteger d) {
+        return d.signum() > 0 && d.compareTo(N) < 0;
+    }
+
+    /**
+     * @return the 33 byte compressed public key of a private key
+     */
+    static byte[] publicKey(byte[] privateKey) {
+        BigInteger[] point = toAffine(multiply(G, new BigInteger(1, privateKey)));
+
+        byte[] encoded = new byte[33];
+        encoded[0] = (byte) (point[1].testBit(0) ? 0x03 : 0x02);
+        toBytes32(point[0], encoded, 1);
+        return encoded;
+    }
+
+    /**
+     * Signs a 32 byte hash.
+     *
+     * @return the 65 byte compact signature: header (27 + recovery id + 4 for a compressed
+     * public key), r and s
+     */
+    static byte[] signCompact(byte[] hash, byte[] privateKey) throws GeneralSecurityException {
+        BigInteger d = new BigInteger(1, privateKey);
+        BigInteger e = new BigInteger(1, hash);
+        if (!isValidPrivateKey(d)) throw new IllegalArgumentException("Invalid private key");
+
+        Rfc6979 nonces = new Rfc6979(privateKey, e.mod(N));
+
+        while (true) {
+            BigInteger k = nonces.next();
+            BigInteger[] point = toAffine(multiply(G, k));
+
+            BigInteger r = point[0].mod(N);
+            if (r.signum() == 0) continue;
+
+            BigInteger s = k.modInverse(N).multiply(e.add(d.multiply(r))).mod(N);
+            if (s.signum() == 0) continue;
+
+            int recoveryId = (point[1].testBit(0) ? 1 : 0) | (point[0].compareTo(N) >= 0 ? 2 : 0);
+
+            // Only the low S form is standard, the recovery id flips with it
+            if (s.compareTo(HALF_N) > 0) {
+                s = N.subtract(s);
+                recoveryId ^= 1;
+            }
+
+            byte[] signature = new byte[65];
+            signature[0] = (byte) (27 + recoveryId + 4);
+            toBytes32(r, signature, 1);
+            toBytes32(s, signature, 33);
+            return signature;
+        }
+    }
+
+    /**
+     * Deterministic nonce generator of RFC 6979 with HMAC-SHA256.
+     */
+    private static final class Rfc6979 {
+        private final Mac mac;
+        private byte[] k = new byte[32];
+        private byte[] v = new byte[32];
+
+        Rfc6979(byte[] privateKey, BigInteger hash) throws GeneralSecurityException {
+            mac = Mac.getInstance("HmacSHA256");
+            Arrays.fill(v, (byte) 0x01);
+
+            byte[] x = new byte[32];
+            toBytes32(new BigInteger(1, privateKey), x, 0);
+            byte[] h = new byte[32];
+            toBytes32(hash, h, 0);
+
+            k = hmac(k, v, new byte[] { 0x00 }, x, h);
+            v = hmac(k, v);
+            k = hmac(k, v, new byte[] { 0x01 }, x, h);
+            v = hmac(k, v);
+
+            Arrays.fill(x, (byte) 0);
+        }
+
+        private boolean started = false;
+
+        BigInteger next() throws GeneralSecurityException {
+            if (started) {
+                k = hmac(k, v, new byte[] { 0x00 });
+                v = hmac(k, v);
+            }
+            started = true;
+
+            while (true) {
+                v = hmac(k, v);
+                BigInteger candidate = new BigInteger(1, v);
+                if (isValidPrivateKey(candidate)) return candidate;
+
+                k = hmac(k, v, new byte[] { 0x00 });
+                v = hmac(k, v);
+            }
+        }
+
+        private byte[] hmac(byte[] key, byte[]... parts) throws GeneralSecurityException {
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            for (byte[] part : parts) mac.update(part);
+            return mac.doFinal();
+        }
+    }
+
+    /**
+     * Writes a non-negative number as 32 big endian bytes.
+     */
+    static void toBytes32(BigInteger value, byte[] out, int offset) {
+        byte[] bytes = value.toByteArray();
+        int length = Math.min(bytes.length, 32);
+        int start = bytes.length - length;
+
+        Arrays.fill(out, offset, offset + 32 - length, (byte) 0);
+        System.arraycopy(bytes, start, out, offset + 32 - length, length);
+    }
+}
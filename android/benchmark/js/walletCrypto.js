@@ -0,0 +1,63 @@
+/**
+ * JS side of WalletCryptoBenchmark: runs the same workloads with the pure JS
+ * implementations the app uses through the crypto shim (pbkdf2, browserify-aes, bip39).
+ *
+ * Run from the repository root after `npm install`:
+ *
+ *   node android/benchmark/js/walletCrypto.js
+ */
+
+const pbkdf2 = require('pbkdf2/lib/sync-browser');
+const aes = require('browserify-aes');
+const bip39 = require('bip39');
+
+const PASSWORD = 'correct horse battery staple';
+const MNEMONIC = 'abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about';
+const VALUE = 'DGMV WALLET';
+const SALT = Buffer.from('abcdef0123456789abcdef0123456789abcdef0123456789abcdef0123456789', 'hex');
+
+const WARMUP_SECONDS = 2;
+const MEASURE_SECONDS = 5;
+
+function storageKey() {
+  return pbkdf2(PASSWORD, SALT, 512, 32, 'sha256');
+}
+
+function encrypt(data, key) {
+  const iv = Buffer.alloc(16, 7);
+  const cipher = aes.createCipheriv('aes-256-ctr', key, iv);
+  return iv.toString('hex') + ':' + Buffer.concat([cipher.update(data), cipher.final()]).toString('hex');
+}
+
+function decrypt(data, key) {
+  const [iv, encryptedText] = data.split(/[:]/).map(d => Buffer.from(d, 'hex'));
+  const decipher = aes.createDecipheriv('aes-256-ctr', key, iv);
+  return Buffer.concat([decipher.update(encryptedText), decipher.final()]).toString();
+}
+
+const encrypted = encrypt(VALUE, storageKey());
+
+const benchmarks = {
+  storageKey,
+  mnemonicToSeed: () => bip39.mnemonicToSeedSync(MNEMONIC, ''),
+  encryptWithPassphrase: () => encrypt(VALUE, storageKey()),
+  decryptWithPassphrase: () => decrypt(encrypted, storageKey()),
+};
+
+function run(fn, seconds) {
+  const end = process.hrtime.bigint() + BigInt(seconds * 1e9);
+  let count = 0;
+  const start = process.hrtime.bigint();
+
+  while (process.hrtime.bigint() < end) {
+    fn();
+    ++count;
+  }
+
+  return Number(process.hrtime.bigint() - start) / 1e3 / count;
+}
+
+for (const [name, fn] of Object.entries(benchmarks)) {
+  run(fn, WARMUP_SECONDS);
+  console.log(`${name}: ${run(fn, MEASURE_SECONDS).toFixed(1)} us/op`);
+}
@@ -0,0 +1,125 @@
+package com.dgmvwallet.autofill;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link HierarchyCapture} read back into a synthetic structure, for replaying it
+ * through the scanner.
+ */
+final class CapturedHierarchy {
+    final String name;
+    final int rulesVersion;
+    final SyntheticStructure structure;
+    // All nodes in capture order, indexed by the pre-order indexes of the expectations
+    final List<SyntheticNode> nodes = new ArrayList<>();
+
+    // Selection of the scan on the device
+    final int capturedUsernameIndex;
+    final int capturedPasswordIndex;
+    final boolean capturedNewPassword;
+
+    private final String[] strings;
+
+    private CapturedHierarchy(String name, DataInputStream in) throws IOException {
+        this.name = name;
+
+        if (in.readInt() != HierarchyCapture.MAGIC) throw new IOException(name + " is not a capture");
+        int version = in.readInt();
+        if (version != HierarchyCapture.VERSION) throw new IOException(name + " has unsupported version " + version);
+
+        rulesVersion = in.readInt();
+
+        strings = new String[HierarchyCapture.readVarInt(in)];
+        for (int i = 0; i < strings.length; ++i) {
+            strings[i] = in.readUTF();
+        }
+
+        capturedUsernameIndex = in.readInt();
+        capturedPasswordIndex = in.readInt();
+        capturedNewPassword = in.readByte() != 0;
+
+        structure = new SyntheticStructure(readString(in));
+        int windowCount = HierarchyCapture.readVarInt(in);
+        for (int i = 0; i < windowCount; ++i) {
+            String title = readString(in);
+            structure.addWindow(title, readNode(in));
+        }
+    }
+
+    static CapturedHierarchy read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return new CapturedHierarchy(file.getName(), in);
+        }
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        int reference = HierarchyCapture.readVarInt(in);
+        if (reference > strings.length) throw new IOException(name + " references string " + reference);
+        return reference != 0 ? strings[reference - 1] : null;
+    }
+
+    private SyntheticNode readNode(DataInputStream in) throws IOException {
+        SyntheticNode node = new SyntheticNode(in.readInt(), null);
+        nodes.add(node);
+
+        int flags = in.readByte();
+        node.focused = (flags & HierarchyCapture.FLAG_FOCUSED) != 0;
+        node.focusable = (flags & HierarchyCapture.FLAG_FOCUSABLE) != 0;
+        node.visibility = in.readByte();
+        node.importantForAutofill = in.readByte();
+        node.width = HierarchyCapture.readVarInt(in);
+        node.height = HierarchyCapture.readVarInt(in);
+
+        node.className = readString(in);
+        node.text = readString(in);
+        node.hint = readString(in);
+
+        int autofillHintCount = HierarchyCapture.readVarInt(in);
+        if (autofillHintCount > 0) {
+            node.autofillHints = new String[autofillHintCount - 1];
+            for (int i = 0; i < node.autofillHints.length; ++i) {
+                node.autofillHints[i] = readString(in);
+            }
+        }
+
+        node.inputType = HierarchyCapture.readVarInt(in);
+        node.webDomain = readString(in);
+        node.webScheme = readString(in);
+        node.htmlTag = readString(in);
+
+        int attributeCount = HierarchyCapture.readVarInt(in);
+        if (attributeCount > 0) {
+            node.htmlAttributes = new String[attributeCount][];
+            for (int i = 0; i < attributeCount; ++i) {
+                node.htmlAttributes[i] = new String[] { readString(in), readString(in) };
+            }
+        }
+
+        int childCount = HierarchyCapture.readVarInt(in);
+        for (int i = 0; i < childCount; ++i) {
+            node.add(readNode(in));
+        }
+
+        return node;
+    }
+
+    /**
+     * @return a short description of a node for failure messages, or "-" for no node
+     */
+    String describe(int index) {
+        if (index < 0) return "-";
+
+        SyntheticNode node = nodes.get(index);
+        return index + " (" + node.className
+                + (node.hint != null ? ", hint=" + node.hint : "")
+                + (node.text != null ? ", text=" + node.text : "")
+                + (node.htmlTag != null ? ", tag=" + node.htmlTag : "")
+                + ")";
+    }
+}
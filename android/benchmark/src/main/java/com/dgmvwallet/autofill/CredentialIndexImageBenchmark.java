@@ -0,0 +1,88 @@
+package com.dgmvwallet.autofill;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in a credential index image of synthetic accounts, locked (usernames only) and
+ * unlocked, and of a realm without accounts.
+ *
+ * The Keystore is not available on the JVM, so the data key is stored as it is. Unwrapping
+ * only happens once per mapping on the device, lookups decrypt with the data key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CredentialIndexImageBenchmark {
+    private static final CredentialIndexImage.KeyProtector PLAIN_KEY = new CredentialIndexImage.KeyProtector() {
+        @Override
+        public byte[] wrap(byte[] key) {
+            return key.clone();
+        }
+
+        @Override
+        public byte[] unwrap(byte[] wrappedKey) {
+            return wrappedKey.clone();
+        }
+    };
+
+    @Param({"1000", "10000"})
+    public int accounts;
+
+    private CredentialIndexImage image;
+    private String realm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        // Three accounts per site, like a wallet with work and personal logins
+        List<CredentialIndexImage.Record> records = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; ++i) {
+            String site = "site" + (i / 3) + ".example";
+            records.add(new CredentialIndexImage.Record(site, "login." + site,
+                    "user" + i + "@mail.example", "password-" + i));
+        }
+        realm = "site" + (accounts / 6) + ".example";
+
+        byte[] compiled = CredentialIndexImage.compile(records, PLAIN_KEY);
+
+        // Direct buffers behave like the memory-mapped file on the device
+        ByteBuffer buffer = ByteBuffer.allocateDirect(compiled.length);
+        buffer.put(compiled);
+        buffer.flip();
+        image = CredentialIndexImage.wrap(buffer, PLAIN_KEY);
+    }
+
+    @Benchmark
+    public List<CredentialIndexImage.Record> findLocked() throws GeneralSecurityException {
+        return image.find(realm, false);
+    }
+
+    @Benchmark
+    public List<CredentialIndexImage.Record> findUnlocked() throws GeneralSecurityException {
+        return image.find(realm, true);
+    }
+
+    @Benchmark
+    public List<CredentialIndexImage.Record> findMissing() throws GeneralSecurityException {
+        return image.find("unknown.example", true);
+    }
+}
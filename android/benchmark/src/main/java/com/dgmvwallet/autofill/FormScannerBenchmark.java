@@ -0,0 +1,76 @@
+package com.dgmvwallet.autofill;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scan cost per request shape. Throughput mode gives requests per millisecond, sample
+ * mode gives the latency distribution (p50/p99), and "-prof gc" adds the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormScannerBenchmark {
+    @Param({ "NATIVE_LOGIN", "WEB_5K", "WEB_50K", "WEB_50K_HIDDEN", "MULTI_WINDOW", "MULTI_CONTEXT" })
+    public SyntheticTrees.Shape shape;
+
+    // Relative to the benchmark module, which is the working directory of the jmh task
+    static final String RULES_PATH = "../app/src/main/assets/" + FieldRules.ASSET_NAME;
+
+    private List<SyntheticStructure> structures;
+    private FormLayoutCache layoutCache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        FieldRules.setSource(() -> new FileInputStream(RULES_PATH));
+        if (FieldRules.getInstance().version == 0) {
+            throw new IllegalStateException("Could not load " + RULES_PATH, FieldRules.getLoadError());
+        }
+
+        structures = SyntheticTrees.create(shape);
+        layoutCache = new FormLayoutCache(32);
+
+        // Make sure the shape is valid before measuring it
+        FormScanner<SyntheticStructure, SyntheticNode> scanner = new FormScanner<>(SyntheticSource.INSTANCE, null);
+        if (!scanner.scan(structures) || scanner.getPasswordNode() == null) {
+            throw new IllegalStateException("No password field found in " + shape);
+        }
+    }
+
+    /**
+     * A fresh scanner per request, as DGMVAutofillParser does without a layout cache.
+     */
+    @Benchmark
+    public SyntheticNode scan() {
+        FormScanner<SyntheticStructure, SyntheticNode> scanner = new FormScanner<>(SyntheticSource.INSTANCE, null);
+        scanner.scan(structures);
+        return scanner.getPasswordNode();
+    }
+
+    /**
+     * Repeated requests for the same form, served from the layout cache after the first scan.
+     */
+    @Benchmark
+    public SyntheticNode scanCached() {
+        FormScanner<SyntheticStructure, SyntheticNode> scanner = new FormScanner<>(SyntheticSource.INSTANCE, layoutCache);
+        scanner.scan(structures);
+        return scanner.getPasswordNode();
+    }
+}
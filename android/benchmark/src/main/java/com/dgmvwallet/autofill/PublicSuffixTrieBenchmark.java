@@ -0,0 +1,76 @@
+package com.dgmvwallet.autofill;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registrable domain lookups against the public suffix list shipped in the app assets,
+ * and the one-time compilation of the list into the trie image.
+ *
+ * The benchmark runs from the benchmark project directory, so the asset is read relative
+ * to it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublicSuffixTrieBenchmark {
+    static final String LIST_PATH = "../app/src/main/assets/public_suffix_list.dat";
+
+    @Param({"www.example.com", "login.example.co.uk", "a.b.c.kobe.jp", "user.github.io"})
+    public String host;
+
+    private byte[] image;
+    private PublicSuffixTrie trie;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (InputStream in = new FileInputStream(LIST_PATH)) {
+            image = PublicSuffixTrie.compile(in, 0);
+        }
+
+        // Direct buffers behave like the memory-mapped file on the device
+        ByteBuffer buffer = ByteBuffer.allocateDirect(image.length);
+        buffer.put(image);
+        trie = PublicSuffixTrie.wrap(buffer);
+    }
+
+    @Benchmark
+    public int publicSuffixLabelCount() {
+        return trie.getPublicSuffixLabelCount(host);
+    }
+
+    @Benchmark
+    public String registrableDomain() {
+        return trie.getRegistrableDomain(host);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public byte[] compile() throws IOException {
+        try (InputStream in = new FileInputStream(LIST_PATH)) {
+            return PublicSuffixTrie.compile(in, 0);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.dgmvwallet.autofill;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * View node of a synthetic hierarchy, mirroring the AssistStructure.ViewNode properties
+ * that the scanner reads.
+ */
+final class SyntheticNode {
+    final List<SyntheticNode> children = new ArrayList<>();
+
+    int id;
+    boolean focused;
+    boolean focusable;
+    int visibility = 0;
+    int importantForAutofill = 0;
+    int width = 360;
+    int height = 48;
+    String className;
+    CharSequence text;
+    String hint;
+    String[] autofillHints;
+    int inputType;
+    String webDomain;
+    String webScheme;
+    String htmlTag;
+    String[][] htmlAttributes;
+
+    SyntheticNode(int id, String className) {
+        this.id = id;
+        this.className = className;
+    }
+
+    SyntheticNode add(SyntheticNode child) {
+        children.add(child);
+        return child;
+    }
+}
@@ -0,0 +1,135 @@
+package com.dgmvwallet.autofill;
+
+/**
+ * {@link NodeSource} over synthetic structures.
+ */
+final class SyntheticSource implements NodeSource<SyntheticStructure, SyntheticNode> {
+    static final SyntheticSource INSTANCE = new SyntheticSource();
+
+    private SyntheticSource() {}
+
+    @Override
+    public String getActivityComponent(SyntheticStructure structure) {
+        return structure.activity;
+    }
+
+    @Override
+    public int getWindowCount(SyntheticStructure structure) {
+        return structure.roots.size();
+    }
+
+    @Override
+    public SyntheticNode getWindowRoot(SyntheticStructure structure, int index) {
+        return structure.roots.get(index);
+    }
+
+    @Override
+    public CharSequence getWindowTitle(SyntheticStructure structure, int index) {
+        return structure.titles.get(index);
+    }
+
+    @Override
+    public int getChildCount(SyntheticNode node) {
+        return node.children.size();
+    }
+
+    @Override
+    public SyntheticNode getChildAt(SyntheticNode node, int index) {
+        return node.children.get(index);
+    }
+
+    @Override
+    public int getId(SyntheticNode node) {
+        return node.id;
+    }
+
+    @Override
+    public boolean isFocused(SyntheticNode node) {
+        return node.focused;
+    }
+
+    @Override
+    public boolean isFocusable(SyntheticNode node) {
+        return node.focusable;
+    }
+
+    @Override
+    public int getVisibility(SyntheticNode node) {
+        return node.visibility;
+    }
+
+    @Override
+    public int getImportantForAutofill(SyntheticNode node) {
+        return node.importantForAutofill;
+    }
+
+    @Override
+    public int getWidth(SyntheticNode node) {
+        return node.width;
+    }
+
+    @Override
+    public int getHeight(SyntheticNode node) {
+        return node.height;
+    }
+
+    @Override
+    public String getClassName(SyntheticNode node) {
+        return node.className;
+    }
+
+    @Override
+    public CharSequence getText(SyntheticNode node) {
+        return node.text;
+    }
+
+    @Override
+    public String getHint(SyntheticNode node) {
+        return node.hint;
+    }
+
+    @Override
+    public String[] getAutofillHints(SyntheticNode node) {
+        return node.autofillHints;
+    }
+
+    @Override
+    public int getInputType(SyntheticNode node) {
+        return node.inputType;
+    }
+
+    @Override
+    public String getWebDomain(SyntheticNode node) {
+        return node.webDomain;
+    }
+
+    @Override
+    public String getWebScheme(SyntheticNode node) {
+        return node.webScheme;
+    }
+
+    @Override
+    public String getHtmlTag(SyntheticNode node) {
+        return node.htmlTag;
+    }
+
+    @Override
+    public int getHtmlAttributeCount(SyntheticNode node) {
+        return node.htmlAttributes != null ? node.htmlAttributes.length : 0;
+    }
+
+    @Override
+    public String getHtmlAttributeName(SyntheticNode node, int index) {
+        return node.htmlAttributes[index][0];
+    }
+
+    @Override
+    public String getHtmlAttributeValue(SyntheticNode node, int index) {
+        return node.htmlAttributes[index][1];
+    }
+
+    @Override
+    public String describe(SyntheticNode node, int depth) {
+        return "@DEPTH=" + depth + ": id=" + node.id + ", className=" + node.className;
+    }
+}
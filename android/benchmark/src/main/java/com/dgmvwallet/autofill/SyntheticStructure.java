@@ -0,0 +1,23 @@
+package com.dgmvwallet.autofill;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic counterpart of an AssistStructure: an activity with a list of windows.
+ */
+final class SyntheticStructure {
+    final String activity;
+    final List<CharSequence> titles = new ArrayList<>();
+    final List<SyntheticNode> roots = new ArrayList<>();
+
+    SyntheticStructure(String activity) {
+        this.activity = activity;
+    }
+
+    SyntheticStructure addWindow(CharSequence title, SyntheticNode root) {
+        titles.add(title);
+        roots.add(root);
+        return this;
+    }
+}
@@ -0,0 +1,232 @@
+package com.dgmvwallet.autofill;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the request shapes used by the benchmarks. Generation is seeded, so every
+ * run scans exactly the same hierarchies.
+ */
+public final class SyntheticTrees {
+    // Values of android.text.InputType
+    private static final int INPUT_TEXT = 0x00000001;
+    private static final int INPUT_TEXT_PASSWORD = 0x00000081;
+
+    private static final String LAYOUT = "android.widget.LinearLayout";
+    private static final String TEXT_VIEW = "android.widget.TextView";
+    private static final String EDIT_TEXT = "android.widget.EditText";
+    private static final String BUTTON = "android.widget.Button";
+    private static final String VIEW = "android.view.View";
+
+    // Value of android.view.View
+    private static final int INVISIBLE = 4;
+
+    // One in this many containers of the hidden page shape is invisible
+    private static final int HIDDEN_SECTION_RATE = 16;
+
+    // Nesting limit of generated pages, in the range of real world DOMs
+    private static final int MAX_PAGE_DEPTH = 24;
+
+    private int nextId = 1;
+
+    private SyntheticTrees() {}
+
+    public enum Shape {
+        // Native login screen with a few decor layers, about 20 nodes
+        NATIVE_LOGIN,
+        // Browser window with a 5000 node page, login form near the end
+        WEB_5K,
+        // Browser window with a 50000 node page, login form near the end
+        WEB_50K,
+        // Like WEB_50K, but most sections are hidden, like menus and inactive tabs
+        WEB_50K_HIDDEN,
+        // Two unfocused system windows before the focused app window
+        MULTI_WINDOW,
+        // Two earlier fill contexts without focus before the current one
+        MULTI_CONTEXT,
+    }
+
+    static List<SyntheticStructure> create(Shape shape) {
+        SyntheticTrees trees = new SyntheticTrees();
+
+        switch (shape) {
+            case NATIVE_LOGIN:
+                return Arrays.asList(trees.nativeApp(true));
+
+            case WEB_5K:
+                return Arrays.asList(trees.browser(5_000, true));
+
+            case WEB_50K:
+                return Arrays.asList(trees.browser(50_000, true));
+
+            case WEB_50K_HIDDEN:
+                return Arrays.asList(trees.browser(50_000, true, true));
+
+            case MULTI_WINDOW: {
+                SyntheticStructure structure = new SyntheticStructure("com.example.app/.LoginActivity");
+                structure.addWindow("StatusBar", trees.page(200, null, false));
+                structure.addWindow("NavigationBar", trees.page(200, null, false));
+                structure.addWindow("LoginActivity", trees.nativeLogin(true));
+                return Arrays.asList(structure);
+            }
+
+            case MULTI_CONTEXT: {
+                List<SyntheticStructure> structures = new ArrayList<>();
+                structures.add(trees.browser(5_000, false));
+                structures.add(trees.browser(5_000, false));
+                structures.add(trees.browser(5_000, true));
+                return structures;
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown shape " + shape);
+    }
+
+    private SyntheticStructure nativeApp(boolean focused) {
+        return new SyntheticStructure("com.example.app/.LoginActivity")
+            .addWindow("LoginActivity", nativeLogin(focused));
+    }
+
+    private SyntheticStructure browser(int nodes, boolean focused) {
+        return browser(nodes, focused, false);
+    }
+
+    private SyntheticStructure browser(int nodes, boolean focused, boolean hidden) {
+        return new SyntheticStructure("com.android.chrome/org.chromium.chrome.browser.ChromeTabbedActivity")
+            .addWindow("Chrome", page(nodes, "login.example.com", focused, hidden));
+    }
+
+    private SyntheticNode nativeLogin(boolean focused) {
+        SyntheticNode decor = node(LAYOUT);
+        SyntheticNode content = decor.add(node(LAYOUT)).add(node(LAYOUT));
+
+        content.add(text(TEXT_VIEW, "Welcome back"));
+        content.add(text(TEXT_VIEW, "Sign in to continue"));
+
+        SyntheticNode form = content.add(node(LAYOUT));
+        SyntheticNode username = form.add(input(EDIT_TEXT, INPUT_TEXT));
+        username.hint = "Username";
+
+        SyntheticNode password = form.add(input(EDIT_TEXT, INPUT_TEXT_PASSWORD));
+        password.hint = "Password";
+        password.focused = focused;
+
+        form.add(text(BUTTON, "Login"));
+        form.add(text(TEXT_VIEW, "Forgot your password?"));
+        return decor;
+    }
+
+    private SyntheticNode page(int nodes, String webDomain, boolean focused) {
+        return page(nodes, webDomain, focused, false);
+    }
+
+    /**
+     * Builds a DOM-like tree of roughly the given size and at most {@link #MAX_PAGE_DEPTH}
+     * levels. The login form is inserted after 90% of the nodes, so a full scan has to
+     * visit most of the page to find it.
+     *
+     * @param hidden makes one in {@link #HIDDEN_SECTION_RATE} containers invisible, together
+     *               with everything added to it. The login form is always placed in a
+     *               visible section.
+     */
+    private SyntheticNode page(int nodes, String webDomain, boolean focused, boolean hidden) {
+        Random random = new Random(nodes);
+
+        SyntheticNode root = node(LAYOUT);
+        SyntheticNode document = root.add(node("android.webkit.WebView"));
+        document.webDomain = webDomain;
+        document.webScheme = "https";
+
+        int formAt = nodes * 9 / 10;
+        boolean formAdded = false;
+
+        // Containers that can still take children, with their depth
+        List<SyntheticNode> open = new ArrayList<>();
+        List<Integer> depths = new ArrayList<>();
+        List<Boolean> inHiddenSection = new ArrayList<>();
+        open.add(document);
+        depths.add(1);
+        inHiddenSection.add(false);
+        int count = 2;
+
+        while (count < nodes) {
+            // Attaching to one of the most recent containers grows the tree in document order
+            int parentIndex = open.size() - 1 - random.nextInt(Math.min(open.size(), 8));
+            SyntheticNode parent = open.get(parentIndex);
+            int childDepth = depths.get(parentIndex) + 1;
+            boolean childHidden = inHiddenSection.get(parentIndex);
+            SyntheticNode child;
+
+            if (!formAdded && count >= formAt) {
+                if (childHidden) {
+                    parent = document;
+                    childHidden = false;
+                }
+                child = htmlForm(focused);
+                count += 6;
+                formAdded = true;
+            } else if (random.nextInt(4) == 0) {
+                child = text(VIEW, "Lorem ipsum dolor sit amet " + count);
+                child.htmlTag = "span";
+                ++count;
+            } else {
+                child = node(VIEW);
+                child.htmlTag = "div";
+                ++count;
+
+                if (hidden && !childHidden && random.nextInt(HIDDEN_SECTION_RATE) == 0) {
+                    child.visibility = INVISIBLE;
+                    childHidden = true;
+                }
+            }
+
+            parent.add(child);
+
+            if ("div".equals(child.htmlTag) && childDepth < MAX_PAGE_DEPTH) {
+                open.add(child);
+                depths.add(childDepth);
+                inHiddenSection.add(childHidden);
+            }
+        }
+
+        return root;
+    }
+
+    private SyntheticNode htmlForm(boolean focused) {
+        SyntheticNode form = node(VIEW);
+        form.htmlTag = "form";
+
+        form.add(text(VIEW, "E-mail address")).htmlTag = "label";
+        SyntheticNode email = form.add(input(EDIT_TEXT, INPUT_TEXT));
+        email.htmlTag = "input";
+        email.htmlAttributes = new String[][] { { "type", "email" }, { "name", "login_email" } };
+
+        form.add(text(VIEW, "Password")).htmlTag = "label";
+        SyntheticNode password = form.add(input(EDIT_TEXT, INPUT_TEXT_PASSWORD));
+        password.htmlTag = "input";
+        password.htmlAttributes = new String[][] { { "type", "password" }, { "autocomplete", "current-password" } };
+        password.focused = focused;
+
+        form.add(text(BUTTON, "Sign in")).htmlTag = "button";
+        return form;
+    }
+
+    private SyntheticNode node(String className) {
+        return new SyntheticNode(nextId++, className);
+    }
+
+    private SyntheticNode text(String className, String text) {
+        SyntheticNode node = node(className);
+        node.text = text;
+        return node;
+    }
+
+    private SyntheticNode input(String className, int inputType) {
+        SyntheticNode node = node(className);
+        node.focusable = true;
+        node.inputType = inputType;
+        return node;
+    }
+}
@@ -0,0 +1,73 @@
+package com.dgmvwallet.crypto;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the storage crypto with the parameters EncryptedStorage uses: every encrypted
+ * keychain value derives its key with PBKDF2-HMAC-SHA256 (512 rounds), and the wallet
+ * seed is derived from the mnemonic with PBKDF2-HMAC-SHA512 (2048 rounds).
+ *
+ * The same workloads run against the JS implementations with benchmark/js/walletCrypto.js.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WalletCryptoBenchmark {
+    static final String PASSWORD = "correct horse battery staple";
+    static final String MNEMONIC =
+            "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about";
+    static final String VALUE = "DGMV WALLET";
+
+    private byte[] salt;
+    private byte[] key;
+    private String encrypted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        salt = WalletCrypto.fromHex("abcdef0123456789abcdef0123456789abcdef0123456789abcdef0123456789");
+        key = WalletCrypto.pbkdf2(PASSWORD, salt, 512, 32, "sha256");
+        encrypted = WalletCrypto.encrypt(VALUE, key);
+    }
+
+    @Benchmark
+    public byte[] storageKey() throws GeneralSecurityException {
+        return WalletCrypto.pbkdf2(PASSWORD, salt, 512, 32, "sha256");
+    }
+
+    @Benchmark
+    public byte[] mnemonicToSeed() throws GeneralSecurityException {
+        return WalletCrypto.mnemonicToSeed(MNEMONIC, "");
+    }
+
+    /**
+     * One EncryptedStorage.store() call: key derivation plus encryption.
+     */
+    @Benchmark
+    public String encryptWithPassphrase() throws GeneralSecurityException {
+        return WalletCrypto.encrypt(VALUE, WalletCrypto.pbkdf2(PASSWORD, salt, 512, 32, "sha256"));
+    }
+
+    /**
+     * One EncryptedStorage.fetch() call: key derivation plus decryption.
+     */
+    @Benchmark
+    public String decryptWithPassphrase() throws GeneralSecurityException {
+        return WalletCrypto.decrypt(encrypted, WalletCrypto.pbkdf2(PASSWORD, salt, 512, 32, "sha256"));
+    }
+}
@@ -0,0 +1,78 @@
+package com.dgmvwallet.autofill;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CredentialIndexImageTest {
+    private static final CredentialIndexImage.KeyProtector PLAIN_KEY = new CredentialIndexImage.KeyProtector() {
+        @Override
+        public byte[] wrap(byte[] key) {
+            return key.clone();
+        }
+
+        @Override
+        public byte[] unwrap(byte[] wrappedKey) {
+            return wrappedKey.clone();
+        }
+    };
+
+    private static CredentialIndexImage compile(CredentialIndexImage.Record... records) throws GeneralSecurityException {
+        byte[] image = CredentialIndexImage.compile(Arrays.asList(records), PLAIN_KEY);
+        return CredentialIndexImage.wrap(ByteBuffer.wrap(image), PLAIN_KEY);
+    }
+
+    @Test
+    public void unlockedLookupReturnsPasswords() throws GeneralSecurityException {
+        CredentialIndexImage image = compile(
+                new CredentialIndexImage.Record("example.com", "login.example.com", "jane", "secret"));
+
+        List<CredentialIndexImage.Record> records = image.find("example.com", true);
+        assertEquals(1, records.size());
+        assertEquals("login.example.com", records.get(0).host);
+        assertEquals("jane", records.get(0).username);
+        assertEquals("secret", records.get(0).password);
+    }
+
+    @Test
+    public void lockedLookupDoesNotReturnPasswords() throws GeneralSecurityException {
+        CredentialIndexImage image = compile(
+                new CredentialIndexImage.Record("example.com", null, "jane", "secret"));
+
+        List<CredentialIndexImage.Record> records = image.find("example.com", false);
+        assertEquals(1, records.size());
+        assertNull(records.get(0).password);
+    }
+
+    @Test
+    public void recordsWithoutPasswordAreFoundWithoutPassword() throws GeneralSecurityException {
+        // Filled with an empty password otherwise, without the authenticator
+        CredentialIndexImage image = compile(
+                new CredentialIndexImage.Record("example.com", null, "jane", null),
+                new CredentialIndexImage.Record("example.com", null, "john", ""),
+                new CredentialIndexImage.Record("example.com", null, "joe", "secret"));
+
+        List<CredentialIndexImage.Record> records = image.find("example.com", true);
+        assertEquals(3, records.size());
+        assertEquals("jane", records.get(0).username);
+        assertNull(records.get(0).password);
+        assertEquals("john", records.get(1).username);
+        assertNull(records.get(1).password);
+        assertEquals("joe", records.get(2).username);
+        assertEquals("secret", records.get(2).password);
+    }
+
+    @Test
+    public void otherRealmsAreNotFound() throws GeneralSecurityException {
+        CredentialIndexImage image = compile(
+                new CredentialIndexImage.Record("example.com", null, "jane", "secret"));
+
+        assertEquals(0, image.find("example.org", true).size());
+    }
+}
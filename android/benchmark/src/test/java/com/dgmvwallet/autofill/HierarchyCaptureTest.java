@@ -0,0 +1,91 @@
+package com.dgmvwallet.autofill;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class HierarchyCaptureTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static FieldRules rules;
+
+    @BeforeClass
+    public static void setUp() {
+        FieldRules.setSource(() -> new FileInputStream(FormScannerBenchmark.RULES_PATH));
+        rules = FieldRules.getInstance();
+    }
+
+    @Test
+    public void tokensKeepTheKeywordsOfTheirCategory() {
+        assertEquals(FieldClassifier.KEYWORD_USERNAME, rules.keywords.match(HierarchyCapture.TOKEN_USERNAME));
+        assertEquals(FieldClassifier.KEYWORD_PASSWORD, rules.keywords.match(HierarchyCapture.TOKEN_PASSWORD));
+        assertEquals(FieldClassifier.KEYWORD_USERNAME | FieldClassifier.KEYWORD_PASSWORD,
+                rules.keywords.match(HierarchyCapture.TOKEN_USERNAME_PASSWORD));
+        assertEquals(0, rules.keywords.match(HierarchyCapture.TOKEN_ADDRESS));
+        assertEquals(0, rules.keywords.match(HierarchyCapture.TOKEN_DIGITS));
+        assertEquals(0, rules.keywords.match(HierarchyCapture.TOKEN_TEXT));
+    }
+
+    @Test
+    public void textIsReplacedByItsCategory() {
+        assertEquals(HierarchyCapture.TOKEN_USERNAME, HierarchyCapture.tokenize(rules, "Benutzername"));
+        assertEquals(HierarchyCapture.TOKEN_PASSWORD, HierarchyCapture.tokenize(rules, "Forgot your password?"));
+        assertEquals(HierarchyCapture.TOKEN_ADDRESS, HierarchyCapture.tokenize(rules, "jane@example.com"));
+        assertEquals(HierarchyCapture.TOKEN_DIGITS, HierarchyCapture.tokenize(rules, "+49 170 1234567"));
+        assertEquals(HierarchyCapture.TOKEN_TEXT, HierarchyCapture.tokenize(rules, "Jane Doe"));
+        assertEquals("", HierarchyCapture.tokenize(rules, ""));
+        assertEquals(null, HierarchyCapture.tokenize(rules, null));
+    }
+
+    @Test
+    public void captureReadsBackWithTheSameSelection() throws IOException {
+        SyntheticStructure structure = SyntheticTrees.create(SyntheticTrees.Shape.MULTI_WINDOW).get(0);
+
+        FormScanner<SyntheticStructure, SyntheticNode> scanner = new FormScanner<>(SyntheticSource.INSTANCE, null);
+        scanner.scan(Collections.singletonList(structure));
+
+        File file = folder.newFile("sample" + HierarchyCapture.FILE_SUFFIX);
+        HierarchyCapture.capture(file, SyntheticSource.INSTANCE, rules, structure,
+                scanner.getUsernameNode(), scanner.getPasswordNode(), scanner.isNewPassword());
+        CapturedHierarchy capture = CapturedHierarchy.read(file);
+
+        assertEquals(structure.activity, capture.structure.activity);
+        assertEquals(structure.roots.size(), capture.structure.roots.size());
+
+        SyntheticNode password = capture.nodes.get(capture.capturedPasswordIndex);
+        assertEquals(scanner.getPasswordNode().id, password.id);
+        assertEquals(scanner.getPasswordNode().inputType, password.inputType);
+        assertEquals(scanner.getPasswordNode().hint, password.hint);
+        assertEquals(scanner.getUsernameNode().id, capture.nodes.get(capture.capturedUsernameIndex).id);
+
+        FormScanner<SyntheticStructure, SyntheticNode> replay = new FormScanner<>(SyntheticSource.INSTANCE, null);
+        replay.scan(Collections.singletonList(capture.structure));
+        assertSame(password, replay.getPasswordNode());
+    }
+
+    @Test
+    public void htmlValuesAreTokenized() throws IOException {
+        SyntheticNode root = new SyntheticNode(1, "android.webkit.WebView");
+        SyntheticNode input = root.add(new SyntheticNode(2, "android.widget.EditText"));
+        input.htmlTag = "input";
+        input.htmlAttributes = new String[][] { { "name", "email" }, { "value", "jane@example.com" } };
+
+        File file = folder.newFile("values" + HierarchyCapture.FILE_SUFFIX);
+        HierarchyCapture.capture(file, SyntheticSource.INSTANCE, rules,
+                new SyntheticStructure("com.example/.Main").addWindow("Main", root), null, null, false);
+
+        assertArrayEquals(new String[][] { { "name", "email" }, { "value", HierarchyCapture.TOKEN_ADDRESS } },
+                CapturedHierarchy.read(file).nodes.get(1).htmlAttributes);
+    }
+}
@@ -0,0 +1,134 @@
+package com.dgmvwallet.autofill;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays the captured view hierarchies of the corpus through the scanner, as
+ * DGMVAutofillParser scans a fill context, and checks the selected username and password
+ * fields against the expectations file. The parse time of every sample is reported, and
+ * the median has to stay below a generous bound.
+ *
+ * New captures are added to {@link #CORPUS_PATH} together with their line in
+ * {@link #EXPECTATIONS_FILE}, see {@link HierarchyCapture}.
+ */
+@RunWith(Parameterized.class)
+public class ReplayCorpusTest {
+    // Relative to the benchmark module, which is the working directory of the test task
+    static final String CORPUS_PATH = "src/test/resources/autofill-corpus";
+    static final String EXPECTATIONS_FILE = "expected.txt";
+
+    // Catches scans that stopped scaling with the page, not small regressions. The JMH
+    // benchmarks measure those.
+    private static final long MAX_MEDIAN_PARSE_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final int WARMUP_RUNS = 20;
+    private static final int MEASURED_RUNS = 51;
+
+    private static final Map<String, String> expectations = new HashMap<>();
+    private static final List<String> report = new ArrayList<>();
+
+    private final File file;
+
+    public ReplayCorpusTest(String name, File file) {
+        this.file = file;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> samples() {
+        File[] files = new File(CORPUS_PATH).listFiles((dir, name) -> name.endsWith(HierarchyCapture.FILE_SUFFIX));
+        if (files == null) throw new IllegalStateException("No corpus at " + CORPUS_PATH);
+        Arrays.sort(files);
+
+        List<Object[]> samples = new ArrayList<>(files.length);
+        for (File file : files) {
+            samples.add(new Object[] { file.getName(), file });
+        }
+        return samples;
+    }
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        FieldRules.setSource(() -> new FileInputStream(FormScannerBenchmark.RULES_PATH));
+        if (FieldRules.getInstance().version == 0) {
+            throw new IllegalStateException("Could not load " + FormScannerBenchmark.RULES_PATH, FieldRules.getLoadError());
+        }
+
+        List<String> lines = Files.readAllLines(new File(CORPUS_PATH, EXPECTATIONS_FILE).toPath(), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            expectations.put(line.substring(0, line.indexOf(' ')), line);
+        }
+    }
+
+    @AfterClass
+    public static void printReport() {
+        System.out.println(String.format("%-40s %8s %12s %12s", "sample", "nodes", "median us", "max us"));
+        for (String line : report) System.out.println(line);
+    }
+
+    private static FormScanner<SyntheticStructure, SyntheticNode> scan(CapturedHierarchy capture) {
+        // A fresh scanner per request, as DGMVAutofillParser does without a layout cache
+        FormScanner<SyntheticStructure, SyntheticNode> scanner = new FormScanner<>(SyntheticSource.INSTANCE, null);
+        scanner.scan(Collections.singletonList(capture.structure));
+        return scanner;
+    }
+
+    @Test
+    public void replay() throws IOException {
+        CapturedHierarchy capture = CapturedHierarchy.read(file);
+
+        String expected = expectations.get(capture.name);
+        assertNotNull("No expectation for " + capture.name + ", the device selected: "
+                + HierarchyCapture.getExpectation(capture.name, capture.capturedUsernameIndex,
+                        capture.capturedPasswordIndex, capture.capturedNewPassword), expected);
+
+        FormScanner<SyntheticStructure, SyntheticNode> scanner = new FormScanner<>(SyntheticSource.INSTANCE, null);
+        boolean focused = scanner.scan(Collections.singletonList(capture.structure));
+
+        int usernameIndex = focused ? capture.nodes.indexOf(scanner.getUsernameNode()) : -1;
+        int passwordIndex = focused ? capture.nodes.indexOf(scanner.getPasswordNode()) : -1;
+        String actual = HierarchyCapture.getExpectation(capture.name, usernameIndex, passwordIndex,
+                focused && scanner.isNewPassword());
+
+        for (int i = 0; i < WARMUP_RUNS; ++i) scan(capture);
+
+        long[] times = new long[MEASURED_RUNS];
+        for (int i = 0; i < MEASURED_RUNS; ++i) {
+            long start = System.nanoTime();
+            scan(capture);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        long median = times[MEASURED_RUNS / 2];
+
+        report.add(String.format("%-40s %8d %12.1f %12.1f", capture.name, capture.nodes.size(),
+                median / 1000.0, times[MEASURED_RUNS - 1] / 1000.0));
+
+        assertEquals("Selected username " + capture.describe(usernameIndex)
+                + ", password " + capture.describe(passwordIndex), expected, actual);
+        assertTrue(capture.name + " took " + median / 1000 + " us", median <= MAX_MEDIAN_PARSE_NANOS);
+    }
+}
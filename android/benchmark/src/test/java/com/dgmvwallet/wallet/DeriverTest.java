@@ -0,0 +1,47 @@
+package com.dgmvwallet.wallet;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Cross-checks the Digi-ID derivation with src/wallet/Deriver.ts, which the jest test
+ * test/__tests__/wallet/deriver.test.js runs against the same vector.
+ */
+public class DeriverTest {
+    private static final String SEED = "000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f";
+    private static final String CALLBACK_URL = "https://digiid.example.com/callback";
+
+    private static byte[] hex(String value) {
+        byte[] bytes = new byte[value.length() / 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void pathWordsAreHardenedOnce() throws GeneralSecurityException {
+        // Three of the four words already have the top bit set
+        assertArrayEquals(new int[] {
+                0x8000000d, 0xeed0af35, 0xb6c75f85, 0xa157c107, 0xc14c0ba7,
+        }, Deriver.getAuthenticationPath(CALLBACK_URL, 0));
+    }
+
+    @Test
+    public void authenticationKeyMatchesSlip13() throws GeneralSecurityException {
+        Deriver deriver = new Deriver(null);
+        String uri = "digiid://digiid.example.com/callback?x=1";
+
+        Deriver.AuthenticationSignature digiByte =
+                deriver.deriveAuthenticationKey(hex(SEED), "DigiByte", "mainnet", uri, CALLBACK_URL, 0);
+        assertEquals("D6S9rYseyQTtosKpSmdEQY9sttfQaT9bPh", digiByte.address);
+
+        Deriver.AuthenticationSignature bitcoin =
+                deriver.deriveAuthenticationKey(hex(SEED), "Bitcoin", "mainnet", uri, CALLBACK_URL, 0);
+        assertEquals("12J4KHw1fzZcGs9DiBdfrmzH1kw7DuEDVu", bitcoin.address);
+    }
+}
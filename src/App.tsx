@@ -3,6 +3,7 @@ import React from 'react';
 
 import {
   AppState,
+  Platform,
 } from 'react-native';
 
 import SplashScreen from 'react-native-splash-screen';
@@ -29,7 +30,8 @@ import HomeScreen from './screens/HomeScreen';
 import CameraScreen from './screens/CameraScreen';
 import WalletLockedScreen from './screens/WalletLockedScreen';
 
-import { ServiceIdentifier } from './modules/CredentialProviderRequest';
+import CredentialProviderRequest, { ServiceIdentifier } from './modules/CredentialProviderRequest';
+import NativeDeriver from './modules/NativeDeriver';
 import { EncryptedStorageContext } from './hooks/useEncryptedStorage';
 import Biometrics from './device/biometrics';
 import events, {Events} from './events';
@@ -145,6 +147,14 @@ const App: React.FC<LaunchProps> = (props: LaunchProps) => {
       if (nextAppState.match(/inactive/)) {
         console.log('App has become inactive!');
 
+        // Wipe passwords cached by the native autofill service
+        if (Platform.OS === 'android') {
+          CredentialProviderRequest.lockCredentialIndex();
+        }
+
+        // Wipe keys cached by the native deriver
+        NativeDeriver?.clearKeyCache();
+
         // Lock wallet
         encryptedStorage.lock()
           .catch(e => console.error(e))
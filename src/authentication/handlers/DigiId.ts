@@ -18,7 +18,7 @@ class DigiIdRequestHandler implements AuthenticationRequestHandler {
     if (!this.request) return false;
 
     const deriver = new Deriver(seed, 'DigiByte', 'mainnet');
-    const result = deriver.deriveAuthenticationKey(this.request, 0);
+    const result = await deriver.deriveAuthenticationKeyAsync(this.request, 0);
     console.log(result);
 
     try {
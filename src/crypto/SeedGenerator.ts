@@ -5,12 +5,19 @@ import {
   mnemonicToSeed,
 } from 'bip39';
 
+import NativeCrypto from '../modules/NativeCrypto';
+
 interface SeedGenerator {
   generateSeed: (mnemonic: string, passphrase: string) => Promise<Buffer>;
 };
 
 class SeedGeneratorImpl implements SeedGenerator {
   async generateSeed(mnemonic: string, passphrase: string): Promise<Buffer> {
+    if (NativeCrypto) {
+      const seed = await NativeCrypto.mnemonicToSeed(mnemonic, passphrase);
+      return Buffer.from(seed, 'hex');
+    }
+
     return mnemonicToSeed(mnemonic, passphrase);
   };
 }
@@ -5,6 +5,7 @@ import {
 } from 'crypto';
 
 import pbkdf2 from './pbkdf2';
+import NativeCrypto from '../modules/NativeCrypto';
 
 const IV_LENGTH = 16;
 const DEFAULT_ALGO = 'aes-256-ctr';
@@ -40,12 +41,23 @@ export function decrypt(data: string, encryptionKey: Buffer, algo: string = DEFA
 
 export async function encryptWithPassphrase(data: string, passphrase: string, salt: Buffer, options: object = {}) {
   const _options = Object.assign({}, DEFAULT_PBKDF2_OPTIONS, options);
+
+  // Derive the key and encrypt in a single native call, off the JS thread
+  if (NativeCrypto) {
+    return NativeCrypto.encryptWithPassphrase(data, passphrase, salt.toString('hex'), _options.iterations, _options.keylen, _options.digest);
+  }
+
   const key = await pbkdf2(passphrase, salt, _options.iterations, _options.keylen, _options.digest);
   return encrypt(data, key);
 };
 
 export async function decryptWithPassphrase(data: string, passphrase: string, salt: Buffer, options: object = {}) {
   const _options = Object.assign({}, DEFAULT_PBKDF2_OPTIONS, options);
+
+  if (NativeCrypto) {
+    return NativeCrypto.decryptWithPassphrase(data, passphrase, salt.toString('hex'), _options.iterations, _options.keylen, _options.digest);
+  }
+
   const key = await pbkdf2(passphrase, salt, _options.iterations, _options.keylen, _options.digest);
   return decrypt(data, key);
 };
\ No newline at end of file
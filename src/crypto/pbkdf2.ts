@@ -2,7 +2,15 @@
 
 import { pbkdf2 } from 'crypto';
 
+import NativeCrypto from '../modules/NativeCrypto';
+
 export default function pbkdf2_w(walletPassword: string | Buffer, salt: string | Buffer, iterations: number, keylen: number, digest: string): Promise<Buffer> {
+  if (NativeCrypto && typeof walletPassword === 'string') {
+    const saltHex = (typeof salt === 'string' ? Buffer.from(salt) : salt).toString('hex');
+    return NativeCrypto.pbkdf2(walletPassword, saltHex, iterations, keylen, digest)
+      .then(key => Buffer.from(key, 'hex'));
+  }
+
   return new Promise((fulfill, reject) => {
     pbkdf2(walletPassword, salt, iterations, keylen, digest, (err, result) => {
       if (err) return reject(err);
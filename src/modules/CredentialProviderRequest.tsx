@@ -11,12 +11,38 @@ export type ServiceIdentifier = {
   type: string;
 };
 
+export type SavedCredential = {
+  realm: string;
+  username: string;
+  password: string;
+  timestamp: number;
+};
+
+export type Credential = {
+  username?: string;
+  password: string;
+};
+
+export type LatencyMetrics = {
+  phase: string;
+  count: number;
+  p50: number;
+  p90: number;
+  p99: number;
+  max: number;
+};
+
 export interface CredentialProviderRequestInterface {
   authenticationRequestCompleted(username: string, password: string): void;
+  authenticationRequestCompletedWithCredentials(credentials: Credential[]): void;
   authenticationRequestCancelled(reason: string): void;
   autofillIsEnabled(): Promise<boolean>;
   autofillIsSupported(): Promise<boolean>;
   askForPermissions(): void;
+  lockCredentialIndex(): void;
+  getSavedCredentials(): Promise<SavedCredential[]>;
+  setAssetLinks(site: string, statements: string): Promise<boolean>;
+  getLatencyMetrics(reset: boolean): Promise<LatencyMetrics[]>;
 };
 
 export default CredentialProviderRequest as CredentialProviderRequestInterface;
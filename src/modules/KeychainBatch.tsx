@@ -0,0 +1,25 @@
+import {
+  NativeModules,
+} from 'react-native';
+
+const {
+  KeychainBatch,
+} = NativeModules;
+
+export type KeychainBatchEntry = {
+  key: string;
+  value: string | null;
+};
+
+export type KeychainBatchValues = {
+  [key: string]: string | null;
+};
+
+export interface KeychainBatchInterface {
+  putBatch(entries: KeychainBatchEntry[]): Promise<boolean>;
+  getBatch(keys: string[]): Promise<KeychainBatchValues>;
+  removeBatch(keys: string[]): Promise<boolean>;
+};
+
+// Only available on Android. EncryptedStorage uses react-native-keychain otherwise.
+export default KeychainBatch as KeychainBatchInterface | undefined;
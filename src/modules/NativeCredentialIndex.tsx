@@ -0,0 +1,22 @@
+import {
+  NativeModules,
+} from 'react-native';
+
+const {
+  NativeCredentialIndex,
+} = NativeModules;
+
+export type NativeCredentialIndexAccount = {
+  domain?: string | null;
+  packageName?: string | null;
+  username: string;
+  password: string;
+};
+
+export interface NativeCredentialIndexInterface {
+  write(accounts: NativeCredentialIndexAccount[]): Promise<number>;
+  clear(): Promise<boolean>;
+};
+
+// Only available on Android, where the autofill service reads the index.
+export default NativeCredentialIndex as NativeCredentialIndexInterface | undefined;
@@ -0,0 +1,20 @@
+import {
+  NativeModules,
+} from 'react-native';
+
+const {
+  NativeCrypto,
+} = NativeModules;
+
+// Binary values (salts, keys, seeds) are passed as hex strings.
+export interface NativeCryptoInterface {
+  pbkdf2(password: string, saltHex: string, iterations: number, keylen: number, digest: string): Promise<string>;
+  mnemonicToSeed(mnemonic: string, passphrase: string): Promise<string>;
+  encrypt(data: string, keyHex: string): Promise<string>;
+  decrypt(data: string, keyHex: string): Promise<string>;
+  encryptWithPassphrase(data: string, passphrase: string, saltHex: string, iterations: number, keylen: number, digest: string): Promise<string>;
+  decryptWithPassphrase(data: string, passphrase: string, saltHex: string, iterations: number, keylen: number, digest: string): Promise<string>;
+};
+
+// Only available on Android. Callers fall back to the JS implementation otherwise.
+export default NativeCrypto as NativeCryptoInterface | undefined;
@@ -0,0 +1,20 @@
+import {
+  NativeModules,
+} from 'react-native';
+
+import type { AuthenticationSignature } from '../wallet/Deriver';
+
+const {
+  NativeDeriver,
+} = NativeModules;
+
+// Seeds are passed as hex strings.
+export interface NativeDeriverInterface {
+  deriveAuthenticationKey(seedHex: string, coinName: string, networkName: string, uri: string, callbackURL: string, index: number): Promise<AuthenticationSignature>;
+  deriveAddress(seedHex: string, path: string, coinName: string, networkName: string): Promise<string>;
+  signMessage(seedHex: string, path: string, coinName: string, message: string): Promise<string>;
+  clearKeyCache(): void;
+};
+
+// Only available on Android. Callers fall back to bitcore otherwise.
+export default NativeDeriver as NativeDeriverInterface | undefined;
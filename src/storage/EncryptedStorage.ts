@@ -4,6 +4,8 @@ import { randomBytes } from 'crypto';
 import * as AES256 from '../crypto/aes256';
 import SeedGenerator from '../crypto/SeedGenerator';
 import SeedWrapper from '../authentication/SeedWrapper';
+import KeychainBatch from '../modules/KeychainBatch';
+import NativeCredentialIndex from '../modules/NativeCredentialIndex';
 
 const KEY_MNEMONIC = 'M';
 const KEY_PASSPHRASE = 'P';
@@ -15,6 +17,23 @@ const KEY_USE_BIOMETRICS = 'B';
 
 const VALUE_ENCRYPTION_TEST = 'DGMV WALLET';
 
+// Entries that need the access control of react-native-keychain (biometrics)
+// are never stored through KeychainBatch.
+const KEYCHAIN_ONLY_KEYS = [KEY_ENCRYPTION_PASSWORD];
+
+const BATCH_KEYS = [
+  KEY_MNEMONIC,
+  KEY_PASSPHRASE,
+  KEY_SALT,
+  KEY_ENCRYPTION_TEST,
+  KEY_VERSION,
+  KEY_USE_BIOMETRICS,
+];
+
+type KeychainValues = {
+  [key: string]: string;
+};
+
 const STORAGE_VERSION_1 = 0x01;
 const STORAGE_VERSION_CURRENT = STORAGE_VERSION_1;
 
@@ -87,11 +106,11 @@ class EncryptedStorageV1 implements EncryptedStorage {
     this.encryptionPassword = walletPassword;
 
     try {
-      await this.storeUnencrypted(KEY_SALT, salt.toString('hex'));
-      await this.storeUnencrypted(KEY_VERSION, `${this.version}`);
-      await this.store(KEY_ENCRYPTION_TEST, VALUE_ENCRYPTION_TEST);
-      await this.store(KEY_MNEMONIC, mnemonic);
-      await this.store(KEY_PASSPHRASE, seedPassphrase);
+      const [encryptionTest, encryptedMnemonic, encryptedPassphrase] = await Promise.all([
+        this.encrypt(VALUE_ENCRYPTION_TEST, salt),
+        this.encrypt(mnemonic, salt),
+        this.encrypt(seedPassphrase, salt),
+      ]);
 
       if (useBiometrics) {
         // Storing encryption password without application encryption,
@@ -100,15 +119,21 @@ class EncryptedStorageV1 implements EncryptedStorage {
           // Make the entry only accessible with biometric sensors
           accessControl: Keychain.ACCESS_CONTROL.BIOMETRY_ANY,
         });
-
-        await this.storeUnencrypted(KEY_USE_BIOMETRICS, 'true');
-        this.allowsBiometricalUnlock = true;
-      } else {
-        // Disable biometrical login
-        await this.storeUnencrypted(KEY_USE_BIOMETRICS, 'false');
-        this.allowsBiometricalUnlock = false;
       }
 
+      // Salt first: without it, the storage does not count as set up
+      await this.storeBatchUnencrypted({
+        [KEY_SALT]: salt.toString('hex'),
+        [KEY_VERSION]: `${this.version}`,
+        [KEY_ENCRYPTION_TEST]: encryptionTest,
+        [KEY_MNEMONIC]: encryptedMnemonic,
+        [KEY_PASSPHRASE]: encryptedPassphrase,
+
+        // Enable or disable biometrical login
+        [KEY_USE_BIOMETRICS]: useBiometrics ? 'true' : 'false',
+      });
+
+      this.allowsBiometricalUnlock = useBiometrics;
       this.isUnlocked = true;
 
     } catch (e) {
@@ -120,9 +145,22 @@ class EncryptedStorageV1 implements EncryptedStorage {
   }
 
   async init(): Promise<void> {
-    await this.testIfStorageIsSetup();
-    await this.testIfUnlocked();
-    await this.testIfAllowsBiometricalUnlock();
+    // Read everything init needs in one keychain round-trip
+    const values = await this.fetchBatchUnencrypted([KEY_SALT, KEY_ENCRYPTION_TEST, KEY_USE_BIOMETRICS]);
+
+    this.isSetup = !!values[KEY_SALT];
+    this.allowsBiometricalUnlock = (values[KEY_USE_BIOMETRICS] === 'true');
+    this.isUnlocked = false;
+
+    if (this.isSetup && this.encryptionPassword && values[KEY_ENCRYPTION_TEST]) {
+      try {
+        const salt = Buffer.from(values[KEY_SALT], 'hex');
+        const testVal = await this.decrypt(values[KEY_ENCRYPTION_TEST], salt);
+        this.isUnlocked = (testVal === VALUE_ENCRYPTION_TEST);
+      } catch (e) {
+        console.error(e);
+      }
+    }
   }
 
   async testIfStorageIsSetup(): Promise<boolean> {
@@ -186,22 +224,22 @@ class EncryptedStorageV1 implements EncryptedStorage {
     return isUnlocked;
   }
 
-  async encrypt(data: string): Promise<string> {
+  async encrypt(data: string, salt?: Buffer): Promise<string> {
     if (this.encryptionPassword == null) {
       throw new Error('Storage not unlocked (1)');
     }
 
-    const salt = await this.getSalt();
-    return AES256.encryptWithPassphrase(data, this.encryptionPassword, salt);
+    const _salt = salt ?? await this.getSalt();
+    return AES256.encryptWithPassphrase(data, this.encryptionPassword, _salt);
   }
 
-  async decrypt(data: string): Promise<string> {
+  async decrypt(data: string, salt?: Buffer): Promise<string> {
     if (this.encryptionPassword == null) {
       throw new Error('Storage not unlocked (2)');
     }
 
-    const salt = await this.getSalt();
-    return AES256.decryptWithPassphrase(data, this.encryptionPassword, salt);
+    const _salt = salt ?? await this.getSalt();
+    return AES256.decryptWithPassphrase(data, this.encryptionPassword, _salt);
   }
 
   async getSalt(): Promise<Buffer> {
@@ -245,43 +283,102 @@ class EncryptedStorageV1 implements EncryptedStorage {
   async store(key: string, unencryptedData: string, options?: object): Promise<void> {
     const encryptedData = await this.encrypt(unencryptedData);
 
-    const _options = Object.assign({}, this.options, options, {
-      service: key,
-    });
-
-    await Keychain.setGenericPassword(key, encryptedData, _options).catch(e => {
-      console.error(e);
-    });
+    // Same place as storeUnencrypted, where fetch() reads it back
+    await this.storeUnencrypted(key, encryptedData, options);
   }
 
   async storeUnencrypted(key: string, data: string, options?: object): Promise<void> {
+    if (KeychainBatch && !KEYCHAIN_ONLY_KEYS.includes(key)) {
+      await KeychainBatch.putBatch([{ key, value: data }]);
+      return;
+    }
+
     const _options = Object.assign({}, this.options, options, {
       service: key,
     });
     await Keychain.setGenericPassword(key, data, _options);
   }
 
+  /**
+   * Stores several values. With KeychainBatch this is a single native call.
+   */
+  async storeBatchUnencrypted(values: KeychainValues): Promise<void> {
+    if (KeychainBatch) {
+      await KeychainBatch.putBatch(Object.keys(values).map(key => ({ key, value: values[key] })));
+      return;
+    }
+
+    for (const key of Object.keys(values)) {
+      await this.storeUnencrypted(key, values[key]);
+    }
+  }
+
   async fetch(key: string): Promise<string> {
+    const values = await this.fetchBatch([key]);
+    return values[key];
+  }
+
+  /**
+   * Fetches and decrypts several values, reading them together with the salt.
+   */
+  async fetchBatch(keys: string[]): Promise<KeychainValues> {
     if (!this.encryptionPassword) {
       throw new Error('Storage not unlocked (3)');
     }
 
-    const encryptedData = await Keychain.getGenericPassword({ service: key });
-    if (!encryptedData) return '';
+    const encryptedValues = await this.fetchBatchUnencrypted([...keys, KEY_SALT]);
+    if (!encryptedValues[KEY_SALT]) {
+      throw new Error('No salt found');
+    }
 
-    const password = encryptedData.password; // UserCredentials
-    if (!password) return '';
+    const salt = Buffer.from(encryptedValues[KEY_SALT], 'hex');
+    const decryptedValues = await Promise.all(keys.map(key => {
+      const encryptedData = encryptedValues[key];
+      return encryptedData ? this.decrypt(encryptedData, salt) : Promise.resolve('');
+    }));
 
-    const decryptedData = await this.decrypt(password);
-    return decryptedData;
+    const values: KeychainValues = {};
+    keys.forEach((key, i) => {
+      values[key] = decryptedValues[i];
+    });
+
+    return values;
   }
 
   async fetchUnencrypted(key: string): Promise<string> {
+    if (KeychainBatch && !KEYCHAIN_ONLY_KEYS.includes(key)) {
+      const values = await KeychainBatch.getBatch([key]);
+      return values[key] ?? '';
+    }
+
     const data = await Keychain.getGenericPassword({ service: key });
     if (!data) return '';
     return data.password;
   }
 
+  /**
+   * Fetches several values. With KeychainBatch this is a single native call.
+   * Missing values are returned as empty strings.
+   */
+  async fetchBatchUnencrypted(keys: string[]): Promise<KeychainValues> {
+    const values: KeychainValues = {};
+
+    if (KeychainBatch && !keys.some(key => KEYCHAIN_ONLY_KEYS.includes(key))) {
+      const batch = await KeychainBatch.getBatch(keys);
+      keys.forEach(key => {
+        values[key] = batch[key] ?? '';
+      });
+
+      return values;
+    }
+
+    for (const key of keys) {
+      values[key] = await this.fetchUnencrypted(key);
+    }
+
+    return values;
+  }
+
   async clear(): Promise<void> {
     const toBeCleared = [
       KEY_ENCRYPTION_TEST,
@@ -293,6 +390,16 @@ class EncryptedStorageV1 implements EncryptedStorage {
       KEY_USE_BIOMETRICS,
     ];
 
+    if (KeychainBatch) {
+      await KeychainBatch.removeBatch(BATCH_KEYS);
+    }
+
+    // Accounts of the reset wallet must not be offered by the autofill service anymore
+    if (NativeCredentialIndex) {
+      await NativeCredentialIndex.clear()
+        .catch(e => console.warn('Could not clear credential index', e));
+    }
+
     const result = await Promise.all(toBeCleared.map(key => Keychain.resetGenericPassword({
       service: key,
     })));
@@ -309,18 +416,54 @@ class EncryptedStorageV1 implements EncryptedStorage {
   }
 
   async deriveSeed(): Promise<SeedWrapper> {
-    const mnemonic = await this.getMnemonic();
-    const passphrase = await this.getMnemonicPassphrase();
+    const values = await this.fetchBatch([KEY_MNEMONIC, KEY_PASSPHRASE]);
+    const mnemonic = values[KEY_MNEMONIC];
+    const passphrase = values[KEY_PASSPHRASE];
+
+    if (!mnemonic) {
+      throw new Error('No mnemonic found');
+    }
+
     const seed = await SeedGenerator.generateSeed(mnemonic, passphrase);
     return new SeedWrapper(seed);
   }
 }
 
+/**
+ * Moves entries written by react-native-keychain into KeychainBatch, once.
+ */
+async function migrateToKeychainBatch(): Promise<void> {
+  if (!KeychainBatch) return;
+
+  const current = await KeychainBatch.getBatch([KEY_SALT]);
+  if (current[KEY_SALT]) return;
+
+  const entries = [];
+  for (const key of BATCH_KEYS) {
+    const data = await Keychain.getGenericPassword({ service: key });
+    if (data && data.password) entries.push({ key, value: data.password });
+  }
+
+  // Nothing to migrate if the storage was never set up
+  if (!entries.some(entry => entry.key === KEY_SALT)) return;
+
+  await KeychainBatch.putBatch(entries);
+  await Promise.all(entries.map(entry => Keychain.resetGenericPassword({ service: entry.key })));
+}
+
 async function getCurrentVersion(): Promise<VERSIONS> {
   try {
-    const data = await Keychain.getGenericPassword({ service: KEY_VERSION });
+    let version = '';
+
+    if (KeychainBatch) {
+      const values = await KeychainBatch.getBatch([KEY_VERSION]);
+      version = values[KEY_VERSION] ?? '';
+    } else {
+      const data = await Keychain.getGenericPassword({ service: KEY_VERSION });
+      version = data === false ? '' : data.password;
+    }
 
-    const existingStorageVersion = parseInt(data === false || data.password === '' ? `${STORAGE_VERSION_CURRENT}` : data.password);
+    const existingStorageVersion = parseInt(version === '' ? `${STORAGE_VERSION_CURRENT}` : version);
     return existingStorageVersion;
 
   } catch (e) {
@@ -330,6 +473,12 @@ async function getCurrentVersion(): Promise<VERSIONS> {
 };
 
 export default async function createStorage(version?: VERSIONS, options?: object): Promise<EncryptedStorage> {
+  try {
+    await migrateToKeychainBatch();
+  } catch (e) {
+    console.error(e);
+  }
+
   const _version = version || await getCurrentVersion();
   let storage;
 
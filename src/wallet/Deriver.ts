@@ -79,6 +79,9 @@ const NETWORKS = (): NetworkMap => ({
 })();
 
 import * as Hashing from '../crypto/Hashing';
+import NativeDeriver from '../modules/NativeDeriver';
+
+const HARDENED = 0x80000000;
 
 export type CoinName = 'DigiByte' | 'Bitcoin';
 export type NetworkName = 'mainnet' | 'testnet';
@@ -152,6 +155,7 @@ export default class Deriver {
   seed: SeedWrapper;
   network: Networks.Network;
   networkId: string;
+  networkName: NetworkName;
   coinName: CoinName;
 
   constructor(seed: SeedWrapper, coinName: CoinName, networkName: NetworkName = 'mainnet') {
@@ -169,6 +173,7 @@ export default class Deriver {
     this.seed = seed;
     this.network = network;
     this.networkId = networkKey;
+    this.networkName = networkName;
     this.coinName = coinName;
   }
 
@@ -184,6 +189,42 @@ export default class Deriver {
     });
   }  
 
+  /**
+   * Derives the key at a path of hardened indexes. The indexes are numbers,
+   * so indexes that already have the top bit set are not hardened twice.
+   */
+  deriveHardenedKey(indexes: number[]): PrivateKey {
+    const seed = this.seed.get();
+
+    return withDefaultNetwork(this.network, () => {
+      let key = HDPrivateKey.fromSeed(seed);
+      for (const index of indexes) {
+        key = key.deriveChild((index | HARDENED) >>> 0, true);
+      }
+
+      return key.privateKey;
+    });
+  }
+
+  /**
+   * Same as deriveAuthenticationKey, but derives and signs natively when possible.
+   * The native deriver caches intermediate keys, so repeated logins to a site are cheap.
+   */
+  async deriveAuthenticationKeyAsync(request: AuthenticationRequest, index: number): Promise<AuthenticationSignature> {
+    if (NativeDeriver) {
+      return NativeDeriver.deriveAuthenticationKey(
+        this.seed.get().toString('hex'),
+        this.coinName,
+        this.networkName,
+        request.originalURL,
+        request.getCallbackURL(),
+        index,
+      );
+    }
+
+    return this.deriveAuthenticationKey(request, index);
+  }
+
   deriveAuthenticationKey(request: AuthenticationRequest, index: number): AuthenticationSignature {
     // uri: string, callbackURL: string
     const uri = request.originalURL;
@@ -219,10 +260,10 @@ export default class Deriver {
     //   D: D.toString(16).match(/../g).reverse().join('') + ': ' + D,
     // });
 
-    // Derive the correct private key
+    // Derive the correct private key. SLIP-13 hardens each word with
+    // | 0x80000000; as a path string, bitcore rejects words >= 2^31.
     const type = 13;
-    const path = `m/${type}'/${A}'/${B}'/${C}'/${D}'`;
-    const privateKey = this.deriveKey(path);
+    const privateKey = this.deriveHardenedKey([type, A, B, C, D]);
 
     // Get address
     const address = privateKey.toAddress().toString();
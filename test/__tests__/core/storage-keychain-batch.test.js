@@ -0,0 +1,58 @@
+import { jest } from '@jest/globals';
+
+// Values KeychainBatch holds, as the SharedPreferences of the Android module would
+const batch = {};
+
+jest.unstable_mockModule('../../../src/modules/KeychainBatch', () => ({
+  default: {
+    putBatch: jest.fn(async (entries) => {
+      entries.forEach(({ key, value }) => { batch[key] = value; });
+      return true;
+    }),
+    getBatch: jest.fn(async (keys) => {
+      const values = {};
+      keys.forEach(key => { values[key] = batch[key] ?? null; });
+      return values;
+    }),
+    removeBatch: jest.fn(async (keys) => {
+      keys.forEach(key => { delete batch[key]; });
+      return true;
+    }),
+  },
+}));
+
+const { default: createStorage, VERSIONS } = await import('../../../src/storage/EncryptedStorage');
+const Keychain = await import('react-native-keychain');
+
+describe('Storage (V=1) with KeychainBatch', function () {
+  let storageV1;
+
+  beforeAll(async () => {
+    storageV1 = await createStorage(VERSIONS.V1);
+    await storageV1.setup('password1', 'ignore ignore ignore', '', false);
+  });
+
+  it('should read back a value written with store()', async () => {
+    await storageV1.store('X', 'some secret');
+
+    const value = await storageV1.fetch('X');
+    expect(value).toBe('some secret');
+  });
+
+  it('should keep the stored value encrypted in KeychainBatch', async () => {
+    expect(batch.X).toBeTruthy();
+    expect(batch.X).not.toBe('some secret');
+
+    const services = Keychain.setGenericPassword.mock.calls.map(call => call[2].service);
+    expect(services).not.toContain('X');
+  });
+
+  it('should reject store() while the storage is locked', async () => {
+    await storageV1.lock();
+    await expect(storageV1.store('X', 'other secret')).rejects.toThrow();
+
+    await storageV1.unlock('password1');
+    const value = await storageV1.fetch('X');
+    expect(value).toBe('some secret');
+  });
+});
@@ -0,0 +1,25 @@
+import Deriver from '../../../src/wallet/Deriver';
+import SeedWrapper from '../../../src/authentication/SeedWrapper';
+
+// Same vector as DeriverTest of the native deriver (android/benchmark). The
+// path words of this callback are eed0af35, b6c75f85, a157c107 and 414c0ba7,
+// so three of them already have the top bit set.
+const SEED = '000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f';
+const CALLBACK_URL = 'https://digiid.example.com/callback';
+
+const request = {
+  originalURL: 'digiid://digiid.example.com/callback?x=1',
+  getCallbackURL: () => CALLBACK_URL,
+};
+
+describe('Deriver', () => {
+  it('should derive Digi-ID keys with SLIP-13 hardened path words', () => {
+    const seed = new SeedWrapper(Buffer.from(SEED, 'hex'));
+
+    const digiByte = new Deriver(seed, 'DigiByte', 'mainnet').deriveAuthenticationKey(request, 0);
+    expect(digiByte.address).toBe('D6S9rYseyQTtosKpSmdEQY9sttfQaT9bPh');
+
+    const bitcoin = new Deriver(seed, 'Bitcoin', 'mainnet').deriveAuthenticationKey(request, 0);
+    expect(bitcoin.address).toBe('12J4KHw1fzZcGs9DiBdfrmzH1kw7DuEDVu');
+  });
+});